@@ -0,0 +1,98 @@
+package sunyu.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sunyu.util.benchmark.RowCounter;
+import sunyu.util.benchmark.Workbooks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 溢写文件的序列化和反序列化，在内存中进行，不包括磁盘读写；每次操作处理一批行，rows指标是每秒行数
+ * <p>
+ * 溢写格式的类是包内可见的，所以放在 sunyu.util 包下
+ *
+ * @author 孙宇
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class SpillBenchmark {
+    @Param("10000")
+    public int rows;
+    @Param("20")
+    public int columns;
+    @Param({"0", "0.8"})
+    public double sparsity;
+    @Param("16")
+    public int stringLength;
+    @Param({"NONE", "DEFLATE"})
+    public String codec;
+
+    private SpillCodec spillCodec;
+    private List<List<?>> batch;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        spillCodec = "DEFLATE".equals(codec) ? SpillCodec.DEFLATE : SpillCodec.NONE;
+        batch = sparseRows();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out);
+        serialized = out.toByteArray();
+    }
+
+    /**
+     * 把合成数据转成溢写文件中的稀疏行，列序号与列名的序号相同
+     *
+     * @return
+     */
+    private List<List<?>> sparseRows() {
+        List<List<?>> list = new ArrayList<>(rows);
+        for (Map<String, Object> map : Workbooks.rows(rows, columns, sparsity, stringLength)) {
+            SparseRow row = new SparseRow();
+            for (int j = 0; j < columns; j++) {
+                row.put(j, map.get(Workbooks.header(j)));
+            }
+            list.add(row);
+        }
+        return list;
+    }
+
+    private void write(ByteArrayOutputStream out) throws IOException {
+        try (SpillRowWriter writer = new SpillRowWriter(out, spillCodec)) {
+            for (List<?> row : batch) {
+                writer.writeRow(row);
+            }
+        }
+    }
+
+    @Benchmark
+    public int serialize(RowCounter counter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(serialized.length + 64);
+        write(out);
+        counter.rows += rows;
+        return out.size();
+    }
+
+    @Benchmark
+    public void deserialize(RowCounter counter, Blackhole blackhole) throws IOException {
+        try (SpillRowReader reader = new SpillRowReader(new ByteArrayInputStream(serialized), spillCodec)) {
+            List<Object> row;
+            while ((row = reader.nextRow()) != null) {
+                blackhole.consume(row);
+                counter.rows++;
+            }
+        }
+    }
+
+}
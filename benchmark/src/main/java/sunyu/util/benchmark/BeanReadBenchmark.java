@@ -0,0 +1,84 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.io.FileUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sunyu.util.BigDataExcelReaderUtil;
+import sunyu.util.annotation.ExcelColumn;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取到实体类：按字段预先生成转换函数的绑定，对比读取rowMap后用Convert逐字段转换
+ *
+ * @author 孙宇
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class BeanReadBenchmark {
+    @Param("50000")
+    public int rows;
+
+    private File file;
+
+    public static class Record {
+        @ExcelColumn("列0")
+        private Long id;
+        @ExcelColumn("列1")
+        private Double amount;
+        @ExcelColumn("列2")
+        private String name;
+        @ExcelColumn("列3")
+        private Long code;
+        @ExcelColumn("列4")
+        private Double price;
+        @ExcelColumn("列5")
+        private String remark;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        file = Workbooks.xlsx(rows, 6, 0, 16);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.del(file);
+    }
+
+    @Benchmark
+    public void readBean(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).build();
+        readerUtil.read(Record.class, record -> {
+            blackhole.consume(record);
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+    @Benchmark
+    public void readMapConvert(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).build();
+        readerUtil.read(excelRow -> {
+            Map<String, Object> rowMap = excelRow.getRowMap();
+            Record record = new Record();
+            record.id = Convert.toLong(rowMap.get("列0"));
+            record.amount = Convert.toDouble(rowMap.get("列1"));
+            record.name = Convert.toStr(rowMap.get("列2"));
+            record.code = Convert.toLong(rowMap.get("列3"));
+            record.price = Convert.toDouble(rowMap.get("列4"));
+            record.remark = Convert.toStr(rowMap.get("列5"));
+            blackhole.consume(record);
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+}
@@ -0,0 +1,90 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sunyu.util.BigDataExcelReaderUtil;
+import sunyu.util.BigDataExcelWriterUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同样的数据按xlsx、csv、tsv写出和读取，rows指标是每秒行数
+ * <p>
+ * 写出预先声明表头（直写模式），只比较格式本身的编码成本；读取使用复用行
+ *
+ * @author 孙宇
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+    @Param({"xlsx", "csv", "tsv"})
+    public String format;
+    @Param("50000")
+    public int rows;
+    @Param("20")
+    public int columns;
+    @Param({"0", "0.8"})
+    public double sparsity;
+    @Param("16")
+    public int stringLength;
+
+    private List<Map<String, Object>> data;
+    private List<String> headers;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = Workbooks.rows(rows, columns, sparsity, stringLength);
+        headers = new ArrayList<>();
+        for (int j = 0; j < columns; j++) {
+            headers.add(Workbooks.header(j));
+        }
+        file = Workbooks.file(format, rows, columns, sparsity, stringLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.del(file);
+    }
+
+    @Benchmark
+    public long write(RowCounter counter) {
+        File dest = FileUtil.createTempFile("excel-benchmark-", "." + format, null, true);
+        try {
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(dest)
+                    .nativeWriter(true)
+                    .headers(headers)
+                    .build();
+            for (Map<String, Object> row : data) {
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+            counter.rows += data.size();
+            return dest.length();
+        } finally {
+            FileUtil.del(dest);
+        }
+    }
+
+    @Benchmark
+    public void read(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).setReuseRow(true).build();
+        readerUtil.read(excelRow -> {
+            blackhole.consume(excelRow.get(0));
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+}
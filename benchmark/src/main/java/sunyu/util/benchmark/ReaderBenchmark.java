@@ -0,0 +1,88 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sunyu.util.BigDataExcelReaderUtil;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取吞吐量，每次操作读取整个文件，rows指标是每秒行数
+ * <p>
+ * 对比普通模式（每行HashMap）、复用行、只选两列、原始值模式
+ *
+ * @author 孙宇
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class ReaderBenchmark {
+    @Param("50000")
+    public int rows;
+    @Param("20")
+    public int columns;
+    @Param({"0", "0.8"})
+    public double sparsity;
+    @Param("16")
+    public int stringLength;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        file = Workbooks.xlsx(rows, columns, sparsity, stringLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtil.del(file);
+    }
+
+    @Benchmark
+    public void read(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).build();
+        readerUtil.read(excelRow -> {
+            blackhole.consume(excelRow.getRowMap());
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+    @Benchmark
+    public void readReuseRow(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).setReuseRow(true).build();
+        readerUtil.read(excelRow -> {
+            blackhole.consume(excelRow.get(0));
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+    @Benchmark
+    public void readSelectColumns(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file)
+                .setSelectColumns(Workbooks.header(0), Workbooks.header(2)).build();
+        readerUtil.read(excelRow -> {
+            blackhole.consume(excelRow.getRowMap());
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+    @Benchmark
+    public void readRaw(RowCounter counter, Blackhole blackhole) {
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).build();
+        readerUtil.readRaw(raw -> {
+            blackhole.consume(raw.getLong(0));
+            blackhole.consume(raw.getDouble(1));
+            counter.rows++;
+        });
+        readerUtil.close();
+    }
+
+}
@@ -0,0 +1,127 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import sunyu.util.BigDataExcelWriterUtil;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * 生成基准测试用的合成数据和工作簿，参数相同时生成的数据相同
+ * <p>
+ * 列按序号轮流为整数、小数、字符串；字符串从每列1024个固定长度的随机字符串中选取；
+ * sparsity是单元格为空的比例，为空的单元格不放入Map
+ *
+ * @author 孙宇
+ */
+public final class Workbooks {
+    private static final long SEED = 20240506L;
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789中文字符测试数据";
+
+    private Workbooks() {
+    }
+
+    /**
+     * 列名
+     *
+     * @param column
+     * @return
+     */
+    public static String header(int column) {
+        return "列" + column;
+    }
+
+    /**
+     * 生成Map格式的行
+     *
+     * @param rows         行数
+     * @param columns      列数
+     * @param sparsity     空单元格比例，0到1
+     * @param stringLength 字符串长度
+     * @return
+     */
+    public static List<Map<String, Object>> rows(int rows, int columns, double sparsity, int stringLength) {
+        Random random = new Random(SEED);
+        String[][] strings = strings(random, columns, stringLength);
+        List<Map<String, Object>> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < columns; j++) {
+                if (random.nextDouble() >= sparsity) {
+                    row.put(header(j), value(random, strings, i, j));
+                }
+            }
+            list.add(row);
+        }
+        return list;
+    }
+
+    /**
+     * 用原生写出器生成xlsx临时文件，第一行是表头；调用方负责删除
+     *
+     * @param rows
+     * @param columns
+     * @param sparsity
+     * @param stringLength
+     * @return
+     */
+    public static File xlsx(int rows, int columns, double sparsity, int stringLength) {
+        return file("xlsx", rows, columns, sparsity, stringLength);
+    }
+
+    /**
+     * 生成指定扩展名的临时文件，格式按扩展名决定（xlsx、csv、tsv），第一行是表头；调用方负责删除
+     *
+     * @param ext
+     * @param rows
+     * @param columns
+     * @param sparsity
+     * @param stringLength
+     * @return
+     */
+    public static File file(String ext, int rows, int columns, double sparsity, int stringLength) {
+        File file = FileUtil.createTempFile("excel-benchmark-", "." + ext, null, true);
+        List<String> headers = new ArrayList<>();
+        for (int j = 0; j < columns; j++) {
+            headers.add(header(j));
+        }
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .headers(headers)
+                .build();
+        for (Map<String, Object> row : rows(rows, columns, sparsity, stringLength)) {
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+        return file;
+    }
+
+    private static String[][] strings(Random random, int columns, int stringLength) {
+        String[][] strings = new String[columns][];
+        for (int j = 2; j < columns; j += 3) {
+            strings[j] = new String[1024];
+            for (int k = 0; k < strings[j].length; k++) {
+                char[] chars = new char[stringLength];
+                for (int c = 0; c < chars.length; c++) {
+                    chars[c] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+                }
+                strings[j][k] = new String(chars);
+            }
+        }
+        return strings;
+    }
+
+    private static Object value(Random random, String[][] strings, int row, int column) {
+        switch (column % 3) {
+            case 0:
+                return (long) row * 1000 + column;
+            case 1:
+                return random.nextInt(1000000) / 100.0;
+            default:
+                return strings[column][random.nextInt(strings[column].length)];
+        }
+    }
+
+}
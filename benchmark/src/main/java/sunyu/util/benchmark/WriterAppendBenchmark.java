@@ -0,0 +1,108 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.BigDataExcelWriterUtil;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 追加吞吐量，包括缓存满后的溢写；每轮测量使用新的写出器，结束时关闭并删除临时文件
+ * <p>
+ * append是单线程追加；appendContended是4个线程同时向开启concurrentAppend的写出器追加，可用 -t 调整线程数
+ *
+ * @author 孙宇
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class WriterAppendBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Rows {
+        @Param("20")
+        public int columns;
+        @Param({"0", "0.8"})
+        public double sparsity;
+        @Param("16")
+        public int stringLength;
+
+        private List<Map<String, Object>> rows;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            rows = Workbooks.rows(10000, columns, sparsity, stringLength);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public abstract static class WriterState {
+        @Param({"5000", "50000"})
+        public int cacheSize;
+        @Param({"false", "true"})
+        public boolean asyncSpill;
+
+        protected BigDataExcelWriterUtil writerUtil;
+        private File file;
+
+        protected abstract boolean concurrentAppend();
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            file = FileUtil.createTempFile("excel-benchmark-", ".xlsx", null, true);
+            writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(file)
+                    .cacheSize(cacheSize)
+                    .asyncSpill(asyncSpill)
+                    .concurrentAppend(concurrentAppend())
+                    .build();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            writerUtil.close();
+            FileUtil.del(file);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Writer extends WriterState {
+        @Override
+        protected boolean concurrentAppend() {
+            return false;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ConcurrentWriter extends WriterState {
+        @Override
+        protected boolean concurrentAppend() {
+            return true;
+        }
+    }
+
+    /**
+     * 每个线程按自己的顺序循环取行
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    public void append(Rows rows, Writer writer, Cursor cursor) {
+        writer.writerUtil.append(rows.rows.get(cursor.next++ % rows.rows.size()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendContended(Rows rows, ConcurrentWriter writer, Cursor cursor) {
+        writer.writerUtil.append(rows.rows.get(cursor.next++ % rows.rows.size()));
+    }
+
+}
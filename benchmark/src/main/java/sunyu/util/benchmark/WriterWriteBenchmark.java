@@ -0,0 +1,69 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.BigDataExcelWriterUtil;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端写出：追加全部行（包括溢写）、write()、close()，每次操作生成一个完整的文件
+ * <p>
+ * 用于比较cacheSize、pageSize和写出器的选择
+ *
+ * @author 孙宇
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class WriterWriteBenchmark {
+    @Param("100000")
+    public int rows;
+    @Param("20")
+    public int columns;
+    @Param({"0", "0.8"})
+    public double sparsity;
+    @Param("16")
+    public int stringLength;
+    @Param({"5000", "100000"})
+    public int cacheSize;
+    @Param("1000000")
+    public int pageSize;
+    @Param({"false", "true"})
+    public boolean nativeWriter;
+
+    private List<Map<String, Object>> data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = Workbooks.rows(rows, columns, sparsity, stringLength);
+    }
+
+    @Benchmark
+    public long write() {
+        File file = FileUtil.createTempFile("excel-benchmark-", ".xlsx", null, true);
+        try {
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(file)
+                    .cacheSize(cacheSize)
+                    .pageSize(pageSize)
+                    .nativeWriter(nativeWriter)
+                    .build();
+            for (Map<String, Object> row : data) {
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+            return file.length();
+        } finally {
+            FileUtil.del(file);
+        }
+    }
+
+}
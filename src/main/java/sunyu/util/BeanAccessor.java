@@ -0,0 +1,291 @@
+package sunyu.util;
+
+import sunyu.util.annotation.ExcelColumn;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 实体类的列定义、取值器和赋值器，每个类只解析一次
+ * <p>
+ * 有public getter/setter时用LambdaMetafactory生成取值/赋值函数，否则用字段的MethodHandle；赋值器在第一次读取时才生成
+ *
+ * @author 孙宇
+ */
+final class BeanAccessor {
+    //按注解解析的结果，按类缓存
+    private static final ClassValue<BeanAccessor> ANNOTATED = new ClassValue<BeanAccessor>() {
+        @Override
+        protected BeanAccessor computeValue(Class<?> type) {
+            return new BeanAccessor(type, annotatedColumns(type));
+        }
+    };
+
+    //列名
+    final String[] columns;
+    //与列名一一对应的取值函数
+    final Function<Object, Object>[] getters;
+    //与列名一一对应的字段
+    final Field[] fields;
+    private final Class<?> type;
+    //读取时使用的赋值函数和构造器，第一次使用时生成
+    private volatile BiConsumer<Object, Object>[] setters;
+    private volatile Supplier<Object> constructor;
+
+    /**
+     * 按字段注解解析
+     *
+     * @param type
+     * @return
+     */
+    static BeanAccessor of(Class<?> type) {
+        return ANNOTATED.get(type);
+    }
+
+    /**
+     * 按显式映射解析
+     *
+     * @param type
+     * @param fieldToColumn key是字段名，value是列名，按迭代顺序排列列
+     * @return
+     */
+    static BeanAccessor of(Class<?> type, Map<String, String> fieldToColumn) {
+        Map<Field, String> columns = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : fieldToColumn.entrySet()) {
+            Field field = findField(type, e.getKey());
+            if (field == null) {
+                throw new IllegalArgumentException(type.getName() + " 没有字段 " + e.getKey());
+            }
+            columns.put(field, e.getValue());
+        }
+        return new BeanAccessor(type, columns);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BeanAccessor(Class<?> type, Map<Field, String> fields) {
+        this.type = type;
+        columns = new String[fields.size()];
+        getters = new Function[fields.size()];
+        this.fields = new Field[fields.size()];
+        int i = 0;
+        for (Map.Entry<Field, String> e : fields.entrySet()) {
+            columns[i] = e.getValue();
+            getters[i] = getter(type, e.getKey());
+            this.fields[i] = e.getKey();
+            i++;
+        }
+    }
+
+    /**
+     * 与列名一一对应的赋值函数，final字段为null
+     *
+     * @return
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BiConsumer<Object, Object>[] setters() {
+        BiConsumer<Object, Object>[] result = setters;
+        if (result == null) {
+            result = new BiConsumer[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                if (!Modifier.isFinal(fields[i].getModifiers())) {
+                    result[i] = setter(type, fields[i]);
+                }
+            }
+            setters = result;
+        }
+        return result;
+    }
+
+    /**
+     * 用无参构造器创建实例
+     *
+     * @return
+     */
+    Object newInstance() {
+        Supplier<Object> result = constructor;
+        if (result == null) {
+            try {
+                Constructor<?> c = type.getDeclaredConstructor();
+                c.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+                result = () -> {
+                    try {
+                        return handle.invokeExact();
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("创建 " + type.getName() + " 实例异常", e);
+                    }
+                };
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException(type.getName() + " 没有可用的无参构造器", e);
+            }
+            constructor = result;
+        }
+        return result.get();
+    }
+
+    private static Map<Field, String> annotatedColumns(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            List<Field> declared = new ArrayList<>();
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                    declared.add(field);
+                }
+            }
+            fields.addAll(0, declared);//父类字段在前
+        }
+        boolean annotated = false;
+        for (Field field : fields) {
+            if (field.isAnnotationPresent(ExcelColumn.class)) {
+                annotated = true;
+                break;
+            }
+        }
+        Map<Field, String> columns = new LinkedHashMap<>();
+        for (Field field : fields) {
+            ExcelColumn column = field.getAnnotation(ExcelColumn.class);
+            if (annotated) {
+                if (column != null && !column.ignore()) {
+                    columns.put(field, column.value().isEmpty() ? field.getName() : column.value());
+                }
+            } else if (!Modifier.isTransient(field.getModifiers())) {
+                columns.put(field, field.getName());
+            }
+        }
+        return columns;
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Function<Object, Object> getter(Class<?> type, Field field) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Method method = findGetter(type, field);
+        if (method != null && visible(method.getDeclaringClass())) {
+            try {
+                MethodHandle handle = lookup.unreflect(method);
+                return lambda(lookup, handle);
+            } catch (Throwable e) {
+                //实体类不可见等情况，退回字段取值
+            }
+        }
+        try {
+            field.setAccessible(true);
+            MethodHandle handle = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            return bean -> {
+                try {
+                    return handle.invokeExact(bean);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("读取字段 " + field.getName() + " 异常", e);
+                }
+            };
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("无法读取字段 " + type.getName() + "." + field.getName(), e);
+        }
+    }
+
+    private static BiConsumer<Object, Object> setter(Class<?> type, Field field) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Method method = findSetter(type, field);
+        if (method != null && visible(method.getDeclaringClass())) {
+            try {
+                MethodHandle handle = lookup.unreflect(method);
+                return setterLambda(lookup, handle);
+            } catch (Throwable e) {
+                //实体类不可见等情况，退回字段赋值
+            }
+        }
+        try {
+            field.setAccessible(true);
+            MethodHandle handle = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return (bean, value) -> {
+                try {
+                    handle.invokeExact(bean, value);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("设置字段 " + field.getName() + " 异常", e);
+                }
+            };
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("无法设置字段 " + type.getName() + "." + field.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setterLambda(MethodHandles.Lookup lookup, MethodHandle handle) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class),
+                handle,
+                handle.type().wrap().changeReturnType(void.class));
+        return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> lambda(MethodHandles.Lookup lookup, MethodHandle handle) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                handle,
+                handle.type().wrap());
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    /**
+     * 生成的lambda类定义在本类的类加载器中，实体类必须对它可见
+     */
+    private static boolean visible(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, BeanAccessor.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static Method findSetter(Class<?> type, Field field) {
+        String name = field.getName();
+        try {
+            Method method = type.getMethod("set" + Character.toUpperCase(name.charAt(0)) + name.substring(1), field.getType());
+            if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                return method;
+            }
+        } catch (NoSuchMethodException e) {
+            //没有此setter
+        }
+        return null;
+    }
+
+    private static Method findGetter(Class<?> type, Field field) {
+        String name = field.getName();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method method = type.getMethod(prefix + suffix);
+                if (method.getReturnType() != void.class && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                //没有此getter
+            }
+        }
+        return null;
+    }
+
+}
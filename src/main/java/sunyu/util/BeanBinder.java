@@ -0,0 +1,169 @@
+package sunyu.util;
+
+import cn.hutool.core.convert.BasicType;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.LocalDateTimeUtil;
+import cn.hutool.core.util.NumberUtil;
+import sunyu.util.pojo.CellError;
+import sunyu.util.pojo.ExcelRow;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 把行绑定到实体类，字段与列的对应关系每个Sheet只解析一次，之后按列索引直接从rowCells取值、转换、赋值
+ * <p>
+ * 每个字段按类型预先生成转换函数，空白单元格不赋值；转换失败时交给错误处理器，没有处理器时抛出异常。
+ * 非线程安全，每次读取创建一个
+ *
+ * @author 孙宇
+ */
+final class BeanBinder<T> {
+    private final BeanAccessor accessor;
+    private final BiConsumer<Object, Object>[] setters;
+    private final Function<Object, Object>[] converters;
+    private final Consumer<CellError> errorHandler;
+    //每个Sheet的表头索引表对应的列索引，按对象比较
+    private final Map<ExcelRow.Headers, int[]> sheetIndexes = new IdentityHashMap<>();
+    private ExcelRow.Headers lastHeaders;
+    private int[] lastIndexes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BeanBinder(Class<T> type, Consumer<CellError> errorHandler) {
+        this.accessor = BeanAccessor.of(type);
+        this.setters = accessor.setters();
+        this.converters = new Function[accessor.fields.length];
+        for (int i = 0; i < converters.length; i++) {
+            converters[i] = converter(accessor.fields[i].getType());
+        }
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * 绑定一行，行必须是按表头索引表读取的视图（复用模式的行）
+     *
+     * @param row
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    T bind(ExcelRow row) {
+        ExcelRow.Headers headers = row.getHeaders();
+        int[] indexes = lastIndexes;
+        if (headers != lastHeaders) {
+            indexes = sheetIndexes.computeIfAbsent(headers, this::resolve);
+            lastHeaders = headers;
+            lastIndexes = indexes;
+        }
+        Object bean = accessor.newInstance();
+        List<Object> cells = row.getRowCells();
+        for (int i = 0; i < indexes.length; i++) {
+            int column = indexes[i];
+            if (column < 0 || column >= cells.size() || setters[i] == null) {
+                continue;
+            }
+            Object value = cells.get(column);
+            if (value == null) {
+                continue;
+            }
+            Object converted;
+            try {
+                converted = converters[i].apply(value);
+            } catch (RuntimeException e) {
+                error(new CellError(row.getSheetIndex(), row.getRowIndex(), column, accessor.columns[i], value,
+                        accessor.fields[i].getName(), accessor.fields[i].getType(), e));
+                continue;
+            }
+            if (converted != null) {
+                setters[i].accept(bean, converted);
+            }
+        }
+        return (T) bean;
+    }
+
+    private int[] resolve(ExcelRow.Headers headers) {
+        int[] indexes = new int[accessor.columns.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = headers.indexOf(accessor.columns[i]);
+        }
+        return indexes;
+    }
+
+    private void error(CellError error) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException(error.toString(), error.getCause());
+        }
+        errorHandler.accept(error);
+    }
+
+    /**
+     * 按字段类型生成转换函数，字符串先去除左右空格，空字符串返回null
+     */
+    private static Function<Object, Object> converter(Class<?> fieldType) {
+        Class<?> type = BasicType.wrap(fieldType);
+        if (type == String.class) {
+            return value -> {
+                if (value instanceof String) {
+                    return ((String) value).trim();
+                }
+                return value instanceof Number ? NumberUtil.toStr((Number) value) : value.toString();
+            };
+        }
+        Function<Object, Object> converter;
+        if (type == Integer.class) {
+            converter = value -> value instanceof Number ? Math.toIntExact(toLong((Number) value)) : new BigDecimal((String) value).intValueExact();
+        } else if (type == Long.class) {
+            converter = value -> value instanceof Number ? toLong((Number) value) : new BigDecimal((String) value).longValueExact();
+        } else if (type == Double.class) {
+            converter = value -> value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf((String) value);
+        } else if (type == BigDecimal.class) {
+            converter = value -> value instanceof Number ? NumberUtil.toBigDecimal((Number) value) : new BigDecimal((String) value);
+        } else if (type == Date.class) {
+            converter = value -> value instanceof Date ? value : DateUtil.parse((String) value);
+        } else if (type == LocalDateTime.class) {
+            converter = value -> value instanceof Date ? LocalDateTimeUtil.of((Date) value) : DateUtil.parse((String) value).toLocalDateTime();
+        } else if (type == LocalDate.class) {
+            converter = value -> (value instanceof Date ? LocalDateTimeUtil.of((Date) value) : DateUtil.parse((String) value).toLocalDateTime()).toLocalDate();
+        } else {
+            converter = value -> {
+                Object converted = Convert.convert(type, value);
+                if (converted == null) {
+                    throw new IllegalArgumentException("不支持的转换");
+                }
+                return converted;
+            };
+        }
+        return value -> {
+            if (value instanceof String) {
+                String text = ((String) value).trim();
+                if (text.isEmpty()) {
+                    return null;
+                }
+                value = text;
+            }
+            if (type.isInstance(value)) {
+                return value;
+            }
+            return converter.apply(value);
+        };
+    }
+
+    /**
+     * 数值转换为long，有小数部分时抛出异常
+     */
+    private static long toLong(Number number) {
+        if (number instanceof Double || number instanceof Float || number instanceof BigDecimal) {
+            return NumberUtil.toBigDecimal(number).longValueExact();
+        }
+        return number.longValue();
+    }
+
+}
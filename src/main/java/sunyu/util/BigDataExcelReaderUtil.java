@@ -1,16 +1,31 @@
 package sunyu.util;
 
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
 import cn.hutool.poi.excel.ExcelUtil;
+import cn.hutool.poi.excel.sax.handler.RowHandler;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import sunyu.util.pojo.CellError;
 import sunyu.util.pojo.ExcelRow;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 大数据Excel读取工具类
@@ -27,15 +42,57 @@ public class BigDataExcelReaderUtil implements AutoCloseable {
 
     private BigDataExcelReaderUtil(Config config) {
         log.info("[构建BigDataExcelReaderUtil] 开始");
+        config.metered = config.metrics != ExcelMetrics.NOOP;
+        if (config.metered) {
+            log.info("指标监听器 {} 进度间隔 {} 行", config.metrics.getClass().getName(), config.progressInterval);
+        }
         log.info("[构建BigDataExcelReaderUtil] 结束");
         this.config = config;
     }
 
     private static class Config {
-        private final Map<Integer, List<String>> sheetHeaders = new HashMap<>();//存储每个sheet的里的标题列表
+        private final Map<Integer, SheetState> sheets = new ConcurrentHashMap<>();//每个sheet的表头等状态，只在解析该sheet的线程中读写
         private int rid = 0;//设置读取sheet rid，-1表示读取全部Sheet, 0表示只读取第一个Sheet
         private String filePath;//读取文件路径
         private File file;//读取文件
+        private InputStream inputStream;//读取的输入流，没有设置文件时使用
+        private boolean inputStreamRead = false;//输入流是否已读取过，只能读取一次
+        private boolean mappedFile = false;//xlsx文件是否通过内存映射读取zip条目
+        private ExcelFormat format;//读取格式，为null时按文件扩展名判断
+        private boolean reuseRow = false;//是否复用ExcelRow，每个Sheet只解析一次表头索引表，rowMap为按索引读取的视图
+        private final List<String> selectColumns = new ArrayList<>();//只读取的列，按表头
+        private final List<Integer> selectColumnIndexes = new ArrayList<>();//只读取的列，按列索引
+        private XlsxSaxReader saxReader;//读取xlsx时的SAX读取器，用于在表头解析后设置选中的列
+        private int queueCapacity = 16;//拉取式读取时队列最多缓存的批次数
+        private int queueBatchSize = 1000;//拉取式读取时每批行数
+        private int workers = 0;//批量读取时处理批次的线程数，0表示在解析线程中处理
+        private boolean ordered = true;//批量读取时是否按文件顺序提交处理结果
+        private int sheetParallelism = 1;//读取全部Sheet时并行解析的Sheet数
+        private boolean sheetOrdered = true;//并行解析Sheet时是否按Sheet顺序回调
+        private boolean mappedSharedStrings = false;//共享字符串表是否放在内存映射的临时文件中
+        private int sharedStringsCacheSize = 1024;//内存映射共享字符串表的LRU缓存字符串数
+        private File tmpDir;//临时文件目录
+        private long offset = 0;//每个sheet跳过的数据行数
+        private long limit = Long.MAX_VALUE;//每个sheet最多读取的数据行数
+        private final List<String> sheetNames = new ArrayList<>();//只读取的sheet名称
+        private Consumer<CellError> cellErrorHandler;//读取到实体类时单元格转换失败的处理器，为null时抛出异常
+        private ExcelMetrics metrics = ExcelMetrics.NOOP;//指标监听器
+        private boolean metered = false;//是否记录指标，监听器不是NOOP时才计数
+        private int progressInterval = 100000;//进度回调间隔行数
+        private final AtomicLong rowsRead = new AtomicLong();//本次读取已汇总到监听器的行数
+        private volatile long readStartNanos;//本次读取开始的时间
+    }
+
+    /**
+     * 一个sheet的表头等状态
+     */
+    private static class SheetState {
+        private List<String> headers;//标题列表
+        private int[] selected;//选中的列索引，升序，为null表示全部列
+        private ExcelRow.Headers rowHeaders;//复用模式下的表头索引表
+        private ExcelRow row;//复用模式下复用的行对象
+        private List<ExcelRow> pending;//并行解析Sheet时未放入队列的行
+        private int unreportedRows;//还未汇总到监听器的行数
     }
 
     public static class Builder {
@@ -69,6 +126,231 @@ public class BigDataExcelReaderUtil implements AutoCloseable {
             return this;
         }
 
+        /**
+         * 设置是否复用ExcelRow，默认false
+         * <p>
+         * 复用时每个Sheet只创建一个ExcelRow，rowMap是按表头索引表读取单元格的只读视图，不再为每行创建HashMap；
+         * 回调返回后行对象会被下一行覆盖，需要保留时请调用 {@link ExcelRow#copy()}
+         *
+         * @param reuseRow
+         *
+         * @return
+         */
+        public Builder setReuseRow(boolean reuseRow) {
+            config.reuseRow = reuseRow;
+            return this;
+        }
+
+        /**
+         * 设置只读取的列（按表头），可与 {@link #setSelectColumnIndexes(int...)} 同时使用
+         * <p>
+         * 其他列不转换值、不去除空格、不放入rowMap；读取xlsx时SAX解析也跳过这些列，rowCells中对应位置为null
+         *
+         * @param headers
+         *
+         * @return
+         */
+        public Builder setSelectColumns(String... headers) {
+            config.selectColumns.addAll(Arrays.asList(headers));
+            return this;
+        }
+
+        /**
+         * 设置只读取的列（按列索引，从0开始），可与 {@link #setSelectColumns(String...)} 同时使用
+         *
+         * @param indexes
+         *
+         * @return
+         */
+        public Builder setSelectColumnIndexes(int... indexes) {
+            for (int index : indexes) {
+                config.selectColumnIndexes.add(index);
+            }
+            return this;
+        }
+
+        /**
+         * 设置拉取式读取 {@link BigDataExcelReaderUtil#iterator()}、{@link BigDataExcelReaderUtil#stream()} 的队列，默认16批，每批1000行
+         * <p>
+         * 队列满时解析线程等待消费，最多缓存 capacity * batchSize 行
+         *
+         * @param capacity  队列最多缓存的批次数
+         * @param batchSize 每批行数
+         *
+         * @return
+         */
+        public Builder setQueue(int capacity, int batchSize) {
+            if (capacity < 1 || batchSize < 1) {
+                throw new IllegalArgumentException("capacity和batchSize必须大于0");
+            }
+            config.queueCapacity = capacity;
+            config.queueBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 设置批量读取 {@link BigDataExcelReaderUtil#read(int, Consumer)} 处理批次的线程数，默认0，在解析线程中处理
+         * <p>
+         * 大于0时解析线程只负责解析和分批，批次交给线程池并发处理，最多 workers * 2 个批次在处理中，超过时解析等待
+         *
+         * @param workers
+         *
+         * @return
+         */
+        public Builder setWorkers(int workers) {
+            config.workers = workers;
+            return this;
+        }
+
+        /**
+         * 设置批量读取 {@link BigDataExcelReaderUtil#read(int, Function, Consumer)} 是否按文件顺序提交处理结果，默认true
+         * <p>
+         * false时哪个批次先处理完先提交
+         *
+         * @param ordered
+         *
+         * @return
+         */
+        public Builder setOrdered(boolean ordered) {
+            config.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * 设置读取全部Sheet（rid为-1）时并行解析的Sheet数，默认1，只对xlsx生效
+         * <p>
+         * 各Sheet共享同一个共享字符串表，每个Sheet在一个线程中解析；解析出的行经有界队列（见 {@link #setQueue(int, int)}）
+         * 交回调用read的线程，回调仍是单线程的
+         *
+         * @param sheetParallelism
+         *
+         * @return
+         */
+        public Builder setSheetParallelism(int sheetParallelism) {
+            config.sheetParallelism = sheetParallelism;
+            return this;
+        }
+
+        /**
+         * 设置并行解析Sheet时是否按Sheet顺序回调，默认true
+         * <p>
+         * true时回调完一个Sheet的所有行再回调下一个Sheet，后面的Sheet最多提前解析队列容量的行；
+         * false时各Sheet的行交错回调，哪个Sheet先解析出来先回调
+         *
+         * @param sheetOrdered
+         *
+         * @return
+         */
+        public Builder setSheetOrdered(boolean sheetOrdered) {
+            config.sheetOrdered = sheetOrdered;
+            return this;
+        }
+
+        /**
+         * 设置xlsx的共享字符串表是否放在内存映射的临时文件中，默认false
+         * <p>
+         * 默认共享字符串表整个加载到堆内，字符串非常多的文件可能内存溢出；开启后字符串和偏移索引写入临时文件并映射到内存，
+         * 堆内只保留 {@link #setSharedStringsCacheSize(int)} 个最近读取的字符串，读取完成后删除临时文件
+         *
+         * @param mappedSharedStrings
+         *
+         * @return
+         */
+        public Builder setMappedSharedStrings(boolean mappedSharedStrings) {
+            config.mappedSharedStrings = mappedSharedStrings;
+            return this;
+        }
+
+        /**
+         * 设置内存映射共享字符串表的LRU缓存字符串数，默认1024
+         *
+         * @param sharedStringsCacheSize
+         *
+         * @return
+         */
+        public Builder setSharedStringsCacheSize(int sharedStringsCacheSize) {
+            config.sharedStringsCacheSize = sharedStringsCacheSize;
+            return this;
+        }
+
+        /**
+         * 设置临时文件目录，默认系统临时目录
+         *
+         * @param tmpDir
+         *
+         * @return
+         */
+        public Builder setTmpDir(File tmpDir) {
+            config.tmpDir = tmpDir;
+            return this;
+        }
+
+        /**
+         * 设置临时文件目录，默认系统临时目录
+         *
+         * @param tmpDir
+         *
+         * @return
+         */
+        public Builder setTmpDir(String tmpDir) {
+            config.tmpDir = FileUtil.file(tmpDir);
+            return this;
+        }
+
+        /**
+         * 设置每个Sheet跳过的数据行数（不含表头），默认0
+         * <p>
+         * 读取xlsx时跳过的行不收集文本、不转换值；可与 {@link #setLimit(long)} 一起按行范围分片读取
+         *
+         * @param offset
+         *
+         * @return
+         */
+        public Builder setOffset(long offset) {
+            config.offset = offset;
+            return this;
+        }
+
+        /**
+         * 设置每个Sheet最多读取的数据行数（不含表头），默认不限制
+         * <p>
+         * 读取xlsx时达到后立即结束该Sheet的解析，预览前N行的耗时只与N有关
+         *
+         * @param limit
+         *
+         * @return
+         */
+        public Builder setLimit(long limit) {
+            config.limit = limit;
+            return this;
+        }
+
+        /**
+         * 设置只读取的Sheet名称，需要配合 {@link #setRid(int)} 为-1使用；sheetIndex仍是Sheet在工作簿中的位置
+         *
+         * @param sheetNames
+         *
+         * @return
+         */
+        public Builder setSheetNames(String... sheetNames) {
+            config.sheetNames.addAll(Arrays.asList(sheetNames));
+            return this;
+        }
+
+        /**
+         * 设置读取到实体类 {@link BigDataExcelReaderUtil#read(Class, Consumer)} 时单元格转换失败的处理器
+         * <p>
+         * 设置后转换失败的字段保持默认值，继续读取；默认抛出异常
+         *
+         * @param cellErrorHandler
+         *
+         * @return
+         */
+        public Builder setCellErrorHandler(Consumer<CellError> cellErrorHandler) {
+            config.cellErrorHandler = cellErrorHandler;
+            return this;
+        }
+
         /**
          * 设置读取文件
          *
@@ -81,6 +363,87 @@ public class BigDataExcelReaderUtil implements AutoCloseable {
             return this;
         }
 
+        /**
+         * 设置读取的输入流，如上传或对象存储下载的流，不需要先保存成文件
+         * <p>
+         * xlsx边读取边解析，Sheet在共享字符串表之后时（POI和本工具写出的文件）直接从流中解析，
+         * 否则（Excel保存的文件）该Sheet先写入临时文件，读到共享字符串表后再解析；xls由hutool读取到内存。
+         * 输入流只能读取一次，读取完成后关闭；读取全部Sheet时总是顺序解析，不使用 {@link #setSheetParallelism(int)}
+         *
+         * @param inputStream
+         *
+         * @return
+         */
+        public Builder setInputStream(InputStream inputStream) {
+            config.inputStream = inputStream;
+            config.inputStreamRead = false;
+            return this;
+        }
+
+        /**
+         * 设置读取的通道，见 {@link #setInputStream(InputStream)}
+         *
+         * @param channel
+         *
+         * @return
+         */
+        public Builder setChannel(ReadableByteChannel channel) {
+            return setInputStream(Channels.newInputStream(channel));
+        }
+
+        /**
+         * xlsx文件是否通过内存映射读取zip条目，zip目录和条目数据直接从映射内存读取；不做zip炸弹检查，只用于可信的文件
+         *
+         * @param mappedFile
+         *
+         * @return
+         */
+        public Builder setMappedFile(boolean mappedFile) {
+            config.mappedFile = mappedFile;
+            return this;
+        }
+
+        /**
+         * 设置读取格式，默认按文件扩展名判断：.csv为CSV，.tsv、.tab为TSV，其他为Excel；读取输入流的CSV、TSV时需要设置
+         * <p>
+         * CSV、TSV从文件通道读取并直接解析文本，第一行是表头，值都是字符串，没有引号的空字段为null；
+         * 只有一个"Sheet"，序号为0，忽略rid和Sheet名称；不支持原始值模式
+         *
+         * @param format
+         *
+         * @return
+         */
+        public Builder setFormat(ExcelFormat format) {
+            config.format = format;
+            return this;
+        }
+
+        /**
+         * 设置指标监听器，接入自己的监控，默认 {@link ExcelMetrics#NOOP} 不计数也不回调
+         *
+         * @param metrics
+         *
+         * @return
+         */
+        public Builder setMetrics(ExcelMetrics metrics) {
+            config.metrics = metrics != null ? metrics : ExcelMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * 设置进度回调间隔行数，每解析这么多数据行回调一次 {@link ExcelMetrics#progress}，默认100000；并行解析Sheet时按Sheet分别计数
+         *
+         * @param progressInterval
+         *
+         * @return
+         */
+        public Builder setProgressInterval(int progressInterval) {
+            if (progressInterval > 0) {
+                config.progressInterval = progressInterval;
+            }
+            return this;
+        }
+
     }
 
     /**
@@ -98,18 +461,665 @@ public class BigDataExcelReaderUtil implements AutoCloseable {
      * @param consumer 数据行处理器
      */
     public void read(Consumer<ExcelRow> consumer) {
-        if (config.filePath != null) {
-            ExcelUtil.readBySax(config.filePath, config.rid, (sheetIndex, rowIndex, rowCells) -> {
-                extracted(consumer, sheetIndex, rowIndex, rowCells);
+        read(consumer, false, false);
+    }
+
+    /**
+     * 读取Excel数据到实体类
+     * <p>
+     * 列来自字段注解 {@link sunyu.util.annotation.ExcelColumn}，都没有标注时为所有非static、非transient字段，列名为字段名；
+     * 每个Sheet按表头解析一次字段对应的列索引，之后直接从rowCells取值、按字段类型转换并赋值，不创建rowMap；
+     * 表头中没有的字段、空白单元格不赋值。实体类需要无参构造器
+     *
+     * @param type     实体类
+     * @param consumer 实体处理器
+     * @param <T>
+     */
+    public <T> void read(Class<T> type, Consumer<T> consumer) {
+        BeanBinder<T> binder = new BeanBinder<>(type, config.cellErrorHandler);
+        read(row -> consumer.accept(binder.bind(row)), false, true);
+    }
+
+    /**
+     * 拉取式读取Excel数据到实体类，见 {@link #read(Class, Consumer)}、{@link #stream()}
+     * <p>
+     * 使用完必须关闭流，建议放在try-with-resources中
+     *
+     * @param type 实体类
+     * @param <T>
+     *
+     * @return 实体流
+     */
+    public <T> Stream<T> stream(Class<T> type) {
+        BeanBinder<T> binder = new BeanBinder<>(type, config.cellErrorHandler);
+        return stream(iterator(true)).map(binder::bind);
+    }
+
+    /**
+     * 以原始值模式读取Excel数据，只支持xlsx
+     * <p>
+     * 数据行不做数字、日期转换，不创建单元格对象，同一个Sheet的所有行复用一个 {@link RawExcelRow}，
+     * 调用 {@link RawExcelRow#getDouble(int)}、{@link RawExcelRow#getLong(int)} 等方法时才从原始文本转换；
+     * 回调返回后行会被覆盖。选择列、行范围、Sheet名称过滤仍然有效，Sheet总是顺序解析
+     *
+     * @param consumer 原始行处理器
+     */
+    public void readRaw(Consumer<RawExcelRow> consumer) {
+        File file = file();
+        InputStream in = file == null ? inputStream() : null;
+        if (file == null && in == null) {
+            return;
+        }
+        if (file != null ? !isXlsx(file) : !isXlsx(in)) {
+            IoUtil.close(in);
+            throw new IllegalStateException("原始值模式只支持xlsx文件");
+        }
+        //第一行按普通方式解析表头和选择列
+        RowHandler rowHandler = (sheetIndex, rowIndex, rowCells) -> extracted(row -> {
+        }, sheetIndex, rowIndex, rowCells, false, true);
+        config.saxReader = file != null ? newSaxReader(file, rowHandler) : newSaxReader(in, rowHandler);
+        config.saxReader.raw(row -> {
+            SheetState state = config.sheets.get(row.getSheetIndex());
+            if (state == null) {
+                return;
+            }
+            row.setHeaders(state.rowHeaders);
+            countRead(state);
+            consumer.accept(row);
+        });
+        startRead();
+        try {
+            config.saxReader.read(config.rid);
+        } finally {
+            config.saxReader = null;
+            reportRead();
+        }
+    }
+
+    /**
+     * 批量读取Excel数据，每batchSize行回调一次，最后一批可能不足
+     * <p>
+     * 设置了 {@link Builder#setWorkers(int)} 时批次在线程池中并发处理，回调需要线程安全，批次之间不保证顺序
+     *
+     * @param batchSize 每批行数
+     * @param consumer  批次处理器
+     */
+    public void read(int batchSize, Consumer<List<ExcelRow>> consumer) {
+        read(batchSize, rows -> {
+            consumer.accept(rows);
+            return null;
+        }, null);
+    }
+
+    /**
+     * 批量读取Excel数据，批次先由processor处理（设置了 {@link Builder#setWorkers(int)} 时并发），
+     * 再由committer在解析线程中逐个提交，{@link Builder#setOrdered(boolean)} 决定是否按文件顺序提交
+     * <p>
+     * 适合并发校验、转换，再顺序批量写入数据库的场景；任一批次处理异常时停止读取并抛出
+     *
+     * @param batchSize 每批行数
+     * @param processor 批次处理器，可以并发执行
+     * @param committer 处理结果提交器，单线程执行，可以为null
+     * @param <R>       处理结果类型
+     */
+    public <R> void read(int batchSize, Function<List<ExcelRow>, R> processor, Consumer<R> committer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        readBatches(batchSize, config.workers, config.ordered, false, processor, committer);
+    }
+
+    /**
+     * 批量读取，见 {@link #read(int, Function, Consumer)}
+     *
+     * @param batchSize 每批行数
+     * @param workers   处理批次的线程数，0表示在解析线程中处理
+     * @param ordered   是否按文件顺序提交处理结果
+     * @param view      是否使用按表头索引表读取的视图行，不创建rowMap
+     * @param processor 批次处理器
+     * @param committer 处理结果提交器，在解析线程中执行
+     * @param <R>       处理结果类型
+     */
+    <R> void readBatches(int batchSize, int workers, boolean ordered, boolean view, Function<List<ExcelRow>, R> processor, Consumer<R> committer) {
+        BatchDispatcher<R> dispatcher = new BatchDispatcher<>(batchSize, workers, ordered, processor, committer);
+        try {
+            read(dispatcher, true, view);
+            dispatcher.finish();
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * 已解析的Sheet表头，设置了选择列时只包含选中的列
+     *
+     * @param sheetIndex
+     *
+     * @return 表头还未解析时返回null
+     */
+    List<String> headers(int sheetIndex) {
+        SheetState state = config.sheets.get(sheetIndex);
+        if (state == null) {
+            return null;
+        }
+        if (state.selected == null) {
+            return state.headers;
+        }
+        List<String> headers = new ArrayList<>(state.selected.length);
+        for (int i : state.selected) {
+            headers.add(state.headers.get(i));
+        }
+        return headers;
+    }
+
+    /**
+     * 拉取式读取Excel数据，解析在后台线程中进行，与消费并行
+     * <p>
+     * 使用完必须关闭，提前关闭会停止解析；复用模式下每行是独立的视图对象，仍然不创建HashMap
+     *
+     * @return 行迭代器
+     */
+    public ExcelRowIterator iterator() {
+        return iterator(false);
+    }
+
+    private ExcelRowIterator iterator(boolean view) {
+        return new ExcelRowIterator(consumer -> read(consumer, true, view), config.queueCapacity, config.queueBatchSize);
+    }
+
+    /**
+     * 拉取式读取Excel数据，见 {@link #iterator()}
+     * <p>
+     * 使用完必须关闭流，建议放在try-with-resources中
+     *
+     * @return 行流
+     */
+    public Stream<ExcelRow> stream() {
+        return stream(iterator());
+    }
+
+    private Stream<ExcelRow> stream(ExcelRowIterator iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * @param consumer 数据行处理器
+     * @param detach   复用模式下是否每行创建独立的视图对象，行会被交给其他线程时使用
+     * @param view     是否总是使用按表头索引表读取的视图行，不创建rowMap
+     */
+    private void read(Consumer<ExcelRow> consumer, boolean detach, boolean view) {
+        File file = file();
+        InputStream in = file == null ? inputStream() : null;
+        if (file == null && in == null) {
+            return;
+        }
+        RowHandler rowHandler = (sheetIndex, rowIndex, rowCells) -> {
+            extracted(consumer, sheetIndex, rowIndex, rowCells, detach, view);
+        };
+        ExcelFormat format = config.format != null ? config.format : (file != null ? ExcelFormat.of(file.getName()) : ExcelFormat.EXCEL);
+        boolean xlsx = !format.isDelimited() && (file != null ? isXlsx(file) : isXlsx(in));
+        startRead();
+        try {
+            if (format.isDelimited()) {
+                readDelimited(file, in, format, rowHandler);
+            } else if (xlsx && file != null && config.rid < 0 && config.sheetParallelism > 1) {
+                new ParallelSheets(consumer, view).read(file);
+            } else if (xlsx) {//xlsx使用自己的SAX读取器，xls仍使用hutool
+                config.saxReader = file != null ? newSaxReader(file, rowHandler) : newSaxReader(in, rowHandler);
+                try {
+                    config.saxReader.read(config.rid);
+                } finally {
+                    config.saxReader = null;
+                }
+            } else if (in != null) {
+                try {
+                    if (config.sheetNames.isEmpty()) {
+                        ExcelUtil.readBySax(in, config.rid, rangeFilter(rowHandler));
+                    } else if (config.sheetNames.size() == 1) {
+                        ExcelUtil.readBySax(in, config.sheetNames.get(0), rangeFilter(rowHandler));
+                    } else {
+                        throw new IllegalStateException("xls输入流只能按一个Sheet名称读取");
+                    }
+                } finally {
+                    IoUtil.close(in);
+                }
+            } else if (config.sheetNames.isEmpty()) {
+                ExcelUtil.readBySax(file, config.rid, rangeFilter(rowHandler));
+            } else {
+                for (String sheetName : config.sheetNames) {
+                    ExcelUtil.readBySax(file, sheetName, rangeFilter(rowHandler));
+                }
+            }
+        } finally {
+            reportRead();
+        }
+    }
+
+    /**
+     * 读取CSV、TSV，只有一个序号为0的"Sheet"，按行范围跳过和提前结束
+     *
+     * @param file
+     * @param in
+     * @param format
+     * @param rowHandler
+     */
+    private void readDelimited(File file, InputStream in, ExcelFormat format, RowHandler rowHandler) {
+        try (CsvRowReader reader = new CsvRowReader(file != null ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : Channels.newChannel(in),
+                format.getDelimiter())) {
+            List<Object> rowCells;
+            long rowIndex = 0;
+            while ((rowCells = reader.nextRow()) != null) {
+                long dataRow = rowIndex - 1;//第一行是表头
+                if (dataRow >= 0 && dataRow - config.offset >= config.limit) {
+                    break;
+                }
+                if (dataRow < 0 || dataRow >= config.offset) {
+                    rowHandler.handle(0, rowIndex, rowCells);
+                }
+                rowIndex++;
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * xls按行范围过滤，hutool不能跳过转换和提前结束，只是不回调范围外的行
+     *
+     * @param rowHandler
+     *
+     * @return
+     */
+    private RowHandler rangeFilter(RowHandler rowHandler) {
+        if (config.offset <= 0 && config.limit == Long.MAX_VALUE) {
+            return rowHandler;
+        }
+        Map<Integer, long[]> rowCounts = new HashMap<>();
+        return (sheetIndex, rowIndex, rowCells) -> {
+            long dataRow = rowCounts.computeIfAbsent(sheetIndex, k -> new long[1])[0]++ - 1;//第一行是表头
+            if (dataRow < 0 || (dataRow >= config.offset && dataRow - config.offset < config.limit)) {
+                rowHandler.handle(sheetIndex, rowIndex, rowCells);
+            }
+        };
+    }
+
+    /**
+     * 把解析线程中的行分批，交给processor处理后提交
+     */
+    private final class BatchDispatcher<R> implements Consumer<ExcelRow> {
+        private final int batchSize;
+        private final Function<List<ExcelRow>, R> processor;
+        private final Consumer<R> committer;
+        private final ExecutorService executor;//为null时在解析线程中处理
+        private final int maxInFlight;
+        private final boolean ordered;
+        private final Deque<Future<R>> inFlight = new ArrayDeque<>();//按提交顺序排列
+        private final CompletionService<R> completion;//不按顺序提交时按完成顺序取结果
+        private List<ExcelRow> batch;
+
+        private BatchDispatcher(int batchSize, int workers, boolean ordered, Function<List<ExcelRow>, R> processor, Consumer<R> committer) {
+            this.batchSize = batchSize;
+            this.processor = processor;
+            this.committer = committer;
+            this.ordered = ordered;
+            this.batch = new ArrayList<>(batchSize);
+            if (workers > 0) {
+                executor = Executors.newFixedThreadPool(workers,
+                        ThreadFactoryBuilder.create().setNamePrefix("excel-batch-").setDaemon(true).build());
+                completion = new ExecutorCompletionService<>(executor);
+                maxInFlight = workers * 2;
+            } else {
+                executor = null;
+                completion = null;
+                maxInFlight = 0;
+            }
+        }
+
+        @Override
+        public void accept(ExcelRow row) {
+            batch.add(row);
+            if (batch.size() >= batchSize) {
+                dispatch();
+            }
+        }
+
+        private void dispatch() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<ExcelRow> rows = batch;
+            batch = new ArrayList<>(batchSize);
+            if (executor == null) {
+                commit(processor.apply(rows));
+                return;
+            }
+            while (inFlight.size() >= maxInFlight) {//处理中的批次太多，解析等待
+                commit(awaitOne());
+            }
+            Callable<R> task = () -> processor.apply(rows);
+            inFlight.add(ordered ? executor.submit(task) : completion.submit(task));
+        }
+
+        private R awaitOne() {
+            Future<R> future = ordered ? inFlight.poll() : null;
+            try {
+                if (!ordered) {
+                    future = completion.take();
+                    inFlight.remove(future);
+                }
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待批次处理时被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("批次处理异常", cause);
+            }
+        }
+
+        private void commit(R result) {
+            if (committer != null) {
+                committer.accept(result);
+            }
+        }
+
+        /**
+         * 处理最后一批并等待所有批次提交
+         */
+        private void finish() {
+            dispatch();
+            while (!inFlight.isEmpty()) {
+                commit(awaitOne());
+            }
+        }
+
+        /**
+         * 正常结束或异常时关闭线程池，异常时未处理的批次被取消
+         */
+        private void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 多个Sheet并行解析，行经队列交回调用线程回调
+     */
+    private final class ParallelSheets {
+        private final List<ExcelRow> end = Collections.emptyList();//结束标记
+        private final Consumer<ExcelRow> consumer;
+        private final boolean view;
+        private final boolean ordered = config.sheetOrdered;
+        private final Map<Integer, BlockingQueue<List<ExcelRow>>> queues = new ConcurrentHashMap<>();//按Sheet顺序回调时每个Sheet一个队列
+        private final BlockingQueue<List<ExcelRow>> shared = new ArrayBlockingQueue<>(config.queueCapacity);//交错回调时所有Sheet共用
+        private XlsxSaxReader saxReader;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile Throwable error;
+
+        private ParallelSheets(Consumer<ExcelRow> consumer, boolean view) {
+            this.consumer = consumer;
+            this.view = view;
+        }
+
+        private void read(File file) {
+            saxReader = newSaxReader(file, (sheetIndex, rowIndex, rowCells) -> {
+                extracted(row -> add(sheetIndex, row), sheetIndex, rowIndex, rowCells, true, view);
             });
-        } else if (config.file != null) {
-            ExcelUtil.readBySax(config.file, config.rid, (sheetIndex, rowIndex, rowCells) -> {
-                extracted(consumer, sheetIndex, rowIndex, rowCells);
+            saxReader.onSheetEnd(this::sheetEnd);
+            config.saxReader = saxReader;
+            Thread parser = ThreadFactoryBuilder.create().setNamePrefix("excel-read-").setDaemon(true).build().newThread(() -> {
+                try {
+                    saxReader.read(-1, config.sheetParallelism);
+                } catch (Throwable e) {
+                    if (!cancelled) {
+                        error = e;
+                    }
+                } finally {
+                    finished = true;
+                    if (!ordered) {
+                        put(shared, end);
+                    }
+                }
             });
+            parser.start();
+            try {
+                if (ordered) {
+                    consumeOrdered();
+                } else {
+                    consume(shared);
+                }
+            } catch (RuntimeException | Error e) {
+                cancel();
+                throw e;
+            } finally {
+                join(parser);
+                config.saxReader = null;
+            }
+            throwIfFailed();
+        }
+
+        private BlockingQueue<List<ExcelRow>> queue(int sheetIndex) {
+            if (!ordered) {
+                return shared;
+            }
+            return queues.computeIfAbsent(sheetIndex, k -> new ArrayBlockingQueue<>(config.queueCapacity));
+        }
+
+        /**
+         * 在解析Sheet的线程中执行
+         */
+        private void add(int sheetIndex, ExcelRow row) {
+            SheetState state = config.sheets.get(sheetIndex);
+            if (state.pending == null) {
+                state.pending = new ArrayList<>(config.queueBatchSize);
+            }
+            state.pending.add(row);
+            if (state.pending.size() >= config.queueBatchSize) {
+                put(queue(sheetIndex), state.pending);
+                state.pending = null;
+            }
+        }
+
+        /**
+         * 在解析Sheet的线程中执行
+         */
+        private void sheetEnd(int sheetIndex) {
+            SheetState state = config.sheets.get(sheetIndex);
+            if (state != null && state.pending != null) {
+                put(queue(sheetIndex), state.pending);
+                state.pending = null;
+            }
+            if (ordered) {
+                put(queue(sheetIndex), end);
+            }
+        }
+
+        private void put(BlockingQueue<List<ExcelRow>> queue, List<ExcelRow> rows) {
+            try {
+                while (!cancelled) {//取消后不再放入，解析在下一行停止
+                    if (queue.offer(rows, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                saxReader.stop();
+            }
+        }
+
+        private void consumeOrdered() {
+            for (int sheetIndex = 0; ; sheetIndex++) {
+                BlockingQueue<List<ExcelRow>> queue = queue(sheetIndex);
+                List<ExcelRow> rows;
+                while ((rows = take(queue)) != end) {
+                    if (rows == null) {//解析已结束，没有这个Sheet或者解析失败
+                        return;
+                    }
+                    rows.forEach(consumer);
+                }
+                queues.remove(sheetIndex);
+            }
+        }
+
+        private void consume(BlockingQueue<List<ExcelRow>> queue) {
+            List<ExcelRow> rows;
+            while ((rows = take(queue)) != end && rows != null) {
+                rows.forEach(consumer);
+            }
+        }
+
+        /**
+         * 取出一批，解析已结束且队列为空时返回null
+         */
+        private List<ExcelRow> take(BlockingQueue<List<ExcelRow>> queue) {
+            try {
+                while (true) {
+                    List<ExcelRow> rows = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (rows != null) {
+                        return rows;
+                    }
+                    if (finished) {
+                        return queue.poll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待Sheet解析时被中断", e);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            saxReader.stop();
+            shared.clear();
+            queues.values().forEach(Collection::clear);
+        }
+
+        private void join(Thread parser) {
+            boolean interrupted = false;
+            while (parser.isAlive()) {
+                try {
+                    parser.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void throwIfFailed() {
+            Throwable e = error;
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            if (e != null) {
+                throw new IllegalStateException("解析Excel异常", e);
+            }
         }
     }
 
-    private void extracted(Consumer<ExcelRow> consumer, int sheetIndex, long rowIndex, List<Object> rowCells) {
+    private File file() {
+        return config.file != null ? config.file : (config.filePath != null ? FileUtil.file(config.filePath) : null);
+    }
+
+    /**
+     * 取出设置的输入流，包装为支持mark的流以便判断文件类型
+     *
+     * @return 没有设置时返回null
+     */
+    private InputStream inputStream() {
+        if (config.inputStream == null) {
+            return null;
+        }
+        if (config.inputStreamRead) {
+            throw new IllegalStateException("输入流只能读取一次");
+        }
+        config.inputStreamRead = true;
+        return FileMagic.prepareToCheckMagic(config.inputStream);
+    }
+
+    private XlsxSaxReader newSaxReader(File file, RowHandler rowHandler) {
+        XlsxSaxReader saxReader = new XlsxSaxReader(file, rowHandler);
+        saxReader.mapFile(config.mappedFile);
+        return configure(saxReader);
+    }
+
+    private XlsxSaxReader newSaxReader(InputStream in, RowHandler rowHandler) {
+        return configure(new XlsxSaxReader(in, rowHandler));
+    }
+
+    private XlsxSaxReader configure(XlsxSaxReader saxReader) {
+        saxReader.range(config.offset, config.limit);
+        saxReader.sheetNames(config.sheetNames);
+        if (config.mappedSharedStrings) {
+            saxReader.mapSharedStrings(config.tmpDir, config.sharedStringsCacheSize);
+        }
+        return saxReader;
+    }
+
+    private boolean isXlsx(File file) {
+        try {
+            return FileMagic.valueOf(file) == FileMagic.OOXML;
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private boolean isXlsx(InputStream in) {
+        try {
+            return FileMagic.valueOf(in) == FileMagic.OOXML;
+        } catch (IOException e) {
+            IoUtil.close(in);
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 按表头解析选中的列索引
+     *
+     * @param headers
+     *
+     * @return 没有设置选择列时返回null
+     */
+    private int[] selectColumns(int sheetIndex, List<String> headers) {
+        if (config.selectColumns.isEmpty() && config.selectColumnIndexes.isEmpty()) {
+            return null;
+        }
+        BitSet bits = new BitSet();
+        for (String column : config.selectColumns) {
+            int index = headers.lastIndexOf(column);//表头重复时与rowMap一致，取最后一列
+            if (index < 0) {
+                log.warn("表头中没有选择的列 {}", column);
+            } else {
+                bits.set(index);
+            }
+        }
+        for (int index : config.selectColumnIndexes) {
+            if (index >= 0 && index < headers.size()) {
+                bits.set(index);
+            }
+        }
+        if (config.saxReader != null) {
+            config.saxReader.select(sheetIndex, bits);
+        }
+        return bits.stream().toArray();
+    }
+
+    private void extracted(Consumer<ExcelRow> consumer, int sheetIndex, long rowIndex, List<Object> rowCells, boolean detach, boolean view) {
         if (rowIndex == 0) {
             // 将标题行转换为String类型并去除空格
             List<String> headers = new ArrayList<>();
@@ -118,27 +1128,94 @@ public class BigDataExcelReaderUtil implements AutoCloseable {
                     headers.add(cell.toString().trim());  // 标题去除左右空格
                 }
             }
-            config.sheetHeaders.put(sheetIndex, headers);
+            SheetState state = new SheetState();
+            state.headers = headers;
+            state.selected = selectColumns(sheetIndex, headers);
+            if (config.reuseRow || view) {
+                List<String> rowHeaders = headers;
+                if (state.selected != null) {//未选中的列不放入表头索引表
+                    rowHeaders = new ArrayList<>(Collections.nCopies(headers.size(), null));
+                    for (int i : state.selected) {
+                        rowHeaders.set(i, headers.get(i));
+                    }
+                }
+                state.rowHeaders = new ExcelRow.Headers(rowHeaders);
+                state.row = new ExcelRow(sheetIndex, state.rowHeaders);
+            }
+            config.sheets.put(sheetIndex, state);
+            config.metrics.count(ExcelMetrics.SHEETS_READ, 1);
+            return;
+        }
+        // 获取当前sheet的标题
+        SheetState state = config.sheets.get(sheetIndex);
+        if (state == null) {
+            return;
+        }
+        countRead(state);
+        if (config.reuseRow || view) {
+            ExcelRow row = detach ? new ExcelRow(sheetIndex, state.rowHeaders) : state.row;
+            row.reset(rowIndex, rowCells);
+            consumer.accept(row);
         } else {
-            // 获取当前sheet的标题
-            List<String> headers = config.sheetHeaders.get(sheetIndex);
-            if (headers != null) {
-                // 将行数据转换为Map，值保持Object类型
-                Map<String, Object> rowMap = new HashMap<>();
-                for (int i = 0; i < headers.size(); i++) {
-                    if (i < rowCells.size()) {
-                        Object value = rowCells.get(i);
-                        // 如果是String类型，去除左右空格
-                        if (value instanceof String) {
-                            value = ((String) value).trim();
-                        }
-                        rowMap.put(headers.get(i), value);
+            List<String> headers = state.headers;
+            int[] selected = state.selected;
+            // 将行数据转换为Map，值保持Object类型
+            Map<String, Object> rowMap = new HashMap<>();
+            int size = selected != null ? selected.length : headers.size();
+            for (int n = 0; n < size; n++) {
+                int i = selected != null ? selected[n] : n;
+                if (i < rowCells.size()) {
+                    Object value = rowCells.get(i);
+                    // 如果是String类型，去除左右空格
+                    if (value instanceof String) {
+                        value = ((String) value).trim();
                     }
+                    rowMap.put(headers.get(i), value);
                 }
-                consumer.accept(new ExcelRow(sheetIndex, rowIndex, rowMap, rowCells));
             }
+            consumer.accept(new ExcelRow(sheetIndex, rowIndex, rowMap, rowCells));
+        }
+    }
+
+    /**
+     * 开始一次读取，进度从这里计时
+     */
+    private void startRead() {
+        config.rowsRead.set(0);
+        config.readStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录解析了一行数据，每progressInterval行汇总到监听器并回调进度，在解析该Sheet的线程中执行
+     *
+     * @param state
+     */
+    private void countRead(SheetState state) {
+        if (config.metered && ++state.unreportedRows == config.progressInterval) {
+            state.unreportedRows = 0;
+            config.metrics.count(ExcelMetrics.ROWS_READ, config.progressInterval);
+            long rows = config.rowsRead.addAndGet(config.progressInterval);
+            config.metrics.progress(ExcelMetrics.ROWS_READ, rows, System.nanoTime() - config.readStartNanos);
         }
     }
 
+    /**
+     * 读取结束时汇总各Sheet剩余的行数，回调最终进度和整体耗时
+     */
+    private void reportRead() {
+        if (!config.metered) {
+            return;
+        }
+        for (SheetState state : config.sheets.values()) {
+            if (state.unreportedRows > 0) {
+                config.metrics.count(ExcelMetrics.ROWS_READ, state.unreportedRows);
+                config.rowsRead.addAndGet(state.unreportedRows);
+                state.unreportedRows = 0;
+            }
+        }
+        long elapsed = System.nanoTime() - config.readStartNanos;
+        config.metrics.progress(ExcelMetrics.ROWS_READ, config.rowsRead.get(), elapsed);
+        config.metrics.time(ExcelMetrics.READ, elapsed);
+    }
 
 }
@@ -2,17 +2,23 @@ package sunyu.util;
 
 import cn.hutool.core.exceptions.ExceptionUtil;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.file.FileNameUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.ZipUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
-import cn.hutool.poi.excel.BigExcelWriter;
-import cn.hutool.poi.excel.ExcelUtil;
+import sunyu.util.pojo.WriteStats;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.temporal.Temporal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 大数据Excel写出工具类
@@ -39,7 +45,69 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
         log.info("Sheet名称 {}", config.sheetName);
         log.info("pageSize {}", config.pageSize);
         log.info("cacheSize {}", config.cacheSize);
-        log.info("临时文件路径 {}", System.getProperty("java.io.tmpdir"));
+        if (config.cacheBytes > 0) {
+            log.info("cacheBytes {}", config.cacheBytes);
+        }
+        if (config.format == null) {
+            config.format = ExcelFormat.of(config.destFile.getName());
+        }
+        if (config.format.isDelimited()) {
+            log.info("写出器 {}，超出pageSize的数据写入 name_2、name_3 ... 文件", config.format.name());
+        } else {
+            log.info("写出器 {}", config.nativeWriter ? "SpreadsheetML直写" : "BigExcelWriter");
+        }
+        if (config.rollingRows > 0 || config.rollingBytes > 0) {
+            log.info("滚动文件 每个文件最多 {} 行 估算 {} 字节，依次写入 name_2、name_3 ... 文件", config.rollingRows > 0 ? config.rollingRows : "不限",
+                    config.rollingBytes > 0 ? config.rollingBytes : "不限");
+            if (config.format.isDelimited()) {//CSV没有行数限制，只按滚动条件拆分文件
+                config.pageSize = Integer.MAX_VALUE;
+            }
+        }
+        if (config.zip) {
+            log.info("写出后打包为 {}", zipFile(config.destFile).getAbsolutePath());
+        }
+        if (config.tmpDir != null) {
+            FileUtil.mkdir(config.tmpDir);
+        }
+        log.info("临时文件路径 {}", config.tmpDir != null ? config.tmpDir.getAbsolutePath() : System.getProperty("java.io.tmpdir"));
+        if (config.spillCodecCandidates != null) {
+            log.info("溢写编解码器 自适应选择 {}", config.spillCodecCandidates);
+        } else {
+            log.info("溢写编解码器 {}", config.spillCodec.name());
+        }
+        if (config.concurrentAppend && (config.direct || config.freezeHeadersAfter > 0)) {
+            log.warn("直写模式只能单线程写入Sheet，忽略并发追加");
+            config.concurrentAppend = false;
+        }
+        if (config.asyncSpill) {
+            //并发追加时各线程的缓冲区写不同文件，可以并行溢写
+            config.spillExecutor = Executors.newFixedThreadPool(config.concurrentAppend ? config.maxSpillInFlight : 1,
+                    ThreadFactoryBuilder.create().setNamePrefix("excel-spill-").setDaemon(true).build());
+            config.spillPermits = new Semaphore(config.maxSpillInFlight);
+            log.info("异步溢写 在途缓冲区上限 {}", config.maxSpillInFlight);
+        }
+        if (config.direct) {
+            for (String header : config.headers.keySet()) {//预先声明的表头按顺序注册列序号
+                config.columnIndex.put(header, config.columns.size());
+                config.columns.add(header);
+            }
+            log.info("直写模式 表头 {}", config.headers.keySet());
+        } else if (config.freezeHeadersAfter > 0) {
+            log.info("缓存 {} 行后固定表头", config.freezeHeadersAfter);
+        }
+        if (config.concurrentAppend) {
+            config.threadBuffer = ThreadLocal.withInitial(() -> {
+                RowBuffer buffer = new RowBuffer();
+                config.buffers.add(buffer);
+                return buffer;
+            });
+            log.info("并发追加模式");
+        }
+        config.metered = config.metrics != ExcelMetrics.NOOP;
+        if (config.metered) {
+            log.info("指标监听器 {} 进度间隔 {} 行", config.metrics.getClass().getName(), config.progressInterval);
+        }
+        config.startNanos = System.nanoTime();
         log.info("[构建BigDataExcelWriterUtil] 结束");
 
         this.config = config;
@@ -52,16 +120,201 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
         private int pageSize = 1000000;
         //数据缓存行数，配置越大越费内存
         private int cacheSize = 5000;
+        //数据缓存字节数预算，大于0时按估算的内存占用溢写，不再按行数
+        private long cacheBytes = 0;
+        //临时文件路径，为null时使用java.io.tmpdir
+        private File tmpDir;
+        //当前缓存数据估算字节数
+        private final AtomicLong bufferedBytes = new AtomicLong();
+        //缓存数据估算字节数峰值
+        private final AtomicLong peakBufferedBytes = new AtomicLong();
         //默认Sheet名称
         private String sheetName;
         //写出文件
         private File destFile;
+        //行缓冲区，非并发模式下只有这一个
+        private final RowBuffer buffer = new RowBuffer();
+        //所有行缓冲区，按首次使用顺序，写出时依次合并
+        private final List<RowBuffer> buffers = new CopyOnWriteArrayList<>(Collections.singletonList(buffer));
+        //写出数据行数计数器
+        private int counter = 0;
+        //溢写字节数
+        private final LongAdder spillBytes = new LongAdder();
+        //序列化耗时
+        private final LongAdder serializeNanos = new LongAdder();
+        //溢写文件数
+        private final LongAdder spillFiles = new LongAdder();
+        //读取溢写文件并写出的耗时
+        private long deserializeNanos = 0;
+        //溢写压缩前字节数
+        private final LongAdder spillRawBytes = new LongAdder();
+        //压缩耗时
+        private final LongAdder compressNanos = new LongAdder();
+        //解压耗时
+        private final LongAdder decompressNanos = new LongAdder();
+        //溢写文件编解码器，自适应模式下试写结束后确定
+        private volatile SpillCodec spillCodec = SpillCodec.NONE;
+        //自适应选择的候选编解码器，为null表示不自适应或已选定
+        private volatile List<SpillCodec> spillCodecCandidates;
+        //自适应选择时已分配的试写次数
+        private final AtomicInteger spillTrials = new AtomicInteger();
+        //自适应选择时每个候选编解码器的试写结果：压缩前字节数、文件字节数、耗时纳秒，试写失败为FAILED_TRIAL
+        private final Map<SpillCodec, long[]> spillCodecTrials = new ConcurrentHashMap<>();
+        //溢写磁盘的估算读写速度，字节/秒，自适应选择时用来折算文件大小的时间成本
+        private long spillDiskSpeed = 100L * 1024 * 1024;
+        //是否直写模式，表头固定后数据不再缓存，直接写入Sheet
+        private boolean direct = false;
+        //缓存多少行之后固定表头，转为直写模式，0表示不固定
+        private int freezeHeadersAfter = 0;
+        //直写模式下是否为表头行预留位置，Sheet结束时再写出表头
+        private boolean reserveHeaderRow = true;
+        //已追加行数
+        private long appended = 0;
+        //写出器，直写模式下一直打开到write
+        private SheetWriter sheetWriter;
+        //是否使用直接写SpreadsheetML的写出器，不经过POI SXSSF
+        private boolean nativeWriter = false;
+        //写出格式，为null时按目标文件扩展名判断
+        private ExcelFormat format;
+        //CSV、TSV是否写出UTF-8 BOM
+        private boolean bom = false;
+        //并行编码Sheet的线程数
+        private int parallelism = 1;
+        //是否并发追加，每个线程使用自己的行缓冲区，不再争用同一把锁
+        private boolean concurrentAppend = false;
+        //列注册表，key是列名，value是列序号，缓存行按列序号稀疏存储
+        private final Map<String, Integer> columnIndex = new ConcurrentHashMap<>();
+        //实体类显式映射，key是实体类，value是 字段名->列名
+        private final Map<Class<?>, Map<String, String>> beanMappings = new HashMap<>();
+        //实体类与列序号的绑定
+        private final Map<Class<?>, BeanBinding> beanBindings = new ConcurrentHashMap<>();
+        //按注册顺序的列名
+        private final List<String> columns = new CopyOnWriteArrayList<>();
+        //并发模式下每个线程的行缓冲区
+        private ThreadLocal<RowBuffer> threadBuffer;
+        //是否异步溢写，缓存满后交给后台线程写磁盘，append不等待磁盘
+        private boolean asyncSpill = false;
+        //异步溢写时，等待写磁盘的缓冲区数量上限，超过后append阻塞
+        private int maxSpillInFlight = 2;
+        //异步溢写线程
+        private ExecutorService spillExecutor;
+        //在途缓冲区许可
+        private Semaphore spillPermits;
+        //异步溢写任务
+        private final Queue<Future<?>> spillFutures = new ConcurrentLinkedQueue<>();
+        //第一个溢写异常，之后写出时抛出
+        private volatile Throwable spillError;
+        //当前缓存数据行数
+        private final AtomicLong bufferedRows = new AtomicLong();
+        //缓存数据行数峰值
+        private final AtomicLong peakBufferedRows = new AtomicLong();
+        //指标监听器
+        private ExcelMetrics metrics = ExcelMetrics.NOOP;
+        //是否记录指标，监听器不是NOOP时才计时、计数
+        private boolean metered = false;
+        //进度回调间隔行数
+        private int progressInterval = 100000;
+        //构建完成的时间，进度耗时从这里算起
+        private long startNanos;
+        //已汇总到监听器的追加行数
+        private final AtomicLong appendedRows = new AtomicLong();
+        //已汇总到监听器的写出行数
+        private final AtomicLong writtenRows = new AtomicLong();
+        //还未汇总到监听器的写出行数
+        private int unreportedWritten = 0;
+        //还未汇总到监听器的写出器写入耗时
+        private long unreportedWriteNanos = 0;
+        //滚动文件每个文件最多数据行数，0表示不按行数滚动
+        private long rollingRows = 0;
+        //滚动文件每个文件最多估算字节数，0表示不按大小滚动
+        private long rollingBytes = 0;
+        //当前文件序号，从1开始
+        private int fileNo = 1;
+        //当前文件已写数据行数
+        private long fileRows = 0;
+        //当前文件已写数据估算字节数
+        private long fileBytes = 0;
+        //写出后是否打包成zip
+        private boolean zip = false;
+        //写出的文件
+        private final List<File> files = new ArrayList<>();
+    }
+
+    /**
+     * 行缓冲区，缓存的行数据和已溢写的临时文件，同一个缓冲区内保持追加顺序
+     */
+    private static class RowBuffer {
         //每一行数据
-        private final List<List<?>> rows = new ArrayList<>();
+        private List<List<?>> rows = new ArrayList<>();
         //临时记录序列化文件路径
         private final List<String> tmpSerializeFilePath = new ArrayList<>();
-        //写出数据行数计数器
-        private int counter = 0;
+        //每个序列化文件的行数
+        private final List<Integer> tmpSerializeRowCount = new ArrayList<>();
+        //每个序列化文件的编解码器
+        private final List<SpillCodec> tmpSerializeCodec = new ArrayList<>();
+        //每个序列化文件的估算文本字节数，按大小滚动文件时使用
+        private final List<Long> tmpSerializeTextBytes = new ArrayList<>();
+        //缓存数据估算文本字节数，按大小滚动文件时使用
+        private long textBytes;
+        //缓存数据估算字节数
+        private long bytes;
+        //还未汇总到全局的估算字节数
+        private long unreportedBytes;
+        //还未汇总到全局的缓存行数
+        private int unreportedRows;
+        //还未汇总到监听器的追加行数
+        private int unreportedAppended;
+    }
+
+    /**
+     * 实体类与本次导出列序号的绑定
+     */
+    private static class BeanBinding {
+        private final BeanAccessor accessor;
+        //与accessor.columns一一对应的列序号
+        private final int[] indexes;
+        //直写模式下此类的列是否都已在表头中
+        private boolean inHeaders;
+
+        private BeanBinding(BeanAccessor accessor, int[] indexes) {
+            this.accessor = accessor;
+            this.indexes = indexes;
+        }
+
+        private SparseRow toSparseRow(Object bean) {
+            SparseRow row = new SparseRow(indexes.length);
+            for (int i = 0; i < indexes.length; i++) {
+                row.put(indexes[i], accessor.getters[i].apply(bean));
+            }
+            return row;
+        }
+    }
+
+    /**
+     * 待写出的一段连续数据，来自溢写文件或内存
+     */
+    private static class Segment {
+        private final String filePath;
+        private final SpillCodec codec;
+        private final List<List<?>> rows;
+        private final long rowCount;
+        //估算文本字节数，按大小滚动文件时使用
+        private final long textBytes;
+
+        private Segment(String filePath, SpillCodec codec, List<List<?>> rows, long rowCount, long textBytes) {
+            this.filePath = filePath;
+            this.codec = codec;
+            this.rows = rows;
+            this.rowCount = rowCount;
+            this.textBytes = textBytes;
+        }
+    }
+
+    /**
+     * 接收写出的行
+     */
+    private interface RowSink {
+        void write(List<?> row) throws IOException;
     }
 
     public static class Builder {
@@ -93,6 +346,38 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
             return this;
         }
 
+        /**
+         * 设置数据缓存字节数预算，大于0时按估算的内存占用溢写，cacheSize不再生效，默认0
+         * <p>
+         * 行的列数和字符串长度差异很大时，比固定行数更容易控制内存；并发追加时各线程缓冲区平分预算
+         *
+         * @param bytes
+         */
+        public Builder cacheBytes(long bytes) {
+            config.cacheBytes = bytes;
+            return this;
+        }
+
+        /**
+         * 设置临时文件路径，默认使用java.io.tmpdir
+         *
+         * @param dir
+         */
+        public Builder tmpDir(File dir) {
+            config.tmpDir = dir;
+            return this;
+        }
+
+        /**
+         * 设置临时文件路径，默认使用java.io.tmpdir
+         *
+         * @param dir
+         */
+        public Builder tmpDir(String dir) {
+            config.tmpDir = FileUtil.file(dir);
+            return this;
+        }
+
         /**
          * 设置目标文件
          *
@@ -122,6 +407,252 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
             config.sheetName = name;
             return this;
         }
+
+        /**
+         * 预先声明表头，开启直写模式，数据不再缓存，直接写入Sheet，输出文件随数据追加增长
+         * <p>
+         * 之后出现的新列追加到表头末尾，改写当前Sheet的表头行，见 {@link #reserveHeaderRow(boolean)}。
+         * 表头别名需要在第一次append之前设置。
+         *
+         * @param headers 表头key，也是默认的表头名称
+         */
+        public Builder headers(String... headers) {
+            return headers(Arrays.asList(headers));
+        }
+
+        /**
+         * 预先声明表头，开启直写模式
+         *
+         * @param headers 表头key，也是默认的表头名称
+         * @see #headers(String...)
+         */
+        public Builder headers(Collection<String> headers) {
+            for (String header : headers) {
+                config.headers.put(header, header);
+            }
+            config.direct = true;
+            return this;
+        }
+
+        /**
+         * 直写模式下是否为表头行预留位置，默认true，后出现的新列总能加入当前Sheet的表头
+         * <p>
+         * nativeWriter和CSV、TSV的数据行先编码到临时文件，Sheet结束时再写出表头行并拷贝数据行，多一次磁盘读写；
+         * POI写出器的表头行总是写在模板Sheet中，关闭时合并，不受此设置影响。
+         * 列固定时可设为false直接写出表头行，之后出现新列会抛出异常，不会把数据拆到新Sheet
+         *
+         * @param reserve
+         */
+        public Builder reserveHeaderRow(boolean reserve) {
+            config.reserveHeaderRow = reserve;
+            return this;
+        }
+
+        /**
+         * 设置缓存多少行之后固定表头，固定后把已缓存的数据写出，后续数据直接写入Sheet，默认0不固定
+         *
+         * @param rows
+         */
+        public Builder freezeHeadersAfter(int rows) {
+            config.freezeHeadersAfter = rows;
+            return this;
+        }
+
+        /**
+         * 设置是否使用直接写SpreadsheetML的写出器，默认false使用hutool BigExcelWriter
+         * <p>
+         * 直接把Sheet的XML编码进zip，不创建POI的行和单元格对象，也没有SXSSF的临时文件，适合大数据量导出；
+         * 日期单元格带日期格式；直写模式下表头行在Sheet结束时写出，见 {@link #reserveHeaderRow(boolean)}。
+         *
+         * @param nativeWriter
+         */
+        public Builder nativeWriter(boolean nativeWriter) {
+            config.nativeWriter = nativeWriter;
+            return this;
+        }
+
+        /**
+         * 设置并行编码Sheet的线程数，默认1串行写出
+         * <p>
+         * 对nativeWriter生效，数据按pageSize划分成多个Sheet，每个Sheet由一个线程编码压缩，最后组装成一个文件，内容与串行写出一致。
+         * 设置了滚动文件时对所有格式生效，每个文件由一个线程使用自己的写出器写出。
+         * 直写模式下数据已经写入Sheet，不会并行。
+         *
+         * @param parallelism
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism > 0) {
+                config.parallelism = parallelism;
+            }
+            return this;
+        }
+
+        /**
+         * 设置是否并发追加，默认false
+         * <p>
+         * 开启后append不再加锁，每个线程写入自己的行缓冲区，写出时按线程首次追加的顺序依次合并。
+         * 同一线程追加的行保持顺序；不同线程之间的行不会交错，也不保证按追加时间排序。
+         * 列按首次出现的顺序排列，多个线程同时出现新列时先后不确定。
+         * 所有线程追加完毕后才能调用write。
+         *
+         * @param concurrent
+         */
+        public Builder concurrentAppend(boolean concurrent) {
+            config.concurrentAppend = concurrent;
+            return this;
+        }
+
+        /**
+         * 设置是否异步溢写，缓存满后由后台线程写临时文件，append不会等待磁盘，默认false
+         *
+         * @param async
+         */
+        public Builder asyncSpill(boolean async) {
+            config.asyncSpill = async;
+            return this;
+        }
+
+        /**
+         * 设置异步溢写时等待写磁盘的缓冲区数量上限，达到上限后append阻塞，默认2
+         *
+         * @param size
+         */
+        public Builder maxSpillInFlight(int size) {
+            if (size > 0) {
+                config.maxSpillInFlight = size;
+            }
+            return this;
+        }
+
+        /**
+         * 设置实体类的字段与列的映射，优先于字段注解，列按映射的迭代顺序排列
+         *
+         * @param type          实体类
+         * @param fieldToColumn key是字段名，value是列名
+         */
+        public Builder beanMapping(Class<?> type, Map<String, String> fieldToColumn) {
+            config.beanMappings.put(type, new LinkedHashMap<>(fieldToColumn));
+            return this;
+        }
+
+        /**
+         * 设置溢写文件编解码器，默认不压缩，临时目录所在磁盘小或慢时可用 {@link SpillCodec#DEFLATE}
+         *
+         * @param codec
+         */
+        public Builder spillCodec(SpillCodec codec) {
+            config.spillCodec = codec;
+            config.spillCodecCandidates = null;
+            return this;
+        }
+
+        /**
+         * 自适应选择溢写文件编解码器，前几个溢写文件依次用每个候选编解码器试写，
+         * 按 压缩耗时 + 文件读写耗时(按spillDiskSpeed折算) 选出单位数据成本最低的一个，之后的溢写文件都使用它
+         *
+         * @param candidates 候选编解码器，不传时为 {@link SpillCodec#NONE} 和 {@link SpillCodec#DEFLATE}
+         */
+        public Builder adaptiveSpillCodec(SpillCodec... candidates) {
+            config.spillCodecCandidates = candidates.length == 0
+                    ? Arrays.asList(SpillCodec.NONE, SpillCodec.DEFLATE)
+                    : Arrays.asList(candidates);
+            config.spillCodec = config.spillCodecCandidates.get(0);
+            return this;
+        }
+
+        /**
+         * 设置溢写磁盘的估算读写速度，自适应选择编解码器时使用，默认100MB/s
+         *
+         * @param bytesPerSecond
+         */
+        public Builder spillDiskSpeed(long bytesPerSecond) {
+            if (bytesPerSecond > 0) {
+                config.spillDiskSpeed = bytesPerSecond;
+            }
+            return this;
+        }
+
+        /**
+         * 设置写出格式，默认按目标文件扩展名判断：.csv为CSV，.tsv、.tab为TSV，其他为xlsx
+         * <p>
+         * CSV、TSV直接把文本编码写入文件通道，比xlsx快很多；超出pageSize的数据依次写入 name_2.csv、name_3.csv ...，每个文件都有表头
+         *
+         * @param format
+         */
+        public Builder format(ExcelFormat format) {
+            config.format = format;
+            return this;
+        }
+
+        /**
+         * CSV、TSV是否在文件开头写出UTF-8 BOM，默认false；Excel直接打开含中文的CSV时需要
+         *
+         * @param bom
+         */
+        public Builder bom(boolean bom) {
+            config.bom = bom;
+            return this;
+        }
+
+        /**
+         * 设置滚动文件，每个文件最多rows行数据，超出后依次写入 name_2.xlsx、name_3.xlsx ...，每个文件都有表头；
+         * 文件内仍按pageSize分Sheet，CSV、TSV不再按pageSize拆分
+         * <p>
+         * 非直写模式下配合 {@link #parallelism(int)} 按文件并发写出，每个文件使用自己的写出器
+         *
+         * @param rows
+         */
+        public Builder rollingRows(long rows) {
+            if (rows > 0) {
+                config.rollingRows = rows;
+            }
+            return this;
+        }
+
+        /**
+         * 设置滚动文件，按单元格文本估算的未压缩大小拆分，每个文件写到约bytes字节后写入下一个文件；
+         * xlsx压缩后的实际文件会小很多。可与 {@link #rollingRows(long)} 同时设置，先到达的条件生效
+         *
+         * @param bytes
+         */
+        public Builder rollingBytes(long bytes) {
+            if (bytes > 0) {
+                config.rollingBytes = bytes;
+            }
+            return this;
+        }
+
+        /**
+         * 写出后是否把所有文件打包成与目标文件同名的zip（name.zip）并删除原文件，默认false
+         *
+         * @param zip
+         */
+        public Builder zip(boolean zip) {
+            config.zip = zip;
+            return this;
+        }
+
+        /**
+         * 设置指标监听器，接入自己的监控，默认 {@link ExcelMetrics#NOOP} 不计时也不回调
+         *
+         * @param metrics
+         */
+        public Builder metrics(ExcelMetrics metrics) {
+            config.metrics = metrics != null ? metrics : ExcelMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * 设置进度回调间隔行数，追加、写出每这么多行回调一次 {@link ExcelMetrics#progress}，默认100000
+         *
+         * @param rows
+         */
+        public Builder progressInterval(int rows) {
+            if (rows > 0) {
+                config.progressInterval = rows;
+            }
+            return this;
+        }
     }
 
     /**
@@ -130,15 +661,20 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
     @Override
     public void close() {
         log.info("[销毁BigDataExcelWriterUtil] 开始");
-        log.info("清理临时序列化文件开始");
-        config.tmpSerializeFilePath.parallelStream().forEach(filePath -> {
+        if (config.spillExecutor != null) {
             try {
-                //log.debug("清理 {}", filePath);
-                FileUtil.del(filePath);
-            } catch (Exception e) {
-                log.warn("清理临时序列化文件异常 {}", ExceptionUtil.stacktraceToString(e));
+                awaitSpills();
+            } catch (IllegalStateException e) {//关闭时只清理资源，溢写异常已在append、write中抛出
+                log.warn("溢写异常 {}", e.getMessage());
             }
-        });
+            config.spillExecutor.shutdown();
+        }
+        if (config.sheetWriter != null) {//直写模式下没有调用write
+            config.sheetWriter.close();
+            config.sheetWriter = null;
+        }
+        log.info("清理临时序列化文件开始");
+        cleanSpillFiles();
         log.info("清理临时序列化文件完毕");
         log.info("[销毁BigDataExcelWriterUtil] 结束");
     }
@@ -148,9 +684,17 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
      *
      * @param rows
      */
-    synchronized public void append(List<Map<String, ?>> rows) {
-        for (Map<String, ?> row : rows) {
-            append(row);
+    public void append(List<Map<String, ?>> rows) {
+        if (config.concurrentAppend) {
+            for (Map<String, ?> row : rows) {
+                appendConcurrent(row);
+            }
+            return;
+        }
+        synchronized (this) {
+            for (Map<String, ?> row : rows) {
+                append(row);
+            }
         }
     }
 
@@ -159,133 +703,1038 @@ public class BigDataExcelWriterUtil implements AutoCloseable {
      *
      * @param row
      */
-    synchronized public void append(Map<String, ?> row) {
-        boolean headersChanged = false;
-        for (String k : row.keySet()) {
-            if (!config.headers.containsKey(k)) {
-                config.headers.put(k, k);
-
-                headersChanged = true;
-            }
-        }
-        if (headersChanged) {
-            log.debug("表头有变动 {}", config.headers);
+    public void append(Map<String, ?> row) {
+        if (config.concurrentAppend) {
+            appendConcurrent(row);
+            return;
         }
-        List<Object> rowData = new ArrayList<>(config.headers.size());
-        for (String header : config.headers.keySet()) {
-            rowData.add(row.get(header));
-        }
-        config.rows.add(rowData);
-        if (config.rows.size() == config.cacheSize) {//到达缓存上限，序列化到磁盘
-            File tempFile = FileUtil.createTempFile();
-            config.tmpSerializeFilePath.add(tempFile.getAbsolutePath());
-            serialize(config.rows, tempFile);
+        synchronized (this) {
+            if (config.direct) {
+                appendDirect(row);
+                return;
+            }
+            addRow(config.buffer, toSparseRow(row));
+            if (++config.appended == config.freezeHeadersAfter) {
+                freezeHeaders();
+            }
         }
     }
 
     /**
-     * 更改表头别名，通过回调方法，更改headers里面的value即可
+     * 添加多个实体对象，元素是Map时按Map添加
      *
-     * @param handler
+     * @param beans
      */
-    public void setHeadersAlias(java.util.function.Consumer<Map<String, String>> handler) {
-        handler.accept(config.headers);
-        log.debug("表头更改别名 {}", config.headers);
+    public <T> void append(Collection<T> beans) {
+        if (config.concurrentAppend) {
+            for (T bean : beans) {
+                append(bean);
+            }
+            return;
+        }
+        synchronized (this) {
+            for (T bean : beans) {
+                append(bean);
+            }
+        }
     }
 
     /**
-     * 写出excel
+     * 添加一个实体对象，每个类的列只解析一次（字段注解 {@link sunyu.util.annotation.ExcelColumn} 或 {@link Builder#beanMapping}），
+     * 之后按缓存的取值器直接读取字段写入行缓冲区，不构建中间Map；传入Map时按Map添加
+     *
+     * @param bean
      */
-    public void write() {
-        try {
-            BigExcelWriter bigWriter = ExcelUtil.getBigWriter();
-            bigWriter.disableDefaultStyle();//禁用样式，导出速度快
-            bigWriter.setDestFile(config.destFile);
-            bigWriter.renameSheet(config.sheetName);//重命名Sheet
-            bigWriter.writeRow(config.headers.values());//写入表头//写入第一个Sheet的表头
-            for (String filePath : config.tmpSerializeFilePath) {//从磁盘反序列化数据
-                List<List<?>> dsRows = deserializer(FileUtil.file(filePath));
-                if (dsRows != null) {//写出数据
-                    writeRows(dsRows, bigWriter);
-                }
+    @SuppressWarnings("unchecked")
+    public <T> void append(T bean) {
+        if (bean instanceof Map) {
+            append((Map<String, ?>) bean);
+            return;
+        }
+        BeanBinding binding = beanBinding(bean.getClass());
+        if (config.concurrentAppend) {
+            addRow(config.threadBuffer.get(), binding.toSparseRow(bean));
+            return;
+        }
+        synchronized (this) {
+            if (config.direct) {
+                appendDirect(bean, binding);
+                return;
             }
-            if (!config.rows.isEmpty()) {//写出剩余数据
-                writeRows(config.rows, bigWriter);
+            addRow(config.buffer, binding.toSparseRow(bean));
+            if (++config.appended == config.freezeHeadersAfter) {
+                freezeHeaders();
             }
-            bigWriter.close();
-        } catch (Exception e) {
-            log.error("写出excel异常 {}", ExceptionUtil.stacktraceToString(e));
-        } finally {
-            log.debug("清理临时序列化文件开始");
-            config.tmpSerializeFilePath.parallelStream().forEach(filePath -> {
-                try {
-                    //log.debug("清理 {}", filePath);
-                    FileUtil.del(filePath);
-                } catch (Exception e) {
-                    log.warn("清理临时序列化文件异常 {}", ExceptionUtil.stacktraceToString(e));
-                }
-            });
-            config.tmpSerializeFilePath.clear();
-            log.debug("清理临时序列化文件结束");
         }
-        log.debug("写出文件完毕 {}", config.destFile.getAbsolutePath());
     }
 
     /**
-     * 写出多行数据
+     * 获取实体类的列绑定，第一次遇到此类时解析列并注册列序号
      *
-     * @param rows
-     * @param bigWriter
+     * @param type
      * @return
      */
-    private void writeRows(List<List<?>> rows, BigExcelWriter bigWriter) {
-        for (List<?> row : rows) {
-            if (config.counter == config.pageSize) {//如果超出限制，新建Sheet
-                bigWriter.setSheet(config.sheetName + (bigWriter.getSheetCount() + 1));
-                config.counter = 0;
-
-                bigWriter.writeRow(config.headers.values());//新建一个Sheet后，写入表头
-            }
-
-            bigWriter.writeRow(row);//写出一行数据
-            config.counter++;
+    private BeanBinding beanBinding(Class<?> type) {
+        BeanBinding binding = config.beanBindings.get(type);
+        if (binding != null) {
+            return binding;
         }
+        return config.beanBindings.computeIfAbsent(type, t -> {
+            Map<String, String> mapping = config.beanMappings.get(t);
+            BeanAccessor accessor = mapping != null ? BeanAccessor.of(t, mapping) : BeanAccessor.of(t);
+            int[] indexes = new int[accessor.columns.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = columnIndex(accessor.columns[i]);
+            }
+            log.debug("实体类 {} 列 {}", t.getName(), Arrays.toString(accessor.columns));
+            return new BeanBinding(accessor, indexes);
+        });
     }
 
+    /**
+     * 并发模式添加一行数据，只写入当前线程的行缓冲区
+     *
+     * @param row
+     */
+    private void appendConcurrent(Map<String, ?> row) {
+        addRow(config.threadBuffer.get(), toSparseRow(row));
+    }
 
     /**
-     * 将数据序列化到磁盘
+     * 按列注册表把一行数据转换成稀疏行，只保留非null的值
      *
-     * @param rows
-     * @param file
+     * @param row
+     * @return
      */
-    private void serialize(List<List<?>> rows, File file) {
-        //log.debug("序列化 {}", file.getAbsolutePath());
-        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
-            oos.writeObject(rows);
-            rows.clear();
-        } catch (Exception e) {
-            log.error("序列化文件异常 {}", ExceptionUtil.stacktraceToString(e));
+    private SparseRow toSparseRow(Map<String, ?> row) {
+        SparseRow rowData = new SparseRow(row.size());
+        for (Map.Entry<String, ?> e : row.entrySet()) {
+            int index = columnIndex(e.getKey());//新列即使值为null也要注册，保证表头完整
+            rowData.put(index, e.getValue());
         }
-        //log.debug("序列化完毕 {}", file.getAbsolutePath());
+        return rowData;
     }
 
     /**
-     * 从磁盘反序列化出数据
+     * 获取列序号，新列注册到列注册表
      *
-     * @param file
+     * @param column
      * @return
      */
-    private List<List<?>> deserializer(File file) {
-        //log.debug("反序列化 {}", file.getAbsolutePath());
-        List<List<?>> rows = null;
-        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
-            rows = (List<List<?>>) ois.readObject();
-            //log.debug("反序列化完毕 {}", file.getAbsolutePath());
-        } catch (Exception e) {
-            log.error("反序列化文件异常 {}", ExceptionUtil.stacktraceToString(e));
+    private int columnIndex(String column) {
+        Integer index = config.columnIndex.get(column);
+        if (index != null) {
+            return index;
         }
-        return rows;
+        synchronized (config.columns) {
+            index = config.columnIndex.get(column);
+            if (index == null) {
+                index = config.columns.size();
+                config.columns.add(column);
+                config.columnIndex.put(column, index);
+                log.debug("表头有变动 {}", config.columns);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 将列注册表同步到表头
+     */
+    private void syncHeaders() {
+        for (String column : config.columns) {
+            config.headers.putIfAbsent(column, column);
+        }
+    }
+
+    //缓冲区估算字节数每累计这么多汇总一次到全局，避免每行都竞争全局计数器
+    private static final long REPORT_BYTES = 64 * 1024;
+
+    /**
+     * 向行缓冲区追加一行，到达缓存上限时溢写
+     *
+     * @param buffer
+     * @param rowData
+     */
+    private void addRow(RowBuffer buffer, List<?> rowData) {
+        buffer.rows.add(rowData);
+        long rowBytes = estimateRowBytes(rowData);
+        buffer.bytes += rowBytes;
+        buffer.unreportedBytes += rowBytes;
+        buffer.unreportedRows++;
+        if (config.rollingBytes > 0) {
+            buffer.textBytes += estimateTextBytes(rowData);
+        }
+        if (buffer.unreportedBytes >= REPORT_BYTES) {
+            reportBufferedBytes(buffer);
+        }
+        countAppended(buffer);
+        boolean full;
+        if (config.cacheBytes > 0) {//按内存预算溢写，并发模式下每个线程的缓冲区平分预算
+            full = buffer.bytes >= config.cacheBytes / (config.concurrentAppend ? config.buffers.size() - 1 : 1);
+        } else {
+            full = buffer.rows.size() == config.cacheSize;
+        }
+        if (full) {//到达缓存上限，序列化到磁盘
+            spill(buffer);
+        }
+    }
+
+    /**
+     * 把缓冲区新增的字节数、行数汇总到全局，并更新峰值
+     *
+     * @param buffer
+     */
+    private void reportBufferedBytes(RowBuffer buffer) {
+        long now = config.bufferedBytes.addAndGet(buffer.unreportedBytes);
+        buffer.unreportedBytes = 0;
+        config.peakBufferedBytes.accumulateAndGet(now, Math::max);
+        now = config.bufferedRows.addAndGet(buffer.unreportedRows);
+        buffer.unreportedRows = 0;
+        config.peakBufferedRows.accumulateAndGet(now, Math::max);
+    }
+
+    /**
+     * 记录追加了一行，每progressInterval行汇总到监听器并回调进度
+     *
+     * @param buffer 追加到的缓冲区，直写模式下为默认缓冲区
+     */
+    private void countAppended(RowBuffer buffer) {
+        if (config.metered && ++buffer.unreportedAppended == config.progressInterval) {
+            long rows = reportAppended(buffer);
+            config.metrics.progress(ExcelMetrics.ROWS_APPENDED, rows, System.nanoTime() - config.startNanos);
+        }
+    }
+
+    /**
+     * 把缓冲区还未汇总的追加行数汇总到监听器
+     *
+     * @param buffer
+     * @return 累计追加行数
+     */
+    private long reportAppended(RowBuffer buffer) {
+        int rows = buffer.unreportedAppended;
+        buffer.unreportedAppended = 0;
+        if (rows > 0) {
+            config.metrics.count(ExcelMetrics.ROWS_APPENDED, rows);
+        }
+        return config.appendedRows.addAndGet(rows);
+    }
+
+    /**
+     * 把写出行数和写出器写入耗时汇总到监听器
+     *
+     * @param rows
+     * @param nanos
+     * @return 累计写出行数
+     */
+    private long reportWritten(long rows, long nanos) {
+        if (rows > 0) {
+            config.metrics.count(ExcelMetrics.ROWS_WRITTEN, rows);
+            config.metrics.time(ExcelMetrics.WRITE_ROWS, nanos);
+        }
+        return config.writtenRows.addAndGet(rows);
+    }
+
+    /**
+     * write结束时汇总剩余的计数，回调最终进度、峰值和整体耗时
+     *
+     * @param start write开始的时间
+     */
+    private void reportWrite(long start) {
+        if (!config.metered) {
+            return;
+        }
+        for (RowBuffer buffer : config.buffers) {
+            reportAppended(buffer);
+        }
+        long written = reportWritten(config.unreportedWritten, config.unreportedWriteNanos);
+        config.unreportedWritten = 0;
+        config.unreportedWriteNanos = 0;
+        long elapsed = System.nanoTime() - config.startNanos;
+        config.metrics.progress(ExcelMetrics.ROWS_APPENDED, config.appendedRows.get(), elapsed);
+        config.metrics.progress(ExcelMetrics.ROWS_WRITTEN, written, elapsed);
+        config.metrics.peak(ExcelMetrics.BUFFERED_ROWS, config.peakBufferedRows.get());
+        config.metrics.peak(ExcelMetrics.BUFFERED_BYTES, config.peakBufferedBytes.get());
+        config.metrics.time(ExcelMetrics.WRITE, System.nanoTime() - start);
+    }
+
+    /**
+     * 估算一行数据在内存中占用的字节数（按64位JVM开启指针压缩估算）
+     *
+     * @param rowData
+     * @return
+     */
+    private static long estimateRowBytes(List<?> rowData) {
+        if (rowData instanceof SparseRow) {
+            SparseRow sparse = (SparseRow) rowData;
+            long bytes = 72 + 8L * sparse.cellCount();//对象 + 列序号数组 + 值数组
+            for (int i = 0, n = sparse.cellCount(); i < n; i++) {
+                bytes += estimateValueBytes(sparse.valueAt(i));
+            }
+            return bytes;
+        }
+        long bytes = 56 + 4L * rowData.size();//List对象 + 数组
+        for (Object v : rowData) {
+            bytes += estimateValueBytes(v);
+        }
+        return bytes;
+    }
+
+    private static long estimateValueBytes(Object v) {
+        if (v == null || v instanceof Boolean) {
+            return 0;
+        }
+        if (v instanceof String) {
+            return 40 + 2L * ((String) v).length();
+        } else if (v instanceof Integer || v instanceof Short || v instanceof Byte || v instanceof Float) {
+            return 16;
+        } else if (v instanceof Long || v instanceof Double || v instanceof Date) {
+            return 24;
+        }
+        return 48;
+    }
+
+    /**
+     * 估算一行数据写成文本后的字节数，按大小滚动文件时使用
+     *
+     * @param rowData
+     * @return
+     */
+    private static long estimateTextBytes(List<?> rowData) {
+        long bytes = 2;//换行
+        if (rowData instanceof SparseRow) {
+            SparseRow sparse = (SparseRow) rowData;
+            for (int i = 0, n = sparse.cellCount(); i < n; i++) {
+                bytes += 1 + estimateTextValueBytes(sparse.valueAt(i));
+            }
+            return bytes;
+        }
+        for (Object v : rowData) {
+            bytes += 1 + estimateTextValueBytes(v);
+        }
+        return bytes;
+    }
+
+    private static long estimateTextValueBytes(Object v) {
+        if (v == null) {
+            return 0;
+        }
+        if (v instanceof String) {
+            String s = (String) v;
+            long bytes = s.length();
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) >= 0x80) {//非ASCII字符按UTF-8的3字节估算
+                    bytes += 2;
+                }
+            }
+            return bytes;
+        } else if (v instanceof Number) {
+            return 10;
+        } else if (v instanceof LocalDate) {
+            return 10;
+        } else if (v instanceof Date || v instanceof Calendar || v instanceof Temporal) {
+            return 19;
+        }
+        return 16;
+    }
+
+    /**
+     * 将缓冲区溢写到临时文件，异步模式下换一个新缓冲区继续接收数据
+     *
+     * @param buffer
+     */
+    private void spill(RowBuffer buffer) {
+        File tempFile = createTempFile();
+        buffer.tmpSerializeFilePath.add(tempFile.getAbsolutePath());
+        buffer.tmpSerializeRowCount.add(buffer.rows.size());
+        SpillCodec codec = nextSpillCodec();
+        buffer.tmpSerializeCodec.add(codec);
+        buffer.tmpSerializeTextBytes.add(buffer.textBytes);
+        buffer.textBytes = 0;
+        config.spillFiles.increment();
+        config.metrics.count(ExcelMetrics.SPILL_FILES, 1);
+        reportBufferedBytes(buffer);
+        long bytes = buffer.bytes;
+        buffer.bytes = 0;
+        int rows = buffer.rows.size();
+        if (config.spillExecutor == null) {
+            serialize(buffer.rows, tempFile, codec);
+            config.bufferedBytes.addAndGet(-bytes);
+            config.bufferedRows.addAndGet(-rows);
+            return;
+        }
+        List<List<?>> full = buffer.rows;
+        buffer.rows = new ArrayList<>(full.size());
+        config.spillPermits.acquireUninterruptibly();//在途缓冲区已满时阻塞，形成背压
+        config.spillFutures.add(config.spillExecutor.submit(() -> {
+            try {
+                serialize(full, tempFile, codec);
+            } finally {
+                config.bufferedBytes.addAndGet(-bytes);
+                config.bufferedRows.addAndGet(-rows);
+                config.spillPermits.release();
+            }
+        }));
+    }
+
+    /**
+     * 获取下一个溢写文件使用的编解码器，自适应模式下先把每个候选编解码器各试写一次，试写结果齐全后选定
+     *
+     * @return
+     */
+    private SpillCodec nextSpillCodec() {
+        List<SpillCodec> candidates = config.spillCodecCandidates;
+        if (candidates == null) {
+            return config.spillCodec;
+        }
+        int trial = config.spillTrials.getAndIncrement();
+        if (trial < candidates.size()) {
+            return candidates.get(trial);
+        }
+        if (config.spillCodecTrials.size() == candidates.size()) {//异步溢写时试写可能还没完成，先用当前编解码器；失败的试写也有记录，不会一直等待
+            chooseSpillCodec(candidates);
+        }
+        return config.spillCodec;
+    }
+
+    //试写失败的标记，与其他试写结果按引用区分
+    private static final long[] FAILED_TRIAL = new long[0];
+
+    /**
+     * 按试写结果选出单位数据成本最低的编解码器
+     *
+     * @param candidates
+     */
+    private synchronized void chooseSpillCodec(List<SpillCodec> candidates) {
+        if (config.spillCodecCandidates == null) {
+            return;
+        }
+        double diskNanosPerByte = 1e9 / config.spillDiskSpeed;
+        SpillCodec best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (SpillCodec codec : candidates) {
+            long[] trial = config.spillCodecTrials.get(codec);
+            if (trial == FAILED_TRIAL || trial[0] == 0) {
+                log.warn("溢写编解码器 {} 试写失败，不参与选择", codec.name());
+                continue;
+            }
+            double ratio = (double) trial[1] / trial[0];
+            //写一次读一次，磁盘成本按两次计算
+            double cost = (double) trial[2] / trial[0] + 2 * ratio * diskNanosPerByte;
+            log.debug("溢写编解码器 {} 压缩比 {} 耗时 {} ms 单位成本 {} ns/B", codec.name(),
+                    String.format("%.3f", ratio), trial[2] / 1000000, String.format("%.2f", cost));
+            if (cost < bestCost) {
+                best = codec;
+                bestCost = cost;
+            }
+        }
+        config.spillCodecCandidates = null;
+        if (best == null) {
+            log.warn("溢写编解码器全部试写失败，继续使用 {}", config.spillCodec.name());
+            return;
+        }
+        config.spillCodec = best;
+        log.info("溢写编解码器选定 {}", best.name());
+    }
+
+    /**
+     * 在临时文件路径下创建临时文件
+     *
+     * @return
+     */
+    private File createTempFile() {
+        if (config.tmpDir == null) {
+            return FileUtil.createTempFile();
+        }
+        return FileUtil.createTempFile("excel", ".tmp", config.tmpDir, true);
+    }
+
+    /**
+     * 获取本次导出的统计信息
+     *
+     * @return
+     */
+    public WriteStats getWriteStats() {
+        WriteStats stats = new WriteStats();
+        stats.setSpillFiles(config.spillFiles.sum());
+        stats.setSpillBytes(config.spillBytes.sum());
+        stats.setSpillRawBytes(config.spillRawBytes.sum());
+        stats.setSpillCodec(config.spillCodec.name());
+        stats.setCompressMillis(config.compressNanos.sum() / 1000000);
+        stats.setDecompressMillis(config.decompressNanos.sum() / 1000000);
+        stats.setSerializeMillis(config.serializeNanos.sum() / 1000000);
+        stats.setDeserializeMillis(config.deserializeNanos / 1000000);
+        stats.setPeakBufferedBytes(config.peakBufferedBytes.get());
+        stats.setPeakBufferedRows(config.peakBufferedRows.get());
+        return stats;
+    }
+
+    /**
+     * 等待所有异步溢写完成
+     */
+    private void awaitSpills() {
+        Future<?> future;
+        while ((future = config.spillFutures.poll()) != null) {//等待全部完成，溢写异常在下面统一抛出
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error("异步溢写异常 {}", ExceptionUtil.stacktraceToString(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待异步溢写时被中断", e);
+            }
+        }
+        if (config.spillError != null) {//溢写文件不完整，继续写出会丢数据
+            throw new IllegalStateException("溢写失败", config.spillError);
+        }
+    }
+
+    /**
+     * 清理所有临时序列化文件
+     */
+    private void cleanSpillFiles() {
+        for (RowBuffer buffer : config.buffers) {
+            buffer.tmpSerializeFilePath.parallelStream().forEach(filePath -> {
+                try {
+                    //log.debug("清理 {}", filePath);
+                    FileUtil.del(filePath);
+                } catch (Exception e) {
+                    log.warn("清理临时序列化文件异常 {}", ExceptionUtil.stacktraceToString(e));
+                }
+            });
+            buffer.tmpSerializeFilePath.clear();
+            buffer.tmpSerializeRowCount.clear();
+            buffer.tmpSerializeCodec.clear();
+            buffer.tmpSerializeTextBytes.clear();
+        }
+    }
+
+    /**
+     * 更改表头别名，通过回调方法，更改headers里面的value即可
+     *
+     * @param handler
+     */
+    public void setHeadersAlias(java.util.function.Consumer<Map<String, String>> handler) {
+        syncHeaders();
+        handler.accept(config.headers);
+        log.debug("表头更改别名 {}", config.headers);
+    }
+
+    /**
+     * 写出excel
+     */
+    public void write() {
+        long start = System.nanoTime();
+        awaitSpills();
+        syncHeaders();
+        try {
+            if (config.sheetWriter == null && config.parallelism > 1 && (config.rollingRows > 0 || config.rollingBytes > 0)) {
+                writeRolling();
+            } else if (config.sheetWriter == null && config.nativeWriter && config.parallelism > 1 && !config.format.isDelimited()) {
+                writeParallel();
+                config.files.add(config.destFile);
+            } else {
+                if (config.sheetWriter == null) {
+                    openWriter();
+                }
+                writeBuffers();
+                closeWriter();
+            }
+            if (config.zip) {
+                zipFiles();
+            }
+        } catch (Exception e) {
+            log.error("写出excel异常 {}", ExceptionUtil.stacktraceToString(e));
+        } finally {
+            config.sheetWriter = null;
+            reportWrite(start);
+            log.debug("{}", getWriteStats());
+            log.debug("清理临时序列化文件开始");
+            cleanSpillFiles();
+            log.debug("清理临时序列化文件结束");
+        }
+        log.debug("写出文件完毕 {}", config.files);
+    }
+
+    /**
+     * 写出的文件，按写出顺序排列；打包时只有zip文件，write之后调用
+     *
+     * @return
+     */
+    public List<File> getFiles() {
+        return Collections.unmodifiableList(config.files);
+    }
+
+    /**
+     * 创建写出器并写入第一个Sheet的表头
+     */
+    private void openWriter() {
+        //直写模式下之后还可能出现新列，为表头行预留位置，写出器结束Sheet前都可以改写
+        boolean deferHeaders = config.reserveHeaderRow && (config.direct || config.freezeHeadersAfter > 0);
+        config.sheetWriter = createSheetWriter(SheetWriter.partFile(config.destFile, config.fileNo), deferHeaders);
+        config.sheetWriter.writeRow(config.headers.values());//写入第一个Sheet的表头
+    }
+
+    /**
+     * 按格式创建写出器
+     *
+     * @param file
+     * @param deferHeaders 是否延后写出表头，POI写出器的表头行总是在关闭时写出
+     * @return
+     */
+    private SheetWriter createSheetWriter(File file, boolean deferHeaders) {
+        config.metrics.count(ExcelMetrics.SHEETS_CREATED, 1);
+        if (config.format.isDelimited()) {
+            return new CsvSheetWriter(file, config.format.getDelimiter(), config.bom, deferHeaders, config.tmpDir);
+        } else if (config.nativeWriter) {
+            return new XlsxStreamWriter(file, config.sheetName, deferHeaders, config.tmpDir);
+        }
+        return new PoiSheetWriter(file, config.sheetName);
+    }
+
+    /**
+     * 关闭当前写出器，记录写出的文件
+     */
+    private void closeWriter() {
+        config.sheetWriter.close();
+        config.files.addAll(config.sheetWriter.getFiles());
+    }
+
+    /**
+     * 当前文件已达到滚动条件，关闭后在下一个文件中继续写出
+     */
+    private void rollFile() {
+        closeWriter();
+        config.fileNo++;
+        config.counter = 0;
+        config.fileRows = 0;
+        config.fileBytes = 0;
+        openWriter();
+        log.debug("滚动到文件 {}", SheetWriter.partFile(config.destFile, config.fileNo).getAbsolutePath());
+    }
+
+    /**
+     * 与目标文件同名的zip文件
+     *
+     * @param destFile
+     * @return
+     */
+    private static File zipFile(File destFile) {
+        return new File(destFile.getAbsoluteFile().getParentFile(), FileNameUtil.mainName(destFile) + ".zip");
+    }
+
+    /**
+     * 把写出的文件打包成zip，删除原文件
+     */
+    private void zipFiles() {
+        File zipFile = zipFile(config.destFile);
+        ZipUtil.zip(zipFile, false, config.files.toArray(new File[0]));
+        for (File file : config.files) {
+            FileUtil.del(file);
+        }
+        log.debug("打包 {} 个文件 {}", config.files.size(), zipFile.getAbsolutePath());
+        config.files.clear();
+        config.files.add(zipFile);
+    }
+
+    /**
+     * 将所有行缓冲区的数据写出，先写溢写文件，再写内存中剩余数据
+     */
+    private void writeBuffers() throws IOException {
+        for (RowBuffer buffer : config.buffers) {
+            for (int i = 0; i < buffer.tmpSerializeFilePath.size(); i++) {//从磁盘逐行反序列化数据并写出
+                long start = System.nanoTime();
+                try (SpillRowReader reader = new SpillRowReader(FileUtil.file(buffer.tmpSerializeFilePath.get(i)), buffer.tmpSerializeCodec.get(i))) {
+                    List<Object> row;
+                    while ((row = reader.nextRow()) != null) {
+                        writeRow(row);
+                    }
+                    config.decompressNanos.add(reader.getCodecNanos());
+                }
+                long nanos = System.nanoTime() - start;
+                config.deserializeNanos += nanos;
+                config.metrics.time(ExcelMetrics.DESERIALIZE, nanos);
+            }
+            if (!buffer.rows.isEmpty()) {//写出剩余数据
+                writeRows(buffer.rows);
+                int rows = buffer.rows.size();
+                buffer.rows.clear();
+                reportBufferedBytes(buffer);
+                config.bufferedBytes.addAndGet(-buffer.bytes);
+                config.bufferedRows.addAndGet(-rows);
+                buffer.bytes = 0;
+                buffer.textBytes = 0;
+            }
+        }
+    }
+
+    /**
+     * 并行写出，每个Sheet由一个线程编码成单独的zip，再按顺序组装
+     */
+    private void writeParallel() throws Exception {
+        List<Segment> segments = segments();
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.rowCount;
+        }
+        int sheetCount = (int) Math.max(1, (total + config.pageSize - 1) / config.pageSize);
+        List<String> headers = new ArrayList<>(config.headers.values());
+        List<String> sheetNames = new ArrayList<>();
+        List<File> sheetParts = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.parallelism, sheetCount),
+                ThreadFactoryBuilder.create().setNamePrefix("excel-sheet-").setDaemon(true).build());
+        log.debug("并行写出 {} 行，{} 个Sheet", total, sheetCount);
+        config.metrics.count(ExcelMetrics.SHEETS_CREATED, sheetCount);
+        try {
+            for (int i = 0; i < sheetCount; i++) {
+                int sheetNo = i + 1;
+                long from = (long) i * config.pageSize;
+                long to = Math.min(total, from + config.pageSize);
+                File sheetPart = createTempFile();
+                sheetNames.add(i == 0 ? config.sheetName : config.sheetName + sheetNo);
+                sheetParts.add(sheetPart);
+                futures.add(executor.submit(() -> {
+                    XlsxStreamWriter.writeSheetPart(sheetPart, sheetNo, sheetXml -> {
+                        sheetXml.writeRow(headers);
+                        writeSegmentRows(segments, from, to, sheetXml::writeRow);
+                    });
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            XlsxStreamWriter.assemble(config.destFile, sheetParts, sheetNames);
+        } finally {
+            executor.shutdownNow();
+            for (File sheetPart : sheetParts) {
+                FileUtil.del(sheetPart);
+            }
+        }
+    }
+
+    /**
+     * 按顺序列出所有待写出的数据段，先溢写文件后内存数据
+     *
+     * @return
+     */
+    private List<Segment> segments() {
+        List<Segment> segments = new ArrayList<>();
+        for (RowBuffer buffer : config.buffers) {
+            reportBufferedBytes(buffer);
+            for (int i = 0; i < buffer.tmpSerializeFilePath.size(); i++) {
+                segments.add(new Segment(buffer.tmpSerializeFilePath.get(i), buffer.tmpSerializeCodec.get(i), null,
+                        buffer.tmpSerializeRowCount.get(i), buffer.tmpSerializeTextBytes.get(i)));
+            }
+            if (!buffer.rows.isEmpty()) {
+                segments.add(new Segment(null, null, buffer.rows, buffer.rows.size(), buffer.textBytes));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 按文件并发写出，数据按滚动条件划分成多个文件，每个文件由一个线程使用自己的写出器写出
+     */
+    private void writeRolling() throws Exception {
+        List<Segment> segments = segments();
+        List<long[]> ranges = rollingRanges(segments);
+        List<String> headers = new ArrayList<>(config.headers.values());
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.parallelism, ranges.size()),
+                ThreadFactoryBuilder.create().setNamePrefix("excel-file-").setDaemon(true).build());
+        log.debug("并发写出 {} 个文件", ranges.size());
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                File file = SheetWriter.partFile(config.destFile, i + 1);
+                long from = ranges.get(i)[0];
+                long to = ranges.get(i)[1];
+                futures.add(executor.submit(() -> {
+                    SheetWriter sheetWriter = createSheetWriter(file, false);
+                    try {
+                        sheetWriter.writeRow(headers);
+                        long[] pageRows = {0};
+                        writeSegmentRows(segments, from, to, row -> {
+                            if (pageRows[0] == config.pageSize) {//文件内超出每Sheet最大行数时新建Sheet
+                                sheetWriter.newSheet(config.sheetName + (sheetWriter.getSheetCount() + 1));
+                                sheetWriter.writeRow(headers);
+                                config.metrics.count(ExcelMetrics.SHEETS_CREATED, 1);
+                                pageRows[0] = 0;
+                            }
+                            sheetWriter.writeRow(row);
+                            pageRows[0]++;
+                        });
+                    } finally {
+                        sheetWriter.close();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            for (int i = 0; i < ranges.size(); i++) {
+                config.files.add(SheetWriter.partFile(config.destFile, i + 1));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 按滚动条件划分每个文件的全局行号范围 [from, to)；按大小滚动时以数据段的平均行大小估算
+     *
+     * @param segments
+     * @return
+     */
+    private List<long[]> rollingRanges(List<Segment> segments) {
+        List<long[]> ranges = new ArrayList<>();
+        long from = 0;
+        long offset = 0;
+        double bytes = 0;
+        for (Segment segment : segments) {
+            double rowBytes = segment.rowCount > 0 ? (double) segment.textBytes / segment.rowCount : 0;
+            long end = offset + segment.rowCount;
+            long pos = offset;
+            while (pos < end) {
+                long take = end - pos;
+                if (config.rollingRows > 0) {
+                    take = Math.min(take, from + config.rollingRows - pos);
+                }
+                if (config.rollingBytes > 0 && rowBytes > 0) {//写到超过大小的那一行为止，与串行滚动一致
+                    take = Math.min(take, Math.max(1, (long) Math.ceil((config.rollingBytes - bytes) / rowBytes)));
+                }
+                pos += take;
+                bytes += take * rowBytes;
+                if (pos - from == config.rollingRows || config.rollingBytes > 0 && bytes >= config.rollingBytes) {
+                    ranges.add(new long[]{from, pos});
+                    from = pos;
+                    bytes = 0;
+                }
+            }
+            offset = end;
+        }
+        if (from < offset || ranges.isEmpty()) {
+            ranges.add(new long[]{from, offset});
+        }
+        return ranges;
+    }
+
+    /**
+     * 写出全局行号在 [from, to) 范围内的行
+     *
+     * @param segments
+     * @param from
+     * @param to
+     * @param sink
+     */
+    private void writeSegmentRows(List<Segment> segments, long from, long to, RowSink sink) throws IOException {
+        long offset = 0;
+        for (Segment segment : segments) {
+            long end = offset + segment.rowCount;
+            if (end > from && offset < to) {
+                long start = System.nanoTime();
+                long skip = Math.max(0, from - offset);
+                long take = Math.min(end, to) - offset - skip;
+                if (segment.rows != null) {
+                    for (List<?> row : segment.rows.subList((int) skip, (int) (skip + take))) {
+                        sink.write(row);
+                    }
+                } else {
+                    try (SpillRowReader reader = new SpillRowReader(FileUtil.file(segment.filePath), segment.codec)) {
+                        for (long i = 0; i < skip; i++) {
+                            reader.skipRow();
+                        }
+                        for (long i = 0; i < take; i++) {
+                            sink.write(reader.nextRow());
+                        }
+                        config.decompressNanos.add(reader.getCodecNanos());
+                    }
+                }
+                if (config.metered) {//并行编码时按段汇总，包括读取溢写文件的耗时
+                    long rows = reportWritten(take, System.nanoTime() - start);
+                    config.metrics.progress(ExcelMetrics.ROWS_WRITTEN, rows, System.nanoTime() - config.startNanos);
+                }
+            }
+            offset = end;
+        }
+    }
+
+    /**
+     * 固定表头，把已缓存的数据写出后，后续数据不再缓存，直接写出
+     */
+    private void freezeHeaders() {
+        awaitSpills();
+        syncHeaders();
+        try {
+            openWriter();
+            writeBuffers();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            cleanSpillFiles();
+        }
+        config.direct = true;
+        log.info("表头已固定 {}，后续数据直接写出", config.headers.keySet());
+    }
+
+    /**
+     * 直写模式添加一行数据
+     *
+     * @param row
+     */
+    private void appendDirect(Map<String, ?> row) {
+        if (config.sheetWriter == null) {//预先声明表头时，第一行数据到来再创建写出器，以便在此之前设置表头别名
+            openWriter();
+        }
+        SparseRow rowData = toSparseRow(row);//新列在此注册列序号
+        syncDirectHeaders();
+        writeRow(rowData);
+        countAppended(config.buffer);
+    }
+
+    /**
+     * 直写模式添加一个实体对象，此类的列第一次出现时检查表头
+     *
+     * @param bean
+     * @param binding
+     */
+    private void appendDirect(Object bean, BeanBinding binding) {
+        if (config.sheetWriter == null) {
+            openWriter();
+        }
+        if (!binding.inHeaders) {//此类的列在绑定时已注册列序号
+            syncDirectHeaders();
+            binding.inHeaders = true;
+        }
+        writeRow(binding.toSparseRow(bean));
+        countAppended(config.buffer);
+    }
+
+    /**
+     * 直写模式把列注册表中还不在表头的列按列序号顺序加入表头，表头有变动时改写
+     * <p>
+     * 实体类的列在绑定时（锁外）注册列序号，不能按实体类的列顺序加入表头，否则与其他线程新注册的列交错时表头与单元格错位
+     */
+    private void syncDirectHeaders() {
+        if (config.headers.size() >= config.columns.size()) {
+            return;
+        }
+        syncHeaders();
+        rewriteHeaders();
+    }
+
+    /**
+     * 直写模式出现新列，改写当前Sheet的表头行；表头行已经写出时抛出异常，不把数据拆到新Sheet
+     */
+    private void rewriteHeaders() {
+        if (!config.sheetWriter.rewriteHeaders(config.headers.values())) {
+            throw new IllegalStateException("表头行已写出，无法加入新列 " + config.headers.keySet());
+        }
+        log.debug("表头有变动，改写表头 {}", config.headers);
+    }
+
+    /**
+     * 写出多行数据
+     *
+     * @param rows
+     * @return
+     */
+    private void writeRows(List<List<?>> rows) {
+        for (List<?> row : rows) {
+            writeRow(row);
+        }
+    }
+
+    /**
+     * 写出一行数据，达到滚动条件时写入下一个文件，超出每Sheet最大行数时新建Sheet
+     *
+     * @param row
+     */
+    private void writeRow(List<?> row) {
+        if (config.rollingRows > 0 && config.fileRows == config.rollingRows || config.rollingBytes > 0 && config.fileBytes >= config.rollingBytes) {
+            rollFile();
+        } else if (config.counter == config.pageSize) {//如果超出限制，新建Sheet
+            newSheet();
+        }
+        SheetWriter sheetWriter = config.sheetWriter;
+
+        if (config.metered) {
+            long start = System.nanoTime();
+            sheetWriter.writeRow(row);//写出一行数据
+            config.unreportedWriteNanos += System.nanoTime() - start;
+            if (++config.unreportedWritten == config.progressInterval) {
+                long rows = reportWritten(config.unreportedWritten, config.unreportedWriteNanos);
+                config.unreportedWritten = 0;
+                config.unreportedWriteNanos = 0;
+                config.metrics.progress(ExcelMetrics.ROWS_WRITTEN, rows, System.nanoTime() - config.startNanos);
+            }
+        } else {
+            sheetWriter.writeRow(row);//写出一行数据
+        }
+        config.counter++;
+        config.fileRows++;
+        if (config.rollingBytes > 0) {
+            config.fileBytes += estimateTextBytes(row);
+        }
+    }
+
+    /**
+     * 新建Sheet并写入表头
+     */
+    private void newSheet() {
+        SheetWriter sheetWriter = config.sheetWriter;
+        sheetWriter.newSheet(config.sheetName + (sheetWriter.getSheetCount() + 1));
+        config.counter = 0;
+        config.metrics.count(ExcelMetrics.SHEETS_CREATED, 1);
+
+        sheetWriter.writeRow(config.headers.values());//新建一个Sheet后，写入表头
+    }
+
+
+    /**
+     * 将数据序列化到磁盘
+     *
+     * @param rows
+     * @param file
+     * @param codec
+     */
+    private void serialize(List<List<?>> rows, File file, SpillCodec codec) {
+        //log.debug("序列化 {}", file.getAbsolutePath());
+        long start = System.nanoTime();
+        try {
+            SpillRowWriter writer = new SpillRowWriter(file, codec);
+            try {
+                for (List<?> row : rows) {
+                    writer.writeRow(row);
+                }
+                rows.clear();
+            } finally {
+                writer.close();//关闭后压缩数据才全部写出，字节数统计完整
+            }
+            config.spillBytes.add(writer.getStoredBytes());
+            config.metrics.count(ExcelMetrics.SPILL_BYTES, writer.getStoredBytes());
+            config.spillRawBytes.add(writer.getBytesWritten());
+            config.compressNanos.add(writer.getCodecNanos());
+            if (config.spillCodecCandidates != null) {//自适应试写结果
+                config.spillCodecTrials.putIfAbsent(codec, new long[]{writer.getBytesWritten(), writer.getStoredBytes(), System.nanoTime() - start});
+            }
+        } catch (Exception e) {
+            if (config.spillError == null) {
+                config.spillError = e;
+            }
+            if (config.spillCodecCandidates != null) {//试写失败也要记录，否则所有候选试写完也无法选定
+                config.spillCodecTrials.putIfAbsent(codec, FAILED_TRIAL);
+            }
+            throw new IllegalStateException("序列化文件异常 " + file.getAbsolutePath(), e);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            config.serializeNanos.add(nanos);
+            config.metrics.time(ExcelMetrics.SERIALIZE, nanos);
+        }
+        //log.debug("序列化完毕 {}", file.getAbsolutePath());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package sunyu.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV、TSV逐行读取，RFC 4180：引号中的分隔符、换行属于字段，引号双写表示一个引号；行以 \n 或 \r\n 结束
+ * <p>
+ * 通道读入复用的ByteBuffer，解码到复用的CharBuffer；不含引号、没有跨越缓冲区的字段直接从字符数组创建String，
+ * 其他字段逐字符拼接到复用的StringBuilder。没有引号的空字段为null，与xlsx中的空单元格一致；开头的UTF-8 BOM被跳过
+ *
+ * @author 孙宇
+ */
+final class CsvRowReader implements Closeable {
+    private final ReadableByteChannel channel;
+    private final char delimiter;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+    private final CharBuffer chars = CharBuffer.allocate(64 * 1024);
+    private final StringBuilder field = new StringBuilder();
+    //通道已读完
+    private boolean eof;
+    //解码器已结束
+    private boolean done;
+    //是否已检查过开头的BOM
+    private boolean bomChecked;
+    //上一行的字段数，用作下一行的初始容量
+    private int lastSize = 16;
+
+    CsvRowReader(ReadableByteChannel channel, char delimiter) {
+        this.channel = channel;
+        this.delimiter = delimiter;
+        ((Buffer) chars).limit(0);//转为Buffer调用，兼容jdk8运行
+    }
+
+    /**
+     * 读取下一行，跳过空行
+     *
+     * @return 字段列表，值为String或null；读完时返回null
+     */
+    List<Object> nextRow() throws IOException {
+        List<Object> row;
+        do {
+            row = readRow();
+        } while (row != null && row.size() == 1 && row.get(0) == null);
+        return row;
+    }
+
+    private List<Object> readRow() throws IOException {
+        if (!hasChar()) {
+            return null;
+        }
+        if (!bomChecked) {
+            bomChecked = true;
+            if (chars.get(chars.position()) == '\uFEFF') {
+                chars.get();
+                if (!hasChar()) {
+                    return null;
+                }
+            }
+        }
+        List<Object> row = new ArrayList<>(lastSize);
+        boolean quoted = false;//当前字段是否以引号开始
+        boolean inQuotes = false;
+        while (true) {
+            if (field.length() == 0 && !quoted) {//字段开始，先尝试在缓冲区内直接找到字段结尾
+                char[] a = chars.array();
+                int start = chars.position();
+                int lim = chars.limit();
+                int i = start;
+                while (i < lim) {
+                    char c = a[i];
+                    if (c == delimiter || c == '\n' || c == '\r' || c == '"') {
+                        break;
+                    }
+                    i++;
+                }
+                if (i < lim && a[i] != '"') {
+                    row.add(i == start ? null : new String(a, start, i - start));
+                    ((Buffer) chars).position(i + 1);
+                    char c = a[i];
+                    if (c == delimiter) {
+                        continue;
+                    }
+                    if (c == '\r' && hasChar() && chars.get(chars.position()) == '\n') {
+                        chars.get();
+                    }
+                    return end(row);
+                }
+                if (i > start && (i == lim || a[i] == '"')) {//字段跨越缓冲区，或中间有引号，转为逐字符处理
+                    field.append(a, start, i - start);
+                    ((Buffer) chars).position(i);
+                }
+            }
+            if (!hasChar()) {//最后一行没有换行
+                addField(row, quoted);
+                return end(row);
+            }
+            char c = chars.get();
+            if (inQuotes) {
+                if (c == '"') {
+                    if (hasChar() && chars.get(chars.position()) == '"') {
+                        chars.get();
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == delimiter) {
+                addField(row, quoted);
+                quoted = false;
+            } else if (c == '\n') {
+                addField(row, quoted);
+                return end(row);
+            } else if (c == '\r') {
+                if (hasChar() && chars.get(chars.position()) == '\n') {
+                    chars.get();
+                }
+                addField(row, quoted);
+                return end(row);
+            } else if (c == '"' && field.length() == 0 && !quoted) {
+                quoted = true;
+                inQuotes = true;
+            } else {
+                field.append(c);
+            }
+        }
+    }
+
+    private void addField(List<Object> row, boolean quoted) {
+        row.add(field.length() == 0 && !quoted ? null : field.toString());
+        field.setLength(0);
+    }
+
+    private List<Object> end(List<Object> row) {
+        lastSize = row.size();
+        return row;
+    }
+
+    /**
+     * 字符缓冲区还有字符，没有时从通道读取并解码
+     *
+     * @return 读完时返回false
+     */
+    private boolean hasChar() throws IOException {
+        if (chars.hasRemaining()) {
+            return true;
+        }
+        ((Buffer) chars).clear();
+        while (chars.position() == 0 && !done) {
+            if (!eof && channel.read(bytes) < 0) {
+                eof = true;
+            }
+            ((Buffer) bytes).flip();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            bytes.compact();
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (eof && result.isUnderflow()) {
+                decoder.flush(chars);
+                done = true;
+            }
+        }
+        ((Buffer) chars).flip();
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
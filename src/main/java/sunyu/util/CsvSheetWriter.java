@@ -0,0 +1,353 @@
+package sunyu.util;
+
+import cn.hutool.core.io.IORuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * CSV、TSV写出器，每个"Sheet"是一个文件：第一个文件是目标文件，之后依次为 name_2.csv、name_3.csv ...
+ * <p>
+ * 字符写入复用的CharBuffer，满了之后编码到复用的ByteBuffer再写入FileChannel；含分隔符、引号、换行的字段加引号，引号双写。
+ * 日期按 yyyy-MM-dd HH:mm:ss 写出，LocalDate按 yyyy-MM-dd，与xlsx中的显示格式一致。
+ * 延后表头时数据行先写入临时文件，文件结束时再写出表头行并拷贝数据行，这之前表头可以随时改写
+ *
+ * @author 孙宇
+ */
+final class CsvSheetWriter implements SheetWriter {
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final File destFile;
+    private final char delimiter;
+    private final boolean bom;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(32 * 1024);
+    private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+    //Date格式化复用的日历
+    private final Calendar calendar = Calendar.getInstance();
+    private final List<File> files = new ArrayList<>();
+    private FileChannel channel;
+    //当前文件是否已经写入过通道，写入后表头行不能再改写
+    private boolean flushed;
+    //当前文件是否已写出表头行
+    private boolean headerWritten;
+    //当前文件表头行在chars中的结束位置
+    private int headerLength;
+    //是否延后写出表头
+    private final boolean deferHeaders;
+    //临时文件路径，为null时使用系统临时目录
+    private final File tmpDir;
+    //延后表头时当前文件的表头
+    private List<Object> headers;
+    //延后表头时当前文件的数据行临时文件
+    private File body;
+
+    CsvSheetWriter(File destFile, char delimiter, boolean bom) {
+        this(destFile, delimiter, bom, false, null);
+    }
+
+    /**
+     * @param destFile
+     * @param delimiter
+     * @param bom
+     * @param deferHeaders 是否延后写出表头，文件结束前表头都可以改写
+     * @param tmpDir       数据行临时文件路径，为null时使用系统临时目录
+     */
+    CsvSheetWriter(File destFile, char delimiter, boolean bom, boolean deferHeaders, File tmpDir) {
+        this.destFile = destFile;
+        this.delimiter = delimiter;
+        this.bom = bom;
+        this.deferHeaders = deferHeaders;
+        this.tmpDir = tmpDir;
+        newSheet(null);
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return files;
+    }
+
+    @Override
+    public void writeRow(Collection<?> row) {
+        if (deferHeaders && headers == null) {//每个文件的第一行是表头，文件结束时再写出
+            headers = new ArrayList<>(row);
+            return;
+        }
+        writeLine(row);
+        if (!headerWritten) {
+            headerWritten = true;
+            headerLength = chars.position();
+        }
+    }
+
+    private void writeLine(Collection<?> row) {
+        if (row instanceof SparseRow) {//稀疏行按列序号补齐分隔符
+            SparseRow sparse = (SparseRow) row;
+            int col = 0;//当前所在的字段
+            for (int i = 0, n = sparse.cellCount(); i < n; i++) {
+                for (int c = sparse.columnAt(i); col < c; col++) {
+                    put(delimiter);
+                }
+                writeValue(sparse.valueAt(i));
+            }
+        } else {
+            boolean first = true;
+            for (Object v : row) {
+                if (!first) {
+                    put(delimiter);
+                }
+                first = false;
+                if (v != null) {
+                    writeValue(v);
+                }
+            }
+        }
+        put('\r');
+        put('\n');
+    }
+
+    @Override
+    public void newSheet(String name) {
+        try {
+            if (channel != null) {
+                endFile();
+            }
+            File file = SheetWriter.partFile(destFile, files.size() + 1);
+            files.add(file);
+            if (deferHeaders) {
+                body = File.createTempFile("excel-csv-", ".tmp", tmpDir);
+                headers = null;
+            }
+            channel = open(deferHeaders ? body : file);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        flushed = false;
+        headerWritten = false;
+        if (bom && !deferHeaders) {
+            put('\uFEFF');
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 结束当前文件，延后表头时先写表头行，再拷贝临时文件中的数据行
+     */
+    private void endFile() throws IOException {
+        flush();
+        channel.close();
+        if (!deferHeaders) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(body.toPath(), StandardOpenOption.READ)) {
+            channel = open(files.get(files.size() - 1));
+            if (bom) {
+                put('\uFEFF');
+            }
+            if (headers != null) {
+                writeLine(headers);
+            }
+            flush();
+            long size = in.size();
+            for (long pos = 0; pos < size; ) {
+                pos += in.transferTo(pos, size - pos, channel);
+            }
+            channel.close();
+        } finally {
+            Files.deleteIfExists(body.toPath());
+        }
+    }
+
+    @Override
+    public int getSheetCount() {
+        return files.size();
+    }
+
+    /**
+     * 表头行还在字符缓冲区中时原地改写
+     */
+    @Override
+    public boolean rewriteHeaders(Collection<String> headers) {
+        if (deferHeaders) {
+            this.headers = new ArrayList<>(headers);
+            return true;
+        }
+        if (flushed || !headerWritten) {
+            return false;
+        }
+        ((Buffer) chars).flip();//转为Buffer调用，兼容jdk8运行
+        ((Buffer) chars).position(headerLength);
+        String rest = chars.toString();
+        ((Buffer) chars).clear();
+        if (bom) {
+            put('\uFEFF');
+        }
+        headerWritten = false;
+        writeRow(headers);
+        put(rest);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            endFile();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private void writeValue(Object v) {
+        if (v instanceof String) {
+            writeText((String) v);
+        } else if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+            put(Long.toString(((Number) v).longValue()));
+        } else if (v instanceof Double || v instanceof Float) {
+            double d = ((Number) v).doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                put(Long.toString((long) d));
+            } else {
+                put(Double.toString(d));
+            }
+        } else if (v instanceof BigDecimal) {
+            put(((BigDecimal) v).toPlainString());
+        } else if (v instanceof Date) {
+            calendar.setTime((Date) v);
+            writeDateTime(calendar);
+        } else if (v instanceof Calendar) {
+            writeDateTime((Calendar) v);
+        } else if (v instanceof LocalDateTime) {
+            put(DATE_TIME.format((LocalDateTime) v));
+        } else if (v instanceof LocalDate) {
+            put(DATE.format((LocalDate) v));
+        } else {
+            writeText(v.toString());
+        }
+    }
+
+    /**
+     * 按 yyyy-MM-dd HH:mm:ss 写出，不经过SimpleDateFormat
+     *
+     * @param c
+     */
+    private void writeDateTime(Calendar c) {
+        pad(c.get(Calendar.YEAR), 4);
+        put('-');
+        pad(c.get(Calendar.MONTH) + 1, 2);
+        put('-');
+        pad(c.get(Calendar.DAY_OF_MONTH), 2);
+        put(' ');
+        pad(c.get(Calendar.HOUR_OF_DAY), 2);
+        put(':');
+        pad(c.get(Calendar.MINUTE), 2);
+        put(':');
+        pad(c.get(Calendar.SECOND), 2);
+    }
+
+    private void pad(int v, int width) {
+        if (v >= 0 && v < 10000) {
+            for (int div = width == 4 ? 1000 : 10; div > 0; div /= 10) {
+                put((char) ('0' + v / div % 10));
+            }
+        } else {
+            put(Integer.toString(v));
+        }
+    }
+
+    /**
+     * 写出文本，含分隔符、引号、换行时加引号
+     *
+     * @param s
+     */
+    private void writeText(String s) {
+        int len = s.length();
+        boolean quote = false;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == delimiter || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            put(s);
+            return;
+        }
+        put('"');
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                put('"');
+            }
+            put(c);
+        }
+        put('"');
+    }
+
+    private void put(char c) {
+        if (!chars.hasRemaining()) {
+            flush();
+        }
+        chars.put(c);
+    }
+
+    private void put(String s) {
+        int len = s.length();
+        int i = 0;
+        while (i < len) {
+            if (!chars.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(len - i, chars.remaining());
+            s.getChars(i, i + n, chars.array(), chars.arrayOffset() + chars.position());
+            ((Buffer) chars).position(chars.position() + n);
+            i += n;
+        }
+    }
+
+    /**
+     * 把字符缓冲区编码后写入通道
+     */
+    private void flush() {
+        ((Buffer) chars).flip();
+        try {
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, false);
+                ((Buffer) bytes).flip();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                ((Buffer) bytes).clear();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        chars.compact();//末尾不完整的代理对留到下次编码
+        flushed = true;
+    }
+
+}
@@ -0,0 +1,64 @@
+package sunyu.util;
+
+import cn.hutool.core.io.file.FileNameUtil;
+
+/**
+ * 读写的文件格式
+ *
+ * @author 孙宇
+ */
+public enum ExcelFormat {
+    /**
+     * Excel，写出xlsx；读取时按文件头区分xlsx和xls
+     */
+    EXCEL((char) 0),
+    /**
+     * 逗号分隔的文本，RFC 4180
+     */
+    CSV(','),
+    /**
+     * 制表符分隔的文本，引号规则与CSV相同
+     */
+    TSV('\t');
+
+    private final char delimiter;
+
+    ExcelFormat(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * 分隔符，{@link #EXCEL} 没有分隔符
+     *
+     * @return
+     */
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * 是否分隔文本格式
+     *
+     * @return
+     */
+    public boolean isDelimited() {
+        return this != EXCEL;
+    }
+
+    /**
+     * 按扩展名判断格式：.csv为CSV，.tsv、.tab为TSV，其他为Excel
+     *
+     * @param fileName
+     * @return
+     */
+    public static ExcelFormat of(String fileName) {
+        String ext = FileNameUtil.extName(fileName);
+        if ("csv".equalsIgnoreCase(ext)) {
+            return CSV;
+        }
+        if ("tsv".equalsIgnoreCase(ext) || "tab".equalsIgnoreCase(ext)) {
+            return TSV;
+        }
+        return EXCEL;
+    }
+}
@@ -0,0 +1,85 @@
+package sunyu.util;
+
+/**
+ * 导出、导入的指标监听器，用来接入自己的监控
+ * <p>
+ * 写出工具和读取工具在热路径上调用，方法都有空的默认实现，只需要覆盖关心的；使用默认的 {@link #NOOP} 时不计时也不回调。
+ * 计数按批次汇总后回调，不是每行一次；异步溢写、并发追加、并行解析Sheet时会在多个线程中回调，实现需要线程安全
+ *
+ * @author 孙宇
+ */
+public interface ExcelMetrics {
+
+    /**
+     * 不做任何事的默认实现
+     */
+    ExcelMetrics NOOP = new ExcelMetrics() {
+    };
+
+    //写出：追加的数据行数，计数器、进度
+    String ROWS_APPENDED = "excel.write.rows.appended";
+    //写出：写入Sheet的数据行数，计数器、进度
+    String ROWS_WRITTEN = "excel.write.rows.written";
+    //写出：溢写文件数，计数器
+    String SPILL_FILES = "excel.write.spill.files";
+    //写出：溢写文件字节数，计数器
+    String SPILL_BYTES = "excel.write.spill.bytes";
+    //写出：创建的Sheet数，计数器
+    String SHEETS_CREATED = "excel.write.sheets.created";
+    //写出：缓冲区序列化到溢写文件，计时器
+    String SERIALIZE = "excel.write.serialize";
+    //写出：读取溢写文件并写入Sheet，计时器
+    String DESERIALIZE = "excel.write.deserialize";
+    //写出：写出器写入数据行，计时器
+    String WRITE_ROWS = "excel.write.write-rows";
+    //写出：write()整体，计时器
+    String WRITE = "excel.write";
+    //写出：内存中缓存的数据行数，峰值
+    String BUFFERED_ROWS = "excel.write.buffered.rows";
+    //写出：内存中缓存数据的估算字节数，峰值
+    String BUFFERED_BYTES = "excel.write.buffered.bytes";
+    //读取：回调的数据行数，计数器、进度
+    String ROWS_READ = "excel.read.rows";
+    //读取：解析的Sheet数，计数器
+    String SHEETS_READ = "excel.read.sheets";
+    //读取：一次读取整体，计时器
+    String READ = "excel.read";
+
+    /**
+     * 计数器累加
+     *
+     * @param name  指标名
+     * @param delta 增量
+     */
+    default void count(String name, long delta) {
+    }
+
+    /**
+     * 记录一次阶段耗时
+     *
+     * @param name  指标名
+     * @param nanos 耗时，纳秒
+     */
+    default void time(String name, long nanos) {
+    }
+
+    /**
+     * 记录峰值
+     *
+     * @param name  指标名
+     * @param value 本次读写的峰值
+     */
+    default void peak(String name, long value) {
+    }
+
+    /**
+     * 进度回调，每 progressInterval 行回调一次，阶段结束时再回调一次
+     *
+     * @param name         指标名，{@link #ROWS_APPENDED}、{@link #ROWS_WRITTEN} 或 {@link #ROWS_READ}
+     * @param rows         累计行数
+     * @param elapsedNanos 从开始到现在的耗时，纳秒
+     */
+    default void progress(String name, long rows, long elapsedNanos) {
+    }
+
+}
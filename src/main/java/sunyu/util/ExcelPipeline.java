@@ -0,0 +1,374 @@
+package sunyu.util;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import sunyu.util.pojo.ExcelRow;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 读取-转换-写出流水线，把 {@link BigDataExcelReaderUtil} 解析出的行经过过滤、转换后写入 {@link BigDataExcelWriterUtil}
+ * <p>
+ * 解析在调用线程中进行，行按批交给转换线程池并发过滤、转换，再按文件顺序放入有界队列，由写出线程追加到写出工具；
+ * 解析、转换、写出在不同线程中重叠执行，各环节之间的批次数都有上限，内存占用不随文件大小增长。
+ * 输出列已知时（未设置转换、{@link Builder#headers(String...)} 或 {@link Builder#sourceHeaders(String...)}）
+ * 写出工具以直写模式打开，数据直接写入Sheet，不缓存也不溢写
+ *
+ * @author 孙宇
+ */
+public class ExcelPipeline {
+    private final Log log = LogFactory.get();
+    private final Config config;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private ExcelPipeline(Config config) {
+        if (config.reader == null || config.writer == null) {
+            throw new IllegalArgumentException("需要设置reader和writer");
+        }
+        log.info("[构建ExcelPipeline] 开始");
+        log.info("转换线程数 {} 每批行数 {} 写出队列批次数 {}", config.workers, config.batchSize, config.queueCapacity);
+        if (config.headers != null) {
+            log.info("输出列 {}", config.headers);
+        } else if (config.sourceHeaders) {
+            log.info("输出列 源文件表头 + {}", config.extraHeaders);
+        } else {
+            log.info("输出列 动态");
+        }
+        log.info("[构建ExcelPipeline] 结束");
+        this.config = config;
+    }
+
+    private static class Config {
+        //读取工具
+        private BigDataExcelReaderUtil reader;
+        //写出工具构建器，第一批数据到达、源表头已解析后再构建
+        private BigDataExcelWriterUtil.Builder writer;
+        //过滤条件，为null表示不过滤
+        private Predicate<ExcelRow> filter;
+        //转换函数，返回Map或实体对象，返回null时丢弃此行；为null时写出行的rowMap
+        private Function<ExcelRow, ?> mapper;
+        //转换线程数
+        private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        //每批行数
+        private int batchSize = 1000;
+        //写出队列最多缓存的批次数
+        private int queueCapacity = 16;
+        //是否按文件顺序写出
+        private boolean ordered = true;
+        //声明的输出列，为null表示未声明
+        private List<String> headers;
+        //是否以源文件第一个Sheet的表头作为输出列
+        private boolean sourceHeaders = false;
+        //以源文件表头作为输出列时追加在后面的列
+        private final List<String> extraHeaders = new ArrayList<>();
+    }
+
+    public static class Builder {
+        private final Config config = new Config();
+
+        public ExcelPipeline build() {
+            if (config.mapper == null && config.headers == null) {//不转换时输出列就是源文件表头
+                config.sourceHeaders = true;
+            }
+            return new ExcelPipeline(config);
+        }
+
+        /**
+         * 设置读取工具，行范围、选择列、Sheet等在读取工具中设置
+         *
+         * @param reader
+         */
+        public Builder reader(BigDataExcelReaderUtil reader) {
+            config.reader = reader;
+            return this;
+        }
+
+        /**
+         * 设置写出工具构建器，流水线在源表头解析后构建写出工具，写出完成后关闭
+         *
+         * @param writer
+         */
+        public Builder writer(BigDataExcelWriterUtil.Builder writer) {
+            config.writer = writer;
+            return this;
+        }
+
+        /**
+         * 设置过滤条件，返回false的行不写出；在转换线程中并发执行，需要线程安全
+         *
+         * @param filter
+         */
+        public Builder filter(Predicate<ExcelRow> filter) {
+            config.filter = filter;
+            return this;
+        }
+
+        /**
+         * 设置转换函数，返回Map或实体对象（见 {@link BigDataExcelWriterUtil#append(Object)}），返回null时丢弃此行；
+         * 在转换线程中并发执行，需要线程安全；行的rowMap是按表头读取单元格的只读视图，需要修改时复制一份
+         *
+         * @param mapper
+         */
+        public Builder map(Function<ExcelRow, ?> mapper) {
+            config.mapper = mapper;
+            return this;
+        }
+
+        /**
+         * 设置转换线程数，默认CPU核数-2（留给解析和写出），最少1
+         *
+         * @param workers
+         */
+        public Builder workers(int workers) {
+            if (workers > 0) {
+                config.workers = workers;
+            }
+            return this;
+        }
+
+        /**
+         * 设置每批行数，默认1000
+         *
+         * @param batchSize
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize > 0) {
+                config.batchSize = batchSize;
+            }
+            return this;
+        }
+
+        /**
+         * 设置写出队列最多缓存的批次数，默认16，写出慢时解析和转换等待
+         *
+         * @param capacity
+         */
+        public Builder queueCapacity(int capacity) {
+            if (capacity > 0) {
+                config.queueCapacity = capacity;
+            }
+            return this;
+        }
+
+        /**
+         * 是否按文件顺序写出，默认true；false时先转换完的批次先写出
+         *
+         * @param ordered
+         */
+        public Builder ordered(boolean ordered) {
+            config.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * 声明输出列，写出工具以直写模式打开，不缓存、不溢写
+         *
+         * @param headers
+         */
+        public Builder headers(String... headers) {
+            config.headers = Arrays.asList(headers);
+            config.sourceHeaders = false;
+            return this;
+        }
+
+        /**
+         * 以源文件第一个Sheet的表头（设置了选择列时只包含选中的列）加上extra作为输出列，写出工具以直写模式打开；
+         * 未设置转换函数时默认如此
+         *
+         * @param extra 转换时新增的列
+         */
+        public Builder sourceHeaders(String... extra) {
+            config.sourceHeaders = true;
+            config.headers = null;
+            config.extraHeaders.addAll(Arrays.asList(extra));
+            return this;
+        }
+    }
+
+    /**
+     * 一批转换后的数据
+     */
+    private static final class Batch {
+        //这批数据第一行所在的Sheet，用于获取源表头
+        private final int sheetIndex;
+        private final List<Object> rows;
+
+        private Batch(int sheetIndex, List<Object> rows) {
+            this.sheetIndex = sheetIndex;
+            this.rows = rows;
+        }
+    }
+
+    //结束标记
+    private static final Batch END = new Batch(-1, Collections.emptyList());
+
+    /**
+     * 执行流水线，读取、转换、写出完成后返回；任一环节异常时停止并抛出
+     *
+     * @return 写出的数据行数
+     */
+    public long run() {
+        log.debug("流水线开始");
+        long start = System.currentTimeMillis();
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(config.queueCapacity);
+        WriteLoop writeLoop = new WriteLoop(queue);
+        Thread writerThread = ThreadFactoryBuilder.create().setNamePrefix("excel-pipeline-write-").setDaemon(true).build()
+                .newThread(writeLoop);
+        writerThread.start();
+        try {
+            config.reader.readBatches(config.batchSize, config.workers, config.ordered, true, this::transform, batch -> put(queue, batch, writeLoop));
+            put(queue, END, writeLoop);
+        } catch (RuntimeException | Error e) {
+            writeLoop.cancelled = true;
+            queue.clear();
+            queue.offer(END);
+            join(writerThread);
+            if (writeLoop.error != null) {//写出异常导致读取中止，抛出写出异常
+                throw rethrow(writeLoop.error);
+            }
+            throw e;
+        }
+        join(writerThread);
+        if (writeLoop.error != null) {
+            throw rethrow(writeLoop.error);
+        }
+        log.debug("流水线结束 写出 {} 行 耗时 {} ms", writeLoop.rows.get(), System.currentTimeMillis() - start);
+        return writeLoop.rows.get();
+    }
+
+    /**
+     * 在转换线程中过滤、转换一批行
+     *
+     * @param rows
+     * @return
+     */
+    private Batch transform(List<ExcelRow> rows) {
+        List<Object> out = new ArrayList<>(rows.size());
+        for (ExcelRow row : rows) {
+            if (config.filter != null && !config.filter.test(row)) {
+                continue;
+            }
+            Object value = config.mapper != null ? config.mapper.apply(row) : row.getRowMap();
+            if (value != null) {
+                out.add(value);
+            }
+        }
+        return new Batch(rows.get(0).getSheetIndex(), out);
+    }
+
+    /**
+     * 在解析线程中把转换结果放入写出队列，写出线程异常时停止读取
+     *
+     * @param queue
+     * @param batch
+     * @param writeLoop
+     */
+    private void put(BlockingQueue<Batch> queue, Batch batch, WriteLoop writeLoop) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (writeLoop.error != null) {
+                    throw new IllegalStateException("写出异常，停止读取", writeLoop.error);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待写出时被中断", e);
+        }
+    }
+
+    private void join(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException("流水线写出异常", e);
+    }
+
+    /**
+     * 写出线程，从队列中取出批次追加到写出工具，收到结束标记后写出文件
+     */
+    private final class WriteLoop implements Runnable {
+        private final BlockingQueue<Batch> queue;
+        private final AtomicLong rows = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private BigDataExcelWriterUtil writer;
+
+        private WriteLoop(BlockingQueue<Batch> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = queue.take()) != END) {
+                    if (writer == null) {
+                        open(batch.sheetIndex);
+                    }
+                    writer.append(batch.rows);
+                    rows.addAndGet(batch.rows.size());
+                }
+                if (!cancelled) {
+                    if (writer == null) {//源文件没有数据行
+                        open(0);
+                    }
+                    writer.write();
+                }
+            } catch (Throwable e) {
+                error = e;
+                queue.clear();//解析线程阻塞在放入时可以继续，随后发现异常停止
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        /**
+         * 第一批数据到达时构建写出工具，这时源表头已经解析
+         *
+         * @param sheetIndex
+         */
+        private void open(int sheetIndex) {
+            if (config.headers != null) {
+                config.writer.headers(config.headers);
+            } else if (config.sourceHeaders) {
+                List<String> headers = config.reader.headers(sheetIndex);
+                List<String> all = new ArrayList<>(headers != null ? headers : Collections.emptyList());
+                all.addAll(config.extraHeaders);
+                if (!all.isEmpty()) {
+                    config.writer.headers(all);
+                }
+            }
+            writer = config.writer.build();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package sunyu.util;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import sunyu.util.pojo.ExcelRow;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * 拉取式读取Excel行，解析在后台线程中进行，按批放入有界队列
+ * <p>
+ * 队列满时解析线程阻塞等待；提前 {@link #close()} 会停止解析并释放文件；解析异常在 {@link #hasNext()} 中抛给调用方。
+ * 使用完必须关闭，建议放在try-with-resources中
+ *
+ * @author 孙宇
+ */
+public final class ExcelRowIterator implements Iterator<ExcelRow>, AutoCloseable {
+    //结束标记
+    private static final List<ExcelRow> END = Collections.emptyList();
+
+    private final BlockingQueue<List<ExcelRow>> queue;
+    private final int batchSize;
+    private final Thread parser;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    //解析线程正在填充的批次
+    private List<ExcelRow> pending;
+    //当前消费的批次
+    private List<ExcelRow> batch = Collections.emptyList();
+    private int position;
+    private boolean finished;
+
+    /**
+     * @param reader    读取过程，参数是每行的回调，在解析线程中执行
+     * @param capacity  队列最多缓存的批次数
+     * @param batchSize 每批行数
+     */
+    ExcelRowIterator(Consumer<Consumer<ExcelRow>> reader, int capacity, int batchSize) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.parser = ThreadFactoryBuilder.create().setNamePrefix("excel-read-").setDaemon(true).build()
+                .newThread(() -> parse(reader));
+        this.parser.start();
+    }
+
+    private void parse(Consumer<Consumer<ExcelRow>> reader) {
+        pending = new ArrayList<>(batchSize);
+        try {
+            reader.accept(row -> {
+                if (cancelled) {
+                    throw new Cancelled();
+                }
+                pending.add(row);
+                if (pending.size() >= batchSize) {
+                    put(pending);
+                    pending = new ArrayList<>(batchSize);
+                }
+            });
+            if (!pending.isEmpty()) {
+                put(pending);
+            }
+        } catch (Throwable e) {
+            if (!cancelled) {
+                error = e;
+            }
+        } finally {
+            if (!cancelled) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void put(List<ExcelRow> rows) {
+        try {
+            queue.put(rows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Cancelled();
+        }
+        if (cancelled) {//关闭时清空了队列，刚放入的批次不再消费
+            queue.clear();
+            throw new Cancelled();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position >= batch.size()) {
+            if (finished) {
+                return false;
+            }
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("等待解析数据时被中断", e);
+            }
+            position = 0;
+            if (batch == END) {
+                finished = true;
+                Throwable e = error;
+                if (e != null) {
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException) e;
+                    }
+                    if (e instanceof Error) {
+                        throw (Error) e;
+                    }
+                    throw new IllegalStateException("解析Excel异常", e);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ExcelRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ExcelRow row = batch.get(position);
+        batch.set(position++, null);//已消费的行尽早释放
+        return row;
+    }
+
+    /**
+     * 停止解析并等待解析线程退出，可以重复调用
+     */
+    @Override
+    public void close() {
+        if (finished && !parser.isAlive()) {
+            return;
+        }
+        cancelled = true;
+        finished = true;
+        batch = Collections.emptyList();
+        queue.clear();//解析线程阻塞在放入时可以继续，随后在下一行停止
+        boolean interrupted = false;
+        while (parser.isAlive()) {
+            try {
+                parser.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        queue.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 取消解析时从行回调中抛出，终止SAX解析
+     */
+    private static final class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package sunyu.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 保存在内存中的指标，用于测试和简单统计，线程安全
+ *
+ * @author 孙宇
+ */
+public class InMemoryExcelMetrics implements ExcelMetrics {
+    //计数器
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    //计时器累计耗时，纳秒
+    private final Map<String, LongAdder> nanos = new ConcurrentHashMap<>();
+    //计时器记录次数
+    private final Map<String, LongAdder> timings = new ConcurrentHashMap<>();
+    //峰值
+    private final Map<String, AtomicLong> peaks = new ConcurrentHashMap<>();
+    //最近一次进度：累计行数、耗时纳秒
+    private final Map<String, long[]> progress = new ConcurrentHashMap<>();
+    //进度回调次数
+    private final Map<String, LongAdder> progressCalls = new ConcurrentHashMap<>();
+
+    @Override
+    public void count(String name, long delta) {
+        counts.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    @Override
+    public void time(String name, long nanos) {
+        this.nanos.computeIfAbsent(name, k -> new LongAdder()).add(nanos);
+        timings.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void peak(String name, long value) {
+        peaks.computeIfAbsent(name, k -> new AtomicLong()).accumulateAndGet(value, Math::max);
+    }
+
+    @Override
+    public void progress(String name, long rows, long elapsedNanos) {
+        progress.merge(name, new long[]{rows, elapsedNanos}, (old, now) -> now[0] >= old[0] ? now : old);
+        progressCalls.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * 计数器的值
+     *
+     * @param name
+     *
+     * @return 没有记录时为0
+     */
+    public long getCount(String name) {
+        LongAdder adder = counts.get(name);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * 计时器累计耗时，毫秒
+     *
+     * @param name
+     *
+     * @return 没有记录时为0
+     */
+    public long getMillis(String name) {
+        LongAdder adder = nanos.get(name);
+        return adder != null ? adder.sum() / 1000000 : 0;
+    }
+
+    /**
+     * 计时器记录次数
+     *
+     * @param name
+     *
+     * @return
+     */
+    public long getTimings(String name) {
+        LongAdder adder = timings.get(name);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * 峰值
+     *
+     * @param name
+     *
+     * @return 没有记录时为0
+     */
+    public long getPeak(String name) {
+        AtomicLong peak = peaks.get(name);
+        return peak != null ? peak.get() : 0;
+    }
+
+    /**
+     * 最近一次进度的累计行数
+     *
+     * @param name
+     *
+     * @return 没有进度时为0
+     */
+    public long getProgressRows(String name) {
+        long[] p = progress.get(name);
+        return p != null ? p[0] : 0;
+    }
+
+    /**
+     * 进度回调次数
+     *
+     * @param name
+     *
+     * @return
+     */
+    public long getProgressCalls(String name) {
+        LongAdder adder = progressCalls.get(name);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * 按最近一次进度计算的每秒行数
+     *
+     * @param name
+     *
+     * @return 没有进度时为0
+     */
+    public double getRowsPerSecond(String name) {
+        long[] p = progress.get(name);
+        return p != null && p[1] > 0 ? p[0] * 1e9 / p[1] : 0;
+    }
+
+    /**
+     * 清空所有指标
+     */
+    public void reset() {
+        counts.clear();
+        nanos.clear();
+        timings.clear();
+        peaks.clear();
+        progress.clear();
+        progressCalls.clear();
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Object> values = new TreeMap<>();
+        counts.forEach((k, v) -> values.put(k, v.sum()));
+        nanos.forEach((k, v) -> values.put(k + ".ms", v.sum() / 1000000));
+        peaks.forEach((k, v) -> values.put(k + ".peak", v.get()));
+        progress.forEach((k, v) -> values.put(k + ".rps", String.format("%.0f", getRowsPerSecond(k))));
+        return "InMemoryExcelMetrics" + values;
+    }
+
+}
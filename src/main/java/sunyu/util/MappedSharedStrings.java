@@ -0,0 +1,253 @@
+package sunyu.util;
+
+import cn.hutool.core.io.FileUtil;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 共享字符串表存放在内存映射的临时文件中，堆内只保留一个小的LRU缓存
+ * <p>
+ * 解析sharedStrings.xml时把每个字符串的UTF-8字节顺序写入数据文件，起始偏移写入索引文件（每个8字节），
+ * 之后两个文件按1GB分段映射到内存，按索引定位读取；与ReadOnlySharedStringsTable一样忽略注音（rPh）
+ *
+ * @author 孙宇
+ */
+final class MappedSharedStrings implements SharedStrings, Closeable {
+    //每段映射的字节数
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final MappedByteBuffer[] data;
+    private final MappedByteBuffer[] index;
+    private final long dataSize;
+    private final int uniqueCount;
+    private final int count;
+    //最近读取的字符串
+    private final Map<Integer, String> cache;
+
+    /**
+     * @param in        sharedStrings.xml
+     * @param tmpDir    临时文件目录，为null时使用系统临时目录
+     * @param cacheSize LRU缓存的字符串数
+     */
+    MappedSharedStrings(InputStream in, File tmpDir, int cacheSize) throws IOException, SAXException {
+        dataFile = FileUtil.createTempFile("excel-sst-", ".data", tmpDir, true);
+        indexFile = FileUtil.createTempFile("excel-sst-", ".index", tmpDir, true);
+        try {
+            Parser parser = new Parser();
+            try (DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 64 * 1024));
+                 DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 64 * 1024))) {
+                parser.dataOut = dataOut;
+                parser.indexOut = indexOut;
+                XMLReader xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(parser);
+                xmlReader.parse(new InputSource(in));
+            } catch (ParserConfigurationException e) {
+                throw new SAXException(e);
+            }
+            dataSize = parser.offset;
+            uniqueCount = parser.unique;
+            count = parser.count > 0 ? parser.count : parser.unique;
+            data = map(dataFile);
+            index = map(indexFile);
+        } catch (IOException | SAXException | RuntimeException e) {
+            FileUtil.del(dataFile);
+            FileUtil.del(indexFile);
+            throw e;
+        }
+        cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    private static MappedByteBuffer[] map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+            return segments;
+        }
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        return new XSSFRichTextString(getString(idx));
+    }
+
+    /**
+     * 读取第idx个字符串，并行解析Sheet时会在多个线程中调用
+     *
+     * @param idx
+     * @return
+     */
+    String getString(int idx) {
+        if (idx < 0 || idx >= uniqueCount) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + uniqueCount);
+        }
+        synchronized (cache) {
+            String value = cache.get(idx);
+            if (value != null) {
+                return value;
+            }
+        }
+        long start = readLong(idx * 8L);
+        long end = idx + 1 < uniqueCount ? readLong((idx + 1) * 8L) : dataSize;
+        byte[] bytes = new byte[(int) (end - start)];
+        read(data, start, bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        synchronized (cache) {
+            cache.put(idx, value);
+        }
+        return value;
+    }
+
+    private long readLong(long position) {
+        byte[] bytes = new byte[8];
+        read(index, position, bytes);
+        long value = 0;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * 从分段映射中读取，跨段时分两次复制；用duplicate保证多线程读取时互不影响position
+     */
+    private static void read(MappedByteBuffer[] segments, long position, byte[] dst) {
+        int copied = 0;
+        while (copied < dst.length) {
+            long p = position + copied;
+            ByteBuffer segment = segments[(int) (p / SEGMENT_SIZE)].duplicate();
+            ((Buffer) segment).position((int) (p % SEGMENT_SIZE));//转为Buffer调用，兼容jdk8运行
+            int length = Math.min(dst.length - copied, segment.remaining());
+            segment.get(dst, copied, length);
+            copied += length;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * 删除临时文件；映射在缓冲区被回收前仍然有效，部分系统上文件要到那时才能删除，删除失败时退出JVM时再删
+     */
+    @Override
+    public void close() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        for (File file : new File[]{dataFile, indexFile}) {
+            if (!file.delete() && file.exists()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 解析sharedStrings.xml，每个si写出一个字符串
+     */
+    private static final class Parser extends DefaultHandler {
+        private final StringBuilder text = new StringBuilder();
+        private DataOutputStream dataOut;
+        private DataOutputStream indexOut;
+        private long offset;
+        private int unique;
+        private int count;
+        private boolean inText;
+        private boolean inPhonetic;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName.isEmpty() ? qName : localName;
+            switch (name) {
+                case "sst":
+                    String value = attributes.getValue("count");
+                    if (value != null) {
+                        count = Integer.parseInt(value);
+                    }
+                    break;
+                case "si":
+                    text.setLength(0);
+                    break;
+                case "t":
+                    inText = !inPhonetic;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            String name = localName.isEmpty() ? qName : localName;
+            switch (name) {
+                case "si":
+                    write();
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void write() throws SAXException {
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                indexOut.writeLong(offset);
+                dataOut.write(bytes);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            offset += bytes.length;
+            unique++;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package sunyu.util;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Enumeration;
+
+/**
+ * 通过内存映射读取xlsx的zip条目，供 {@link org.apache.poi.openxml4j.opc.OPCPackage#open(ZipEntrySource)} 使用
+ * <p>
+ * 文件按1GB分段只读映射，zip目录和条目数据直接从映射内存读取，不经过read系统调用和堆内缓冲区；
+ * 与POI默认的ZipSecureFile相比不做zip炸弹检查，只用于可信的文件
+ *
+ * @author 孙宇
+ */
+final class MappedZipEntrySource implements ZipEntrySource {
+    //每段映射的字节数
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final ZipFile zipFile;
+    private volatile boolean closed;
+
+    MappedZipEntrySource(File file) throws IOException {
+        this.zipFile = ZipFile.builder().setSeekableByteChannel(new MappedChannel(file)).get();
+    }
+
+    @Override
+    public Enumeration<? extends ZipArchiveEntry> getEntries() {
+        return zipFile.getEntries();
+    }
+
+    @Override
+    public ZipArchiveEntry getEntry(String path) {
+        ZipArchiveEntry entry = zipFile.getEntry(path);
+        if (entry != null) {
+            return entry;
+        }
+        //与POI一样兼容反斜杠和大小写不一致的条目名
+        String normalized = path.replace('\\', '/');
+        Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry e = entries.nextElement();
+            if (e.getName().replace('\\', '/').equalsIgnoreCase(normalized)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+        return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        zipFile.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 按分段映射读取的只读通道
+     */
+    private static final class MappedChannel implements SeekableByteChannel {
+        private final MappedByteBuffer[] segments;
+        private final long size;
+        private long position;
+        private boolean open = true;
+
+        private MappedChannel(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                size = channel.size();
+                segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = i * SEGMENT_SIZE;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+                }
+            }
+        }
+
+        /**
+         * 从当前位置读取，跨段时分多次复制；用duplicate避免修改映射缓冲区的position
+         */
+        @Override
+        public synchronized int read(ByteBuffer dst) {
+            if (position >= size) {
+                return -1;
+            }
+            int read = 0;
+            while (dst.hasRemaining() && position < size) {
+                ByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)].duplicate();
+                ((Buffer) segment).position((int) (position % SEGMENT_SIZE));//转为Buffer调用，兼容jdk8运行
+                int length = Math.min(dst.remaining(), segment.remaining());
+                ((Buffer) segment).limit(((Buffer) segment).position() + length);
+                dst.put(segment);
+                position += length;
+                read += length;
+            }
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() {
+            return position;
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) {
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * 映射在缓冲区被回收时释放
+         */
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+}
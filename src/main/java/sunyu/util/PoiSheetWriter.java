@@ -0,0 +1,98 @@
+package sunyu.util;
+
+import cn.hutool.poi.excel.BigExcelWriter;
+import cn.hutool.poi.excel.ExcelUtil;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于hutool BigExcelWriter(POI SXSSF)的Sheet写出器
+ * <p>
+ * 每个Sheet的第一行（表头）写在SXSSF底层的XSSF模板Sheet中，关闭时才与流式写出的数据行合并，数据行刷到磁盘后表头仍可改写
+ *
+ * @author 孙宇
+ */
+final class PoiSheetWriter implements SheetWriter {
+    private final BigExcelWriter bigWriter;
+    private final File destFile;
+    //当前Sheet的表头行，在XSSF模板Sheet中
+    private Row headerRow;
+
+    PoiSheetWriter(File destFile, String sheetName) {
+        this.destFile = destFile;
+        bigWriter = ExcelUtil.getBigWriter();
+        bigWriter.disableDefaultStyle();//禁用样式，导出速度快
+        bigWriter.setDestFile(destFile);
+        bigWriter.renameSheet(sheetName);//重命名Sheet
+    }
+
+    @Override
+    public void writeRow(Collection<?> row) {
+        if (headerRow == null) {//表头写入模板Sheet，SXSSF从第二行开始写数据
+            SXSSFWorkbook workbook = (SXSSFWorkbook) bigWriter.getWorkbook();
+            headerRow = workbook.getXSSFWorkbook().getSheetAt(workbook.getSheetIndex(bigWriter.getSheet())).createRow(0);
+            setHeaders(row);
+            bigWriter.passCurrentRow();
+            return;
+        }
+        if (row instanceof SparseRow) {//稀疏行只创建非null单元格
+            SparseRow sparse = (SparseRow) row;
+            int y = bigWriter.getCurrentRow();
+            bigWriter.getOrCreateRow(y);
+            for (int i = 0, n = sparse.cellCount(); i < n; i++) {
+                bigWriter.writeCellValue(sparse.columnAt(i), y, sparse.valueAt(i));
+            }
+            bigWriter.passCurrentRow();
+            return;
+        }
+        bigWriter.writeRow(row);
+    }
+
+    @Override
+    public void newSheet(String name) {
+        bigWriter.setSheet(name);
+        headerRow = null;
+    }
+
+    @Override
+    public int getSheetCount() {
+        return bigWriter.getSheetCount();
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return Collections.singletonList(destFile);
+    }
+
+    @Override
+    public boolean rewriteHeaders(Collection<String> headers) {
+        if (headerRow == null) {
+            return false;
+        }
+        setHeaders(headers);
+        return true;
+    }
+
+    private void setHeaders(Collection<?> headers) {
+        int i = 0;
+        for (Object header : headers) {
+            Cell cell = headerRow.getCell(i);
+            if (cell == null) {
+                cell = headerRow.createCell(i);
+            }
+            cell.setCellValue(header != null ? header.toString() : null);
+            i++;
+        }
+    }
+
+    @Override
+    public void close() {
+        bigWriter.close();
+    }
+}
@@ -0,0 +1,370 @@
+package sunyu.util;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.poi.excel.sax.CellDataType;
+import cn.hutool.poi.excel.sax.ExcelSaxUtil;
+import org.apache.poi.xssf.model.SharedStrings;
+import sunyu.util.pojo.ExcelRow;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 原始值模式的行，单元格保存为XML中的原始文本，调用类型化的getter时才转换
+ * <p>
+ * 同一个Sheet的所有行复用此对象，文本放在复用的char数组中，类型、样式、位置放在基本类型数组中，读取过程中不为单元格创建对象；
+ * 回调返回后会被下一行覆盖，需要保留的值请在回调中取出
+ *
+ * @author 孙宇
+ */
+public final class RawExcelRow {
+    static final byte BLANK = 0;
+    static final byte NUMBER = 1;
+    static final byte SHARED_STRING = 2;
+    static final byte STRING = 3;
+    static final byte BOOLEAN = 4;
+    static final byte ERROR = 5;
+    //t="n"显式标注的数值，类型化getter与NUMBER相同，getValue与普通模式一样返回文本（hutool不识别"n"）
+    static final byte NUMBER_N = 6;
+
+    //double能精确表示的10的幂
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final int sheetIndex;
+    private final SharedStrings sharedStrings;
+    private final String[] styleFormats;
+    private final boolean[] styleDates;
+    private ExcelRow.Headers headers;
+    private long rowIndex;
+    private int size;
+    private byte[] types = new byte[16];
+    private int[] styles = new int[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private char[] text = new char[256];
+    private int textLength;
+
+    RawExcelRow(int sheetIndex, SharedStrings sharedStrings, String[] styleFormats, boolean[] styleDates) {
+        this.sheetIndex = sheetIndex;
+        this.sharedStrings = sharedStrings;
+        this.styleFormats = styleFormats;
+        this.styleDates = styleDates;
+    }
+
+    public int getSheetIndex() {
+        return sheetIndex;
+    }
+
+    public long getRowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * 列数，最后一个有值的列索引+1
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 表头对应的列索引，不存在时返回-1
+     *
+     * @param header
+     * @return
+     */
+    public int indexOf(String header) {
+        return headers == null ? -1 : headers.indexOf(header);
+    }
+
+    public boolean isBlank(int col) {
+        return type(col) == BLANK;
+    }
+
+    /**
+     * 是否数值单元格（包括日期）
+     */
+    public boolean isNumber(int col) {
+        return type(col) == NUMBER;
+    }
+
+    /**
+     * 是否日期格式的数值单元格
+     */
+    public boolean isDate(int col) {
+        return type(col) == NUMBER && styles[col] >= 0 && styles[col] < styleDates.length && styleDates[styles[col]];
+    }
+
+    /**
+     * 数值，空白单元格返回NaN，布尔值返回1或0，文本按数字解析
+     *
+     * @param col
+     * @return
+     */
+    public double getDouble(int col) {
+        switch (type(col)) {
+            case BLANK:
+                return Double.NaN;
+            case NUMBER:
+                return parseDouble(starts[col], ends[col]);
+            case BOOLEAN:
+                return text[starts[col]] == '1' ? 1 : 0;
+            default:
+                return Double.parseDouble(getString(col));
+        }
+    }
+
+    /**
+     * 整数，空白单元格返回0，有小数部分时截断，文本按数字解析
+     *
+     * @param col
+     * @return
+     */
+    public long getLong(int col) {
+        switch (type(col)) {
+            case BLANK:
+                return 0;
+            case NUMBER:
+                long value = parseLong(starts[col], ends[col]);
+                return value != Long.MIN_VALUE ? value : (long) parseDouble(starts[col], ends[col]);
+            case BOOLEAN:
+                return text[starts[col]] == '1' ? 1 : 0;
+            default:
+                String s = getString(col);
+                try {
+                    return Long.parseLong(s);
+                } catch (NumberFormatException e) {
+                    return (long) Double.parseDouble(s);
+                }
+        }
+    }
+
+    public boolean getBoolean(int col) {
+        switch (type(col)) {
+            case BLANK:
+                return false;
+            case BOOLEAN:
+            case NUMBER:
+                return getDouble(col) != 0;
+            default:
+                return Boolean.parseBoolean(getString(col));
+        }
+    }
+
+    /**
+     * 日期，数值单元格按Excel日期序号转换，文本按日期解析，空白单元格返回null
+     *
+     * @param col
+     * @return
+     */
+    public Date getDate(int col) {
+        switch (type(col)) {
+            case BLANK:
+                return null;
+            case NUMBER:
+                return org.apache.poi.ss.usermodel.DateUtil.getJavaDate(getDouble(col));
+            default:
+                return DateUtil.parse(getString(col));
+        }
+    }
+
+    /**
+     * 原始文本，共享字符串解析为对应的字符串，不去除空格；数值为XML中的文本；空白单元格返回null
+     *
+     * @param col
+     * @return
+     */
+    public String getRawString(int col) {
+        switch (type(col)) {
+            case BLANK:
+                return null;
+            case SHARED_STRING:
+                return sharedStrings.getItemAt(parseInt(starts[col], ends[col])).getString();
+            default:
+                return new String(text, starts[col], ends[col] - starts[col]);
+        }
+    }
+
+    /**
+     * 去除左右空格的文本，空白单元格返回null
+     *
+     * @param col
+     * @return
+     */
+    public String getString(int col) {
+        String s = getRawString(col);
+        return s == null ? null : s.trim();
+    }
+
+    /**
+     * 与普通模式一样转换后的值，字符串去除左右空格，空白单元格返回null
+     *
+     * @param col
+     * @return
+     */
+    public Object getValue(int col) {
+        byte type = type(col);
+        if (type == BLANK) {
+            return null;
+        }
+        CellDataType cellDataType;
+        switch (types[col]) {
+            case NUMBER_N:
+                cellDataType = CellDataType.NULL;
+                break;
+            case NUMBER:
+                cellDataType = isDate(col) ? CellDataType.DATE : CellDataType.NUMBER;
+                break;
+            case SHARED_STRING:
+                cellDataType = CellDataType.SSTINDEX;
+                break;
+            case BOOLEAN:
+                cellDataType = CellDataType.BOOL;
+                break;
+            case ERROR:
+                cellDataType = CellDataType.ERROR;
+                break;
+            default:
+                cellDataType = CellDataType.INLINESTR;
+                break;
+        }
+        int style = styles[col];
+        String numFmt = style >= 0 && style < styleFormats.length ? styleFormats[style] : "";
+        Object value = ExcelSaxUtil.getDataValue(cellDataType, new String(text, starts[col], ends[col] - starts[col]).trim(), sharedStrings, numFmt);
+        return value instanceof String ? ((String) value).trim() : value;
+    }
+
+    private byte type(int col) {
+        if (col < 0 || col >= size) {
+            return BLANK;
+        }
+        return types[col] == NUMBER_N ? NUMBER : types[col];
+    }
+
+    /**
+     * 简单小数（不超过15位有效数字、没有指数）直接计算，结果与Double.parseDouble一致；其他情况交给Double.parseDouble
+     */
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = i < end && text[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                digits = Integer.MAX_VALUE;
+                break;
+            }
+        }
+        if (digits > 15 || i == start || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(text, start, end - start).trim());
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * 纯整数文本解析为long，不是纯整数或溢出时返回Long.MIN_VALUE
+     */
+    private long parseLong(int start, int end) {
+        int i = start;
+        boolean negative = i < end && text[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int parseInt(int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            }
+        }
+        return value;
+    }
+
+    //以下方法由SAX读取器调用
+
+    void setHeaders(ExcelRow.Headers headers) {
+        this.headers = headers;
+    }
+
+    void start(long rowIndex) {
+        Arrays.fill(types, 0, size, BLANK);
+        this.rowIndex = rowIndex;
+        this.size = 0;
+        this.textLength = 0;
+    }
+
+    /**
+     * 开始一个单元格
+     *
+     * @param col   列索引
+     * @param type  单元格类型
+     * @param style 样式索引，没有时为-1
+     */
+    void startCell(int col, byte type, int style) {
+        if (col >= types.length) {
+            int length = Math.max(types.length << 1, col + 1);
+            types = Arrays.copyOf(types, length);
+            styles = Arrays.copyOf(styles, length);
+            starts = Arrays.copyOf(starts, length);
+            ends = Arrays.copyOf(ends, length);
+        }
+        if (col >= size) {
+            Arrays.fill(types, size, col, BLANK);
+            size = col + 1;
+        }
+        types[col] = type;
+        styles[col] = style;
+        starts[col] = textLength;
+        ends[col] = textLength;
+    }
+
+    void append(int col, char[] ch, int start, int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length << 1, textLength + length));
+        }
+        System.arraycopy(ch, start, text, textLength, length);
+        textLength += length;
+        ends[col] = textLength;
+    }
+
+    /**
+     * 结束单元格，没有值的单元格视为空白
+     */
+    void endCell(int col) {
+        if (starts[col] == ends[col]) {
+            types[col] = BLANK;
+        }
+    }
+
+}
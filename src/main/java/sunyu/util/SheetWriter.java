@@ -0,0 +1,69 @@
+package sunyu.util;
+
+import cn.hutool.core.io.file.FileNameUtil;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sheet写出器，屏蔽不同的写出实现
+ *
+ * @author 孙宇
+ */
+interface SheetWriter extends AutoCloseable {
+
+    /**
+     * 在当前Sheet写出一行
+     *
+     * @param row
+     */
+    void writeRow(Collection<?> row);
+
+    /**
+     * 新建Sheet，之后的行写入新Sheet
+     *
+     * @param name
+     */
+    void newSheet(String name);
+
+    /**
+     * 已创建的Sheet数量
+     */
+    int getSheetCount();
+
+    /**
+     * 改写当前Sheet的表头行
+     *
+     * @param headers
+     * @return 表头行已经写出无法改写时返回false
+     */
+    boolean rewriteHeaders(Collection<String> headers);
+
+    /**
+     * 已写出的文件
+     */
+    List<File> getFiles();
+
+    /**
+     * 完成写出并关闭
+     */
+    @Override
+    void close();
+
+    /**
+     * 按目标文件命名的第no个文件，第一个是目标文件本身，之后依次为 name_2.ext、name_3.ext ...
+     *
+     * @param destFile
+     * @param no       从1开始
+     * @return
+     */
+    static File partFile(File destFile, int no) {
+        if (no == 1) {
+            return destFile;
+        }
+        String ext = FileNameUtil.extName(destFile);
+        String name = FileNameUtil.mainName(destFile) + "_" + no + (ext.isEmpty() ? "" : "." + ext);
+        return new File(destFile.getAbsoluteFile().getParentFile(), name);
+    }
+}
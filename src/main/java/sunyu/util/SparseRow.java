@@ -0,0 +1,130 @@
+package sunyu.util;
+
+import java.util.*;
+
+/**
+ * 稀疏行，只保存非null单元格的 (列序号, 值)，按列序号升序排列
+ * <p>
+ * 对外表现为一个只读List，size为最大列序号+1，没有值的列返回null；
+ * 写出时可以用 {@link #cellCount()}、{@link #columnAt(int)}、{@link #valueAt(int)} 只遍历非null单元格
+ *
+ * @author 孙宇
+ */
+final class SparseRow extends AbstractList<Object> implements RandomAccess {
+    private int[] columns;
+    private Object[] values;
+    private int count;
+
+    SparseRow() {
+        this(8);
+    }
+
+    SparseRow(int capacity) {
+        columns = new int[Math.max(capacity, 1)];
+        values = new Object[columns.length];
+    }
+
+    /**
+     * 设置单元格的值，null值忽略；列序号一般按升序到来，乱序时插入到正确位置
+     *
+     * @param column 列序号
+     * @param value  值
+     */
+    void put(int column, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (count == 0 || columns[count - 1] < column) {
+            ensure();
+            columns[count] = column;
+            values[count++] = value;
+            return;
+        }
+        int i = Arrays.binarySearch(columns, 0, count, column);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        i = -i - 1;
+        ensure();
+        System.arraycopy(columns, i, columns, i + 1, count - i);
+        System.arraycopy(values, i, values, i + 1, count - i);
+        columns[i] = column;
+        values[i] = value;
+        count++;
+    }
+
+    /**
+     * 非null单元格数
+     */
+    int cellCount() {
+        return count;
+    }
+
+    /**
+     * 第i个非null单元格的列序号
+     */
+    int columnAt(int i) {
+        return columns[i];
+    }
+
+    /**
+     * 第i个非null单元格的值
+     */
+    Object valueAt(int i) {
+        return values[i];
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int i = Arrays.binarySearch(columns, 0, count, index);
+        return i >= 0 ? values[i] : null;
+    }
+
+    @Override
+    public int size() {
+        return count == 0 ? 0 : columns[count - 1] + 1;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        //顺序遍历时按游标前进，不做二分查找
+        return new Iterator<Object>() {
+            private int column;
+            private int cursor;
+
+            @Override
+            public boolean hasNext() {
+                return column < size();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (columns[cursor] == column++) {
+                    return values[cursor++];
+                }
+                return null;
+            }
+        };
+    }
+
+    private void ensure() {
+        if (count == columns.length) {
+            columns = Arrays.copyOf(columns, count << 1);
+            values = Arrays.copyOf(values, count << 1);
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package sunyu.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 溢写文件压缩编解码器
+ * <p>
+ * 只包装文件头之后的行流，文件头始终不压缩；可以实现此接口接入其他压缩算法
+ *
+ * @author 孙宇
+ */
+public interface SpillCodec {
+    /**
+     * 不压缩
+     */
+    SpillCodec NONE = new SpillCodec() {
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream wrap(InputStream in) {
+            return in;
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    };
+
+    /**
+     * JDK Deflater，最快压缩级别
+     */
+    SpillCodec DEFLATE = deflate(Deflater.BEST_SPEED);
+
+    /**
+     * JDK Deflater
+     *
+     * @param level 压缩级别 0-9
+     * @return
+     */
+    static SpillCodec deflate(int level) {
+        return new Deflate(level);
+    }
+
+    /**
+     * 编解码器名称，用于日志
+     */
+    String name();
+
+    /**
+     * 包装写出流，关闭返回的流时必须关闭被包装的流
+     *
+     * @param out
+     * @return
+     */
+    OutputStream wrap(OutputStream out) throws IOException;
+
+    /**
+     * 包装读取流，关闭返回的流时必须关闭被包装的流
+     *
+     * @param in
+     * @return
+     */
+    InputStream wrap(InputStream in) throws IOException;
+
+    /**
+     * JDK Deflater编解码器，不写zlib头，关闭流时立即释放Deflater/Inflater的本地内存
+     */
+    final class Deflate implements SpillCodec {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private final int level;
+
+        Deflate(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public String name() {
+            return "deflate-" + level;
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            Deflater deflater = new Deflater(level, true);
+            return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream wrap(InputStream in) {
+            Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+
+}
@@ -0,0 +1,390 @@
+package sunyu.util;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static sunyu.util.SpillRowWriter.*;
+
+/**
+ * 行数据溢写文件读取器，逐行读取 {@link SpillRowWriter} 写出的文件
+ *
+ * @author 孙宇
+ */
+final class SpillRowReader implements Closeable {
+    private final InputStream in;
+    private final List<String> dict = new ArrayList<>();
+    //当前行，复用
+    private final List<Object> row = new ArrayList<>();
+    //当前稀疏行，复用
+    private final SparseRow sparseRow = new SparseRow();
+    //当前行字节缓冲区，复用
+    private byte[] buf = new byte[1024];
+    private int pos;
+    //字符串解码缓冲区，复用
+    private char[] chars = new char[256];
+    private boolean eof;
+    //解压时，编解码器流和其下层文件流的计时
+    private TimedInputStream codecIn;
+    private TimedInputStream fileIn;
+
+    SpillRowReader(File file) throws IOException {
+        this(file, SpillCodec.NONE);
+    }
+
+    SpillRowReader(File file, SpillCodec codec) throws IOException {
+        this(new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024), codec);
+    }
+
+    SpillRowReader(InputStream in) throws IOException {
+        this(in, SpillCodec.NONE);
+    }
+
+    /**
+     * @param in
+     * @param codec 与写出时相同的编解码器
+     */
+    SpillRowReader(InputStream in, SpillCodec codec) throws IOException {
+        readHead(in);
+        if (codec == SpillCodec.NONE) {
+            this.in = in;
+        } else {
+            fileIn = new TimedInputStream(in);
+            codecIn = new TimedInputStream(codec.wrap(fileIn));
+            this.in = new BufferedInputStream(codecIn, 64 * 1024);
+        }
+    }
+
+    private static void readHead(InputStream in) throws IOException {
+        byte[] head = new byte[MAGIC.length + 1];
+        int n = 0;
+        while (n < head.length) {
+            int r = in.read(head, n, head.length - n);
+            if (r < 0) {
+                throw new EOFException();
+            }
+            n += r;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) {
+                throw new IOException("不是溢写文件");
+            }
+        }
+        if (head[MAGIC.length] != VERSION) {
+            throw new IOException("不支持的溢写文件版本 " + head[MAGIC.length]);
+        }
+    }
+
+    /**
+     * 读取下一行，返回的List会被下一次调用复用，需要保留时请自行拷贝
+     * <p>
+     * 以稀疏行写出的行返回 {@link SparseRow}，不展开成稠密List
+     *
+     * @return 没有更多数据时返回null
+     */
+    List<Object> nextRow() throws IOException {
+        if (!readPayload()) {
+            return null;
+        }
+        int head = readVarint();
+        if ((head & 1) != 0) {
+            sparseRow.clear();
+            int count = readVarint();
+            int column = -1;
+            for (int i = 0; i < count; i++) {
+                column += readVarint();
+                sparseRow.put(column, readCell());
+            }
+            return sparseRow;
+        }
+        row.clear();
+        int size = head >>> 1;
+        for (int i = 0; i < size; i++) {
+            row.add(readCell());
+        }
+        return row;
+    }
+
+    /**
+     * 跳过下一行，只解析字典定义，不构建单元格值
+     *
+     * @return 没有更多数据时返回false
+     */
+    boolean skipRow() throws IOException {
+        if (!readPayload()) {
+            return false;
+        }
+        int head = readVarint();
+        int size = (head & 1) != 0 ? readVarint() : head >>> 1;
+        for (int i = 0; i < size; i++) {
+            if ((head & 1) != 0) {
+                readVarint();//列序号差
+            }
+            byte tag = buf[pos];
+            if (tag == T_STR_DEF) {
+                readCell();
+            } else {
+                skipCell();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解压耗时，纳秒，不包括读下层流的时间
+     */
+    long getCodecNanos() {
+        return codecIn == null ? 0 : codecIn.nanos - fileIn.nanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readPayload() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int len = readStreamVarint();
+        if (len <= 0) {
+            eof = true;
+            return false;
+        }
+        if (buf.length < len) {
+            buf = new byte[Math.max(buf.length << 1, len)];
+        }
+        readFully(buf, len);
+        pos = 0;
+        return true;
+    }
+
+    private Object readCell() throws IOException {
+        byte tag = buf[pos++];
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_STR_DEF: {
+                String s = readUtf8();
+                dict.add(s);
+                return s;
+            }
+            case T_STR_REF:
+                return dict.get(readVarint());
+            case T_STR:
+                return readUtf8();
+            case T_INT:
+                return (int) unzigzag(readVarlong());
+            case T_LONG:
+                return unzigzag(readVarlong());
+            case T_DOUBLE:
+                return Double.longBitsToDouble(readFixed64());
+            case T_FLOAT:
+                return Float.intBitsToFloat((int) readFixed32());
+            case T_TRUE:
+                return Boolean.TRUE;
+            case T_FALSE:
+                return Boolean.FALSE;
+            case T_SHORT:
+                return (short) unzigzag(readVarlong());
+            case T_BYTE:
+                return (byte) unzigzag(readVarlong());
+            case T_BIG_DECIMAL:
+                return new BigDecimal(readUtf8());
+            case T_BIG_INTEGER:
+                return new BigInteger(readUtf8());
+            case T_DATE:
+                return new Date(unzigzag(readVarlong()));
+            case T_LOCAL_DATE_TIME: {
+                LocalDate d = LocalDate.ofEpochDay(unzigzag(readVarlong()));
+                return LocalDateTime.of(d, LocalTime.ofNanoOfDay(readVarlong()));
+            }
+            case T_LOCAL_DATE:
+                return LocalDate.ofEpochDay(unzigzag(readVarlong()));
+            case T_OBJECT: {
+                int len = readVarint();
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buf, pos, len))) {
+                    pos += len;
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            default:
+                throw new IOException("未知的单元格类型 " + tag);
+        }
+    }
+
+    private void skipCell() throws IOException {
+        byte tag = buf[pos++];
+        switch (tag) {
+            case T_NULL:
+            case T_TRUE:
+            case T_FALSE:
+                break;
+            case T_STR_REF:
+            case T_INT:
+            case T_LONG:
+            case T_SHORT:
+            case T_BYTE:
+            case T_DATE:
+            case T_LOCAL_DATE:
+                readVarlong();
+                break;
+            case T_LOCAL_DATE_TIME:
+                readVarlong();
+                readVarlong();
+                break;
+            case T_DOUBLE:
+                pos += 8;
+                break;
+            case T_FLOAT:
+                pos += 4;
+                break;
+            case T_STR:
+            case T_BIG_DECIMAL:
+            case T_BIG_INTEGER:
+            case T_OBJECT:
+                int len = readVarint();
+                pos += len;
+                break;
+            default:
+                throw new IOException("未知的单元格类型 " + tag);
+        }
+    }
+
+    private String readUtf8() {
+        int len = readVarint();
+        if (chars.length < len) {
+            chars = new char[Math.max(chars.length << 1, len)];
+        }
+        byte[] b = buf;
+        int p = pos;
+        int end = p + len;
+        int n = 0;
+        while (p < end) {
+            int c = b[p++] & 0xFF;
+            if (c < 0x80) {
+                chars[n++] = (char) c;
+            } else if (c < 0xE0) {
+                chars[n++] = (char) (((c & 0x1F) << 6) | (b[p++] & 0x3F));
+            } else if (c < 0xF0) {
+                chars[n++] = (char) (((c & 0x0F) << 12) | ((b[p++] & 0x3F) << 6) | (b[p++] & 0x3F));
+            } else {
+                int cp = ((c & 0x07) << 18) | ((b[p++] & 0x3F) << 12) | ((b[p++] & 0x3F) << 6) | (b[p++] & 0x3F);
+                chars[n++] = Character.highSurrogate(cp);
+                chars[n++] = Character.lowSurrogate(cp);
+            }
+        }
+        pos = end;
+        return new String(chars, 0, n);
+    }
+
+    private int readVarint() {
+        return (int) readVarlong();
+    }
+
+    private long readVarlong() {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+
+    private long readFixed64() {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v |= (buf[pos++] & 0xFFL) << (i * 8);
+        }
+        return v;
+    }
+
+    private long readFixed32() {
+        long v = 0;
+        for (int i = 0; i < 4; i++) {
+            v |= (buf[pos++] & 0xFFL) << (i * 8);
+        }
+        return v;
+    }
+
+    private int readStreamVarint() throws IOException {
+        int v = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException();
+            }
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int r = in.read(b, n, len - n);
+            if (r < 0) {
+                throw new EOFException();
+            }
+            n += r;
+        }
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * 统计读取耗时的流
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+        private long nanos;
+
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            nanos += System.nanoTime() - start;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = in.read(b, off, len);
+            nanos += System.nanoTime() - start;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            long skipped = in.skip(n);
+            nanos += System.nanoTime() - start;
+            return skipped;
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+package sunyu.util;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 行数据溢写文件写出器
+ * <p>
+ * 文件格式：魔数(4字节) + 版本(1字节) + 行流；每一行为 varint(行字节长度) + varint(单元格数 &lt;&lt; 1 | 稀疏标记) + 单元格，行流以长度0结束。
+ * 稠密行依次写出每个单元格；稀疏行（{@link SparseRow}）先写 varint(非null单元格数)，再写每个非null单元格的 varint(与上一列序号的差) + 单元格。
+ * 单元格为 类型标记(1字节) + 值，整数使用zigzag varint，短字符串使用文件内字典（首次出现时定义，之后按编号引用）。
+ * 使用 {@link SpillCodec} 压缩时只压缩行流，读取时需要使用同一个编解码器。
+ *
+ * @author 孙宇
+ */
+final class SpillRowWriter implements Closeable {
+    static final byte[] MAGIC = {'X', 'S', 'P', 'L'};
+    static final int VERSION = 2;
+
+    static final byte T_NULL = 0;
+    static final byte T_STR_DEF = 1;
+    static final byte T_STR_REF = 2;
+    static final byte T_STR = 3;
+    static final byte T_INT = 4;
+    static final byte T_LONG = 5;
+    static final byte T_DOUBLE = 6;
+    static final byte T_FLOAT = 7;
+    static final byte T_TRUE = 8;
+    static final byte T_FALSE = 9;
+    static final byte T_SHORT = 10;
+    static final byte T_BYTE = 11;
+    static final byte T_BIG_DECIMAL = 12;
+    static final byte T_BIG_INTEGER = 13;
+    static final byte T_DATE = 14;
+    static final byte T_LOCAL_DATE_TIME = 15;
+    static final byte T_LOCAL_DATE = 16;
+    static final byte T_OBJECT = 17;
+
+    //进入字典的字符串最大长度，长字符串基本不会重复，直接写字面量
+    static final int DICT_MAX_STR_LENGTH = 64;
+    //每个文件字典最大条目数
+    static final int DICT_MAX_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final Map<String, Integer> dict = new HashMap<>();
+    //当前行编码缓冲区，复用
+    private byte[] buf = new byte[1024];
+    private int pos;
+    //行长度前缀缓冲区
+    private final byte[] lenBuf = new byte[5];
+    private long rowCount;
+    private long bytesWritten;
+    private boolean closed;
+    //压缩时，编解码器流和其下层文件流的计时
+    private TimedOutputStream codecOut;
+    private TimedOutputStream fileOut;
+
+    SpillRowWriter(File file) throws IOException {
+        this(file, SpillCodec.NONE);
+    }
+
+    SpillRowWriter(File file, SpillCodec codec) throws IOException {
+        this(new BufferedOutputStream(Files.newOutputStream(file.toPath()), 64 * 1024), codec);
+    }
+
+    SpillRowWriter(OutputStream out) throws IOException {
+        this(out, SpillCodec.NONE);
+    }
+
+    SpillRowWriter(OutputStream out, SpillCodec codec) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        bytesWritten = MAGIC.length + 1;
+        if (codec == SpillCodec.NONE) {
+            this.out = out;
+        } else {
+            fileOut = new TimedOutputStream(out);
+            codecOut = new TimedOutputStream(codec.wrap(fileOut));
+            this.out = new BufferedOutputStream(codecOut, 64 * 1024);//攒够一批再压缩，避免逐行调用编解码器
+        }
+    }
+
+    /**
+     * 写出一行数据
+     *
+     * @param row
+     */
+    void writeRow(List<?> row) throws IOException {
+        pos = 0;
+        int size = row.size();
+        if (row instanceof SparseRow) {
+            SparseRow sparse = (SparseRow) row;
+            writeVarint(size << 1 | 1);
+            int count = sparse.cellCount();
+            writeVarint(count);
+            int last = -1;
+            for (int i = 0; i < count; i++) {
+                int column = sparse.columnAt(i);
+                writeVarint(column - last);
+                last = column;
+                writeCell(sparse.valueAt(i));
+            }
+        } else {
+            writeVarint(size << 1);
+            for (int i = 0; i < size; i++) {
+                writeCell(row.get(i));
+            }
+        }
+        int lenSize = encodeVarint(lenBuf, pos);
+        out.write(lenBuf, 0, lenSize);
+        out.write(buf, 0, pos);
+        bytesWritten += lenSize + pos;
+        rowCount++;
+    }
+
+    /**
+     * 写出的行数
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 写出的字节数，压缩前
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * 实际写入下层流的字节数，不压缩时与 {@link #getBytesWritten()} 相同，压缩时在 {@link #close()} 之后才准确
+     */
+    long getStoredBytes() {
+        return fileOut == null ? bytesWritten : MAGIC.length + 1 + fileOut.bytes;
+    }
+
+    /**
+     * 压缩耗时，纳秒，不包括写下层流的时间
+     */
+    long getCodecNanos() {
+        return codecOut == null ? 0 : codecOut.nanos - fileOut.nanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.write(0);//行流结束标记
+            bytesWritten++;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeCell(Object v) throws IOException {
+        if (v == null) {
+            writeByte(T_NULL);
+        } else if (v instanceof String) {
+            writeString((String) v);
+        } else if (v instanceof Integer) {
+            writeByte(T_INT);
+            writeVarlong(zigzag((Integer) v));
+        } else if (v instanceof Long) {
+            writeByte(T_LONG);
+            writeVarlong(zigzag((Long) v));
+        } else if (v instanceof Double) {
+            writeByte(T_DOUBLE);
+            writeFixed64(Double.doubleToRawLongBits((Double) v));
+        } else if (v instanceof Boolean) {
+            writeByte((Boolean) v ? T_TRUE : T_FALSE);
+        } else if (v instanceof Date) {
+            writeByte(T_DATE);
+            writeVarlong(zigzag(((Date) v).getTime()));
+        } else if (v instanceof BigDecimal) {
+            writeByte(T_BIG_DECIMAL);
+            writeUtf8(v.toString());
+        } else if (v instanceof Float) {
+            writeByte(T_FLOAT);
+            writeFixed32(Float.floatToRawIntBits((Float) v));
+        } else if (v instanceof Short) {
+            writeByte(T_SHORT);
+            writeVarlong(zigzag((Short) v));
+        } else if (v instanceof Byte) {
+            writeByte(T_BYTE);
+            writeVarlong(zigzag((Byte) v));
+        } else if (v instanceof BigInteger) {
+            writeByte(T_BIG_INTEGER);
+            writeUtf8(v.toString());
+        } else if (v instanceof LocalDateTime) {
+            LocalDateTime t = (LocalDateTime) v;
+            writeByte(T_LOCAL_DATE_TIME);
+            writeVarlong(zigzag(t.toLocalDate().toEpochDay()));
+            writeVarlong(t.toLocalTime().toNanoOfDay());
+        } else if (v instanceof LocalDate) {
+            writeByte(T_LOCAL_DATE);
+            writeVarlong(zigzag(((LocalDate) v).toEpochDay()));
+        } else if (v instanceof CharSequence || v instanceof Character) {
+            writeString(v.toString());
+        } else if (v instanceof Serializable) {
+            //兜底：其他类型仍使用java序列化，保证写出excel时类型不变
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(v);
+            }
+            writeByte(T_OBJECT);
+            writeVarint(bos.size());
+            writeBytes(bos.toByteArray(), 0, bos.size());
+        } else {
+            writeString(v.toString());
+        }
+    }
+
+    private void writeString(String s) {
+        if (s.length() <= DICT_MAX_STR_LENGTH) {
+            Integer id = dict.get(s);
+            if (id != null) {
+                writeByte(T_STR_REF);
+                writeVarint(id);
+                return;
+            }
+            if (dict.size() < DICT_MAX_SIZE) {
+                dict.put(s, dict.size());
+                writeByte(T_STR_DEF);
+                writeUtf8(s);
+                return;
+            }
+        }
+        writeByte(T_STR);
+        writeUtf8(s);
+    }
+
+    /**
+     * 写出 varint(字节长度) + UTF-8字节，直接编码到行缓冲区，不产生中间byte[]
+     */
+    private void writeUtf8(String s) {
+        int len = s.length();
+        int utfLen = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                utfLen++;
+            } else if (c < 0x800) {
+                utfLen += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                utfLen += 4;
+                i++;
+            } else {
+                utfLen += 3;
+            }
+        }
+        writeVarint(utfLen);
+        ensure(utfLen);
+        byte[] b = buf;
+        int p = pos;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                //孤立代理项按3字节编码，与 String.getBytes 的替换行为不同，但可以原样还原
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        pos = p;
+    }
+
+    private void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    private void writeVarint(int v) {
+        ensure(5);
+        pos += encodeVarint(buf, pos, v);
+    }
+
+    private void writeVarlong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    private void writeFixed64(long v) {
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buf[pos++] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    private void writeFixed32(int v) {
+        ensure(4);
+        for (int i = 0; i < 4; i++) {
+            buf[pos++] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            byte[] nb = new byte[Math.max(buf.length << 1, pos + n)];
+            System.arraycopy(buf, 0, nb, 0, pos);
+            buf = nb;
+        }
+    }
+
+    private static int encodeVarint(byte[] b, int v) {
+        return encodeVarint(b, 0, v);
+    }
+
+    private static int encodeVarint(byte[] b, int off, int v) {
+        int p = off;
+        while ((v & ~0x7F) != 0) {
+            b[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[p++] = (byte) v;
+        return p - off;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    /**
+     * 统计写出字节数和耗时的流
+     */
+    private static final class TimedOutputStream extends FilterOutputStream {
+        private long bytes;
+        private long nanos;
+
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            out.close();
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+}
@@ -0,0 +1,899 @@
+package sunyu.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.poi.excel.cell.FormulaCellValue;
+import cn.hutool.poi.excel.sax.CellDataType;
+import cn.hutool.poi.excel.sax.ExcelSaxUtil;
+import cn.hutool.poi.excel.sax.handler.RowHandler;
+import cn.hutool.poi.exceptions.POIException;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * xlsx SAX读取器，行为与hutool Excel07SaxReader一致（空白单元格填充""、按第一行补齐列数、单元格内容去除左右空格），另外：
+ * <ul>
+ * <li>每个样式的数字格式只解析一次，不再为每个单元格创建XSSFCellStyle</li>
+ * <li>可以选择列，未选择的列不收集文本、不转换值，对应位置为null</li>
+ * <li>rid按Sheet在工作簿中的顺序，-1表示全部Sheet</li>
+ * <li>读取全部Sheet时可以多个Sheet并行解析，共享同一个共享字符串表和样式缓存，每个Sheet只在一个线程中解析</li>
+ * <li>可以按Sheet名称过滤，按每个Sheet的数据行范围读取：范围之前的行不收集文本、不回调，超出范围后立即结束该Sheet的解析</li>
+ * <li>原始值模式下数据行不转换值，单元格原始文本放入每个Sheet复用的 {@link RawExcelRow}，第一行仍按普通方式回调</li>
+ * <li>可以从输入流边读取边解析，不先保存成文件；文件可以通过内存映射读取zip条目</li>
+ * </ul>
+ *
+ * @author 孙宇
+ */
+final class XlsxSaxReader {
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private final File file;
+    //输入流来源，与file二选一
+    private final InputStream in;
+    private final RowHandler rowHandler;
+    //正在解析的Sheet，用于设置选中的列
+    private final Map<Integer, SheetHandler> handlers = new ConcurrentHashMap<>();
+    //按样式索引缓存的数字格式和是否日期格式，打开文件时一次解析完，之后只读
+    private String[] styleFormats = new String[0];
+    private boolean[] styleDates = new boolean[0];
+    //每个Sheet解析完成后回调，参数是sheetIndex
+    private IntConsumer sheetEnd;
+    //停止解析，所有Sheet在下一行结束时退出
+    private volatile boolean stopped;
+    //大于0时共享字符串表放在内存映射的临时文件中，值是LRU缓存的字符串数
+    private int mappedCacheSize;
+    private File tmpDir;
+    //每个Sheet第一行之后跳过的数据行数和最多读取的数据行数
+    private long offset;
+    private long limit = Long.MAX_VALUE;
+    //只读取这些名称的Sheet，为空表示全部
+    private final Set<String> sheetNames = new HashSet<>();
+    //原始值模式的数据行回调，为null表示普通模式
+    private Consumer<RawExcelRow> rawHandler;
+
+    //文件是否通过内存映射读取zip条目
+    private boolean mappedFile;
+
+    XlsxSaxReader(File file, RowHandler rowHandler) {
+        this.file = file;
+        this.in = null;
+        this.rowHandler = rowHandler;
+    }
+
+    /**
+     * 从输入流读取，只能读取一次，读取完成后关闭输入流
+     *
+     * @param in
+     * @param rowHandler
+     */
+    XlsxSaxReader(InputStream in, RowHandler rowHandler) {
+        this.file = null;
+        this.in = in;
+        this.rowHandler = rowHandler;
+    }
+
+    /**
+     * 文件通过内存映射读取zip条目，见 {@link MappedZipEntrySource}
+     *
+     * @param mappedFile
+     */
+    void mapFile(boolean mappedFile) {
+        this.mappedFile = mappedFile;
+    }
+
+    /**
+     * 设置Sheet后续行只读取的列，在该Sheet的行回调中调用，每个Sheet开始时为全部列
+     *
+     * @param sheetIndex
+     * @param columns    列索引，为null表示全部列
+     */
+    void select(int sheetIndex, BitSet columns) {
+        SheetHandler handler = handlers.get(sheetIndex);
+        if (handler != null) {
+            handler.selected = columns;
+        }
+    }
+
+    /**
+     * 设置每个Sheet解析完成后的回调，并行解析时在解析该Sheet的线程中执行
+     *
+     * @param sheetEnd 参数是sheetIndex
+     */
+    void onSheetEnd(IntConsumer sheetEnd) {
+        this.sheetEnd = sheetEnd;
+    }
+
+    /**
+     * 共享字符串表放在内存映射的临时文件中，堆内只保留LRU缓存，读取完成后删除临时文件
+     *
+     * @param tmpDir    临时文件目录，为null时使用系统临时目录
+     * @param cacheSize LRU缓存的字符串数
+     */
+    void mapSharedStrings(File tmpDir, int cacheSize) {
+        this.tmpDir = tmpDir;
+        this.mappedCacheSize = Math.max(cacheSize, 1);
+    }
+
+    /**
+     * 设置每个Sheet读取的数据行范围，第一行（表头）总是回调
+     *
+     * @param offset 第一行之后跳过的行数，这些行不收集文本、不转换值、不回调
+     * @param limit  最多回调的数据行数，达到后结束该Sheet的解析
+     */
+    void range(long offset, long limit) {
+        this.offset = Math.max(offset, 0);
+        this.limit = limit < 0 ? Long.MAX_VALUE : limit;
+    }
+
+    /**
+     * 设置只读取的Sheet名称，未读取的Sheet不解析，sheetIndex仍是Sheet在工作簿中的位置
+     *
+     * @param names
+     */
+    void sheetNames(Collection<String> names) {
+        sheetNames.clear();
+        sheetNames.addAll(names);
+    }
+
+    /**
+     * 原始值模式，第一行之后的行不转换值，交给此回调；每个Sheet复用同一个行对象
+     *
+     * @param rawHandler
+     */
+    void raw(Consumer<RawExcelRow> rawHandler) {
+        this.rawHandler = rawHandler;
+    }
+
+    /**
+     * 停止解析，可以在其他线程中调用
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * 读取
+     *
+     * @param rid Sheet序号，-1表示全部Sheet
+     */
+    void read(int rid) {
+        read(rid, 1);
+    }
+
+    /**
+     * 读取
+     *
+     * @param rid         Sheet序号，-1表示全部Sheet
+     * @param parallelism 读取全部Sheet时并行解析的Sheet数，行回调会在多个线程中执行，同一个Sheet的行在同一个线程中按顺序回调；输入流总是顺序解析
+     */
+    void read(int rid, int parallelism) {
+        if (in != null) {
+            readStream(rid);
+            return;
+        }
+        try (OPCPackage pkg = mappedFile ? OPCPackage.open(new MappedZipEntrySource(file)) : OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            loadStyles(reader.getStylesTable());
+            List<PackagePart> parts = new ArrayList<>();
+            XSSFReader.SheetIterator sheets = reader.getSheetIterator();
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                //不读取的Sheet位置留空，保持sheetIndex不变
+                parts.add(sheetNames.isEmpty() || sheetNames.contains(sheets.getSheetName()) ? sheets.getSheetPart() : null);
+            }
+            SharedStrings sharedStrings = openSharedStrings(pkg);
+            try {
+                if (rid >= 0) {
+                    if (rid < parts.size()) {
+                        parse(rid, parts.get(rid), sharedStrings);
+                    }
+                } else if (parallelism <= 1 || parts.size() <= 1) {
+                    for (int sheetIndex = 0; sheetIndex < parts.size(); sheetIndex++) {
+                        parse(sheetIndex, parts.get(sheetIndex), sharedStrings);
+                    }
+                } else {
+                    parseParallel(parts, sharedStrings, parallelism);
+                }
+            } finally {
+                if (sharedStrings instanceof MappedSharedStrings) {
+                    ((MappedSharedStrings) sharedStrings).close();
+                }
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } catch (OpenXML4JException | SAXException e) {
+            throw new POIException(e);
+        }
+    }
+
+    private SharedStrings openSharedStrings(OPCPackage pkg) throws IOException, SAXException {
+        if (mappedCacheSize > 0) {
+            List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+            if (!parts.isEmpty()) {
+                try (InputStream in = parts.get(0).getInputStream()) {
+                    return new MappedSharedStrings(in, tmpDir, mappedCacheSize);
+                }
+            }
+        }
+        return new ReadOnlySharedStringsTable(pkg, false);
+    }
+
+    /**
+     * 从输入流顺序读取zip条目，Sheet在共享字符串表、样式、工作簿之后出现时直接从流中解析，不保存
+     * <p>
+     * 依赖还没有读到（Excel保存的文件通常把共享字符串表放在Sheet之后）或者不是下一个要回调的Sheet时，
+     * 该Sheet先写入临时文件，依赖读完后按Sheet顺序解析并删除；需要的Sheet都解析完后不再读取剩余的流
+     *
+     * @param rid Sheet序号，-1表示全部Sheet
+     */
+    private void readStream(int rid) {
+        StreamParts parts = new StreamParts(rid);
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new BufferedInputStream(in, 64 * 1024))) {
+            ZipArchiveEntry entry;
+            while (!parts.done() && (entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    parts.accept(StrUtil.removePrefix(entry.getName().replace('\\', '/'), "/"), new KeepOpenInputStream(zip));
+                }
+            }
+            parts.finish();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new POIException(e);
+        } finally {
+            parts.close();
+        }
+    }
+
+    /**
+     * 解析输入流中的各个部分，记录Sheet顺序、依赖是否就绪和暂存的Sheet
+     */
+    private final class StreamParts {
+        private final int rid;
+        private String workbookPath = "xl/workbook.xml";
+        //工作簿中的Sheet名称和关系id，按Sheet顺序
+        private List<String> names;
+        private List<String> relationIds;
+        //工作簿关系：id到条目名，样式和共享字符串表的条目名
+        private Map<String, String> relations;
+        private String stylesPath;
+        private String sharedStringsPath;
+        //条目名到sheetIndex
+        private final Map<String, Integer> sheetPaths = new HashMap<>();
+        private boolean stylesLoaded;
+        private SharedStrings sharedStrings;
+        //依赖就绪前或未轮到时暂存的Sheet，按条目名
+        private final Map<String, File> spooled = new HashMap<>();
+        //下一个要解析的sheetIndex
+        private int next;
+
+        private StreamParts(int rid) {
+            this.rid = rid;
+            this.next = Math.max(rid, 0);
+        }
+
+        private void accept(String name, InputStream entry) throws IOException, SAXException, ParserConfigurationException {
+            if ("_rels/.rels".equals(name)) {
+                for (String[] relation : parseRelations(entry)) {
+                    if (relation[1].endsWith("/officeDocument")) {
+                        workbookPath = resolve("/", relation[2]);
+                    }
+                }
+            } else if (name.equals(workbookPath)) {
+                parseWorkbook(entry);
+            } else if (name.equals(relationsPath(workbookPath))) {
+                relations = new HashMap<>();
+                for (String[] relation : parseRelations(entry)) {
+                    String target = resolve("/" + workbookPath, relation[2]);
+                    relations.put(relation[0], target);
+                    if (relation[1].endsWith("/styles")) {
+                        stylesPath = target;
+                    } else if (relation[1].endsWith("/sharedStrings")) {
+                        sharedStringsPath = target;
+                    }
+                }
+            } else if (name.equals(stylesPath) || (stylesPath == null && "xl/styles.xml".equals(name))) {
+                loadStyles(new StylesTable(entry));
+                stylesLoaded = true;
+            } else if (name.equals(sharedStringsPath) || (sharedStringsPath == null && "xl/sharedStrings.xml".equals(name))) {
+                sharedStrings = mappedCacheSize > 0 ? new MappedSharedStrings(entry, tmpDir, mappedCacheSize) : new ReadOnlySharedStringsTable(entry, false);
+            } else if (mapped() ? sheetPaths.containsKey(name) : name.startsWith("xl/worksheets/") && name.endsWith(".xml")) {
+                Integer sheetIndex = sheetPaths.get(name);
+                if (sheetIndex != null && !wanted(sheetIndex)) {
+                    return;
+                }
+                if (sheetIndex != null && sheetIndex == next && ready()) {
+                    parse(sheetIndex, entry, sharedStrings);
+                    next++;
+                } else {
+                    File tmp = FileUtil.createTempFile("excel-sheet-", ".xml", tmpDir, true);
+                    spooled.put(name, tmp);
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024)) {
+                        IoUtil.copy(entry, out);
+                    }
+                }
+            } else {
+                return;
+            }
+            drain(false);
+        }
+
+        private void parseWorkbook(InputStream entry) throws IOException, SAXException, ParserConfigurationException {
+            names = new ArrayList<>();
+            relationIds = new ArrayList<>();
+            parseXml(entry, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("sheet".equals(localName.isEmpty() ? qName : localName)) {
+                        String id = attributes.getValue(REL_NS, "id");
+                        names.add(attributes.getValue("name"));
+                        relationIds.add(id != null ? id : attributes.getValue("r:id"));
+                    }
+                }
+            });
+        }
+
+        /**
+         * 工作簿和关系都读到后，建立条目名到sheetIndex的对应
+         */
+        private boolean mapped() {
+            if (names == null || relations == null) {
+                return false;
+            }
+            if (sheetPaths.isEmpty()) {
+                for (int i = 0; i < relationIds.size(); i++) {
+                    String path = relations.get(relationIds.get(i));
+                    if (path != null) {
+                        sheetPaths.put(path, i);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean ready() {
+            return mapped() && (stylesPath == null || stylesLoaded) && (sharedStringsPath == null || sharedStrings != null);
+        }
+
+        private boolean wanted(int sheetIndex) {
+            return (rid < 0 || sheetIndex == rid) && (sheetNames.isEmpty() || sheetNames.contains(names.get(sheetIndex)));
+        }
+
+        /**
+         * 需要的Sheet是否都已解析
+         */
+        private boolean done() {
+            return mapped() && next >= (rid >= 0 ? Math.min(rid + 1, names.size()) : names.size());
+        }
+
+        /**
+         * 按Sheet顺序解析已暂存的Sheet
+         *
+         * @param end 流已读完，缺少的Sheet视为不存在
+         */
+        private void drain(boolean end) throws IOException {
+            if (!end && !ready()) {
+                return;
+            }
+            while (!done()) {
+                if (!wanted(next)) {
+                    skip(next++);
+                    continue;
+                }
+                String path = relations.get(relationIds.get(next));
+                File tmp = path == null ? null : spooled.remove(path);
+                if (tmp != null) {
+                    try (InputStream sheet = new BufferedInputStream(new FileInputStream(tmp), 64 * 1024)) {
+                        parse(next, sheet, sharedStrings);
+                    } finally {
+                        FileUtil.del(tmp);
+                    }
+                } else if (end) {
+                    skip(next);
+                } else {
+                    return;
+                }
+                next++;
+            }
+        }
+
+        private void finish() throws IOException {
+            if (names == null || relations == null) {
+                throw new POIException("输入流中没有工作簿，不是有效的xlsx");
+            }
+            if (sharedStringsPath != null && sharedStrings == null) {
+                throw new POIException("输入流中没有共享字符串表 " + sharedStringsPath);
+            }
+            drain(true);
+        }
+
+        private void close() {
+            if (sharedStrings instanceof MappedSharedStrings) {
+                ((MappedSharedStrings) sharedStrings).close();
+            }
+            for (File tmp : spooled.values()) {
+                FileUtil.del(tmp);
+            }
+            spooled.clear();
+        }
+    }
+
+    /**
+     * 解析关系文件
+     *
+     * @return 每个关系为 {Id, Type, Target}，不包括外部链接
+     */
+    private static List<String[]> parseRelations(InputStream in) throws IOException, SAXException, ParserConfigurationException {
+        List<String[]> relations = new ArrayList<>();
+        parseXml(in, new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("Relationship".equals(localName.isEmpty() ? qName : localName) && !"External".equals(attributes.getValue("TargetMode"))) {
+                    relations.add(new String[]{attributes.getValue("Id"), StrUtil.nullToEmpty(attributes.getValue("Type")), attributes.getValue("Target")});
+                }
+            }
+        });
+        return relations;
+    }
+
+    private static void parseXml(InputStream in, DefaultHandler handler) throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = XMLHelper.newXMLReader();
+        xmlReader.setContentHandler(handler);
+        xmlReader.parse(new InputSource(in));
+    }
+
+    /**
+     * 关系目标转换为zip条目名
+     *
+     * @param base   引用方的条目名，以/开头
+     * @param target 相对或以/开头的绝对路径
+     */
+    private static String resolve(String base, String target) {
+        return StrUtil.removePrefix(URI.create(base).resolve(target).getPath(), "/");
+    }
+
+    /**
+     * 条目对应的关系文件，如xl/workbook.xml对应xl/_rels/workbook.xml.rels
+     */
+    private static String relationsPath(String path) {
+        int slash = path.lastIndexOf('/');
+        return path.substring(0, slash + 1) + "_rels/" + path.substring(slash + 1) + ".rels";
+    }
+
+    /**
+     * SAX解析结束时会关闭输入流，zip条目的流不能关闭，否则无法读取下一个条目
+     */
+    private static final class KeepOpenInputStream extends FilterInputStream {
+        private KeepOpenInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private void parseParallel(List<PackagePart> parts, SharedStrings sharedStrings, int parallelism) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, parts.size()),
+                ThreadFactoryBuilder.create().setNamePrefix("excel-sheet-read-").setDaemon(true).build());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < parts.size(); i++) {
+                int sheetIndex = i;
+                if (parts.get(sheetIndex) == null) {
+                    skip(sheetIndex);
+                    continue;
+                }
+                futures.add(executor.submit(() -> {
+                    try {
+                        parse(sheetIndex, parts.get(sheetIndex), sharedStrings);
+                    } catch (RuntimeException | Error e) {
+                        stopped = true;//一个Sheet失败时其他Sheet也停止
+                        throw e;
+                    }
+                }));
+            }
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    //保留最先失败的原因，其他Sheet因停止而抛出的异常忽略
+                    if (failure == null || failure instanceof Stopped) {
+                        failure = (RuntimeException) cause;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopped = true;
+                    throw new IllegalStateException("等待Sheet解析时被中断", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);//解析线程全部退出后再关闭文件
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void parse(int sheetIndex, PackagePart part, SharedStrings sharedStrings) {
+        if (part == null) {
+            skip(sheetIndex);
+            return;
+        }
+        try (InputStream in = part.getInputStream()) {
+            parse(sheetIndex, in, sharedStrings);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private void parse(int sheetIndex, InputStream in, SharedStrings sharedStrings) {
+        SheetHandler handler = new SheetHandler(sheetIndex, sharedStrings);
+        handlers.put(sheetIndex, handler);
+        try {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(in));
+        } catch (SheetDone e) {
+            //已读取到limit行，剩余部分不再解析
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new POIException(e);
+        } finally {
+            handlers.remove(sheetIndex);
+        }
+        if (sheetEnd != null) {
+            sheetEnd.accept(sheetIndex);
+        }
+    }
+
+    /**
+     * 不读取的Sheet也回调结束，使按Sheet顺序消费的一方可以继续
+     */
+    private void skip(int sheetIndex) {
+        if (sheetEnd != null) {
+            sheetEnd.accept(sheetIndex);
+        }
+    }
+
+    /**
+     * 解析所有样式的数字格式和是否日期格式
+     *
+     * @param styles
+     */
+    private void loadStyles(StylesTable styles) {
+        int count = styles == null ? 0 : styles.getNumCellStyles();
+        styleFormats = new String[count];
+        styleDates = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            String format = "";
+            XSSFCellStyle style = styles.getStyleAt(i);
+            if (style != null) {
+                short formatIndex = style.getDataFormat();
+                format = style.getDataFormatString();
+                if (format == null) {
+                    format = BuiltinFormats.getBuiltinFormat(formatIndex);
+                }
+                if (format == null) {
+                    format = "";
+                }
+                styleDates[i] = ExcelSaxUtil.isDateFormat(formatIndex, format);
+            }
+            styleFormats[i] = format;
+        }
+    }
+
+    /**
+     * 单元格t属性转换为原始值类型，日期（d）、内联字符串、公式字符串都按文本保存
+     */
+    private static byte rawType(String t) {
+        if (t == null) {
+            return RawExcelRow.NUMBER;
+        }
+        switch (t) {
+            case "n":
+                return RawExcelRow.NUMBER_N;
+            case "s":
+                return RawExcelRow.SHARED_STRING;
+            case "b":
+                return RawExcelRow.BOOLEAN;
+            case "e":
+                return RawExcelRow.ERROR;
+            default:
+                return RawExcelRow.STRING;
+        }
+    }
+
+    /**
+     * 列引用（如AB12）转换为列索引，从0开始
+     */
+    private static int columnOf(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    private final class SheetHandler extends DefaultHandler {
+        private static final int NONE = 0;
+        private static final int VALUE = 1;
+        private static final int FORMULA = 2;
+
+        private final int sheetIndex;
+        private final SharedStrings sharedStrings;
+        //当前Sheet选中的列，为null表示全部列，只在解析本Sheet的线程中读写
+        private BitSet selected;
+        private final StringBuilder content = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private boolean inSheetData;
+        private long rowIndex = -1;
+        //本Sheet已读取的行数
+        private long rowCount;
+        //第一行的最大列索引，之后的行补齐到此列
+        private int maxColumn = -1;
+        private List<Object> cells = new ArrayList<>();
+        //下一个单元格的列索引
+        private int nextColumn;
+        //当前单元格是否需要读取
+        private boolean take;
+        //当前行在offset之前，整行跳过
+        private boolean skipRow;
+        private CellDataType cellDataType;
+        private String numFmt;
+        private int text = NONE;
+        //原始值模式复用的行，当前行是否按原始值读取，当前单元格的列索引
+        private final RawExcelRow raw;
+        private boolean rawRow;
+        private int column;
+
+        private SheetHandler(int sheetIndex, SharedStrings sharedStrings) {
+            this.sheetIndex = sheetIndex;
+            this.sharedStrings = sharedStrings;
+            this.raw = rawHandler == null ? null : new RawExcelRow(sheetIndex, sharedStrings, styleFormats, styleDates);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName.isEmpty() ? qName : localName;
+            if (!inSheetData) {
+                inSheetData = "sheetData".equals(name);
+                return;
+            }
+            switch (name) {
+                case "c":
+                    startCell(attributes);
+                    break;
+                case "v":
+                case "t":
+                    text = VALUE;
+                    break;
+                case "f":
+                    text = FORMULA;
+                    break;
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = r == null ? rowIndex + 1 : Long.parseLong(r) - 1;
+                    nextColumn = 0;
+                    if (rowCount > 0) {//第一行之后是数据行
+                        long dataRow = rowCount - 1;
+                        if (dataRow - offset >= limit) {
+                            throw new SheetDone();
+                        }
+                        skipRow = dataRow < offset;
+                        rawRow = raw != null && !skipRow;
+                        if (rawRow) {
+                            raw.start(rowIndex);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void startCell(Attributes attributes) {
+            if (skipRow) {
+                take = false;
+                return;
+            }
+            String ref = attributes.getValue("r");
+            column = ref == null ? nextColumn : columnOf(ref);
+            if (rawRow) {
+                take = selected == null || selected.get(column);
+                if (take) {
+                    String s = attributes.getValue("s");
+                    raw.startCell(column, rawType(attributes.getValue("t")), s == null ? -1 : Integer.parseInt(s));
+                }
+                return;
+            }
+            fill(column);
+            take = selected == null || selected.get(column);
+            if (!take) {
+                return;
+            }
+            cellDataType = CellDataType.of(attributes.getValue("t"));
+            numFmt = "";
+            String s = attributes.getValue("s");
+            if (s != null) {
+                int styleIndex = Integer.parseInt(s);
+                if (styleIndex < styleFormats.length) {
+                    numFmt = styleFormats[styleIndex];
+                    if (cellDataType == CellDataType.NUMBER && styleDates[styleIndex]) {
+                        cellDataType = CellDataType.DATE;
+                    }
+                }
+            }
+            content.setLength(0);
+            formula.setLength(0);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = localName.isEmpty() ? qName : localName;
+            if (!inSheetData) {
+                return;
+            }
+            switch (name) {
+                case "c":
+                    endCell();
+                    break;
+                case "v":
+                case "t":
+                case "f":
+                    text = NONE;
+                    break;
+                case "row":
+                    endRow();
+                    break;
+                case "sheetData":
+                    inSheetData = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void endCell() {
+            if (skipRow) {
+                return;
+            }
+            if (rawRow) {
+                if (take) {
+                    raw.endCell(column);
+                }
+                nextColumn = column + 1;
+                take = false;
+                return;
+            }
+            if (take) {
+                Object value = ExcelSaxUtil.getDataValue(cellDataType, StrUtil.trim(content), sharedStrings, numFmt);
+                if (formula.length() > 0) {
+                    value = new FormulaCellValue(StrUtil.trim(formula), value);
+                }
+                cells.add(value);
+            } else {
+                cells.add(null);
+            }
+            nextColumn = cells.size();
+            take = false;
+        }
+
+        private void endRow() {
+            if (stopped) {
+                throw new Stopped();
+            }
+            if (skipRow) {
+                skipRow = false;
+                rowCount++;
+                return;
+            }
+            if (rawRow) {
+                rawHandler.accept(raw);
+                rowCount++;
+                nextColumn = 0;
+                return;
+            }
+            if (rowCount == 0) {
+                maxColumn = cells.size() - 1;
+            } else {
+                fill(maxColumn + 1);
+            }
+            rowHandler.handle(sheetIndex, rowIndex, cells);
+            cells = new ArrayList<>(Math.max(maxColumn + 1, 8));
+            rowCount++;
+            nextColumn = 0;
+        }
+
+        /**
+         * 空白单元格填充到指定列之前，选中的列填充""，未选中的填充null
+         */
+        private void fill(int column) {
+            for (int c = cells.size(); c < column; c++) {
+                cells.add(selected == null || selected.get(c) ? "" : null);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (!take) {
+                return;
+            }
+            if (rawRow) {
+                if (text == VALUE) {//原始值模式不读取公式
+                    raw.append(column, ch, start, length);
+                }
+            } else if (text == VALUE) {
+                content.append(ch, start, length);
+            } else if (text == FORMULA) {
+                formula.append(ch, start, length);
+            }
+        }
+    }
+
+    /**
+     * 已读取到limit行时从SAX回调中抛出，结束当前Sheet
+     */
+    private static final class SheetDone extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private SheetDone() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * 停止解析时从SAX回调中抛出
+     */
+    private static final class Stopped extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Stopped() {
+            super("解析已停止", null, false, false);
+        }
+    }
+
+}
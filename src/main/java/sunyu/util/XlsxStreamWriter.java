@@ -0,0 +1,574 @@
+package sunyu.util;
+
+import cn.hutool.core.io.IORuntimeException;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 直接写SpreadsheetML的xlsx写出器，不经过POI对象模型
+ * <p>
+ * Sheet的XML直接编码进ZipOutputStream，字符串使用inlineStr，数字直接写数值；编码缓冲区复用，整数、字符串单元格不产生对象分配。
+ * 延后表头时每个Sheet的第一行（表头）只保存在内存中，数据行先编码到临时文件，Sheet结束时再按表头、数据行的顺序写入zip，
+ * 这之前表头可以随时改写
+ *
+ * @author 孙宇
+ */
+final class XlsxStreamWriter implements SheetWriter {
+    static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    static final String NS_PKG_REL = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    //日期时间样式序号，对应styles.xml中的cellXfs
+    static final int STYLE_DATE_TIME = 1;
+    //日期样式序号
+    static final int STYLE_DATE = 2;
+
+    private final ZipOutputStream zip;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final SheetXml sheetXml;
+    private final File destFile;
+    //是否延后写出表头
+    private final boolean deferHeaders;
+    //临时文件路径，为null时使用系统临时目录
+    private final File tmpDir;
+    //延后表头时当前Sheet的表头
+    private List<Object> headers;
+    //延后表头时当前Sheet的数据行临时文件
+    private File body;
+    private OutputStream bodyOut;
+    private SheetXml bodyXml;
+
+    XlsxStreamWriter(File destFile, String sheetName) {
+        this(destFile, sheetName, false, null);
+    }
+
+    /**
+     * @param destFile
+     * @param sheetName
+     * @param deferHeaders 是否延后写出表头，Sheet结束前表头都可以改写
+     * @param tmpDir       数据行临时文件路径，为null时使用系统临时目录
+     */
+    XlsxStreamWriter(File destFile, String sheetName, boolean deferHeaders, File tmpDir) {
+        this.destFile = destFile;
+        this.deferHeaders = deferHeaders;
+        this.tmpDir = tmpDir;
+        try {
+            zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(destFile.toPath()), 64 * 1024));
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        sheetXml = new SheetXml(zip);
+        newSheet(sheetName);
+    }
+
+    @Override
+    public void writeRow(Collection<?> row) {
+        try {
+            if (!deferHeaders) {
+                sheetXml.writeRow(row);
+            } else if (headers == null) {//每个Sheet的第一行是表头，Sheet结束时再写出
+                headers = new ArrayList<>(row);
+            } else {
+                bodyXml.writeRow(row);
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    @Override
+    public void newSheet(String name) {
+        WorkbookUtil.validateSheetName(name);
+        try {
+            if (!sheetNames.isEmpty()) {
+                endSheet();
+            }
+            sheetNames.add(name);
+            if (deferHeaders) {
+                body = File.createTempFile("excel-sheet-", ".tmp", tmpDir);
+                bodyOut = new BufferedOutputStream(Files.newOutputStream(body.toPath()), 64 * 1024);
+                bodyXml = new SheetXml(bodyOut);
+                bodyXml.skipRow();//第一行留给表头
+                headers = null;
+                return;
+            }
+            zip.putNextEntry(new ZipEntry(sheetEntryName(sheetNames.size())));
+            sheetXml.begin();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 结束当前Sheet，延后表头时先写表头行，再拷贝临时文件中的数据行
+     */
+    private void endSheet() throws IOException {
+        if (deferHeaders) {
+            bodyXml.flush();
+            bodyOut.close();
+            try {
+                zip.putNextEntry(new ZipEntry(sheetEntryName(sheetNames.size())));
+                sheetXml.begin();
+                if (headers != null) {
+                    sheetXml.writeRow(headers);
+                }
+                sheetXml.flush();
+                Files.copy(body.toPath(), zip);
+            } finally {
+                Files.deleteIfExists(body.toPath());
+            }
+        }
+        sheetXml.end();
+        zip.closeEntry();
+    }
+
+    @Override
+    public int getSheetCount() {
+        return sheetNames.size();
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return Collections.singletonList(destFile);
+    }
+
+    @Override
+    public boolean rewriteHeaders(Collection<String> headers) {
+        if (!deferHeaders) {
+            return false;//表头行已经编码进压缩流
+        }
+        this.headers = new ArrayList<>(headers);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            endSheet();
+            for (Map.Entry<String, String> part : packageParts(sheetNames).entrySet()) {
+                zip.putNextEntry(new ZipEntry(part.getKey()));
+                zip.write(part.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.close();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    static String sheetEntryName(int sheetNo) {
+        return "xl/worksheets/sheet" + sheetNo + ".xml";
+    }
+
+    /**
+     * 除Sheet之外的包文件：内容类型、关系、工作簿、样式
+     *
+     * @param sheetNames
+     * @return key是zip条目名称，value是文件内容
+     */
+    static Map<String, String> packageParts(List<String> sheetNames) {
+        Map<String, String> parts = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+                .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sb.append("<Override PartName=\"/").append(sheetEntryName(i))
+                    .append("\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        sb.append("</Types>");
+        parts.put("[Content_Types].xml", sb.toString());
+
+        sb.setLength(0);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+                .append("<Relationships xmlns=\"").append(NS_PKG_REL).append("\">")
+                .append("<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>")
+                .append("</Relationships>");
+        parts.put("_rels/.rels", sb.toString());
+
+        sb.setLength(0);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+                .append("<workbook xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_REL).append("\"><sheets>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sb.append("<sheet name=\"");
+            escape(sb, sheetNames.get(i - 1));
+            sb.append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        sb.append("</sheets></workbook>");
+        parts.put("xl/workbook.xml", sb.toString());
+
+        sb.setLength(0);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+                .append("<Relationships xmlns=\"").append(NS_PKG_REL).append("\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sb.append("<Relationship Id=\"rId").append(i)
+                    .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+                    .append(i).append(".xml\"/>");
+        }
+        sb.append("<Relationship Id=\"rId").append(sheetNames.size() + 1)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>")
+                .append("</Relationships>");
+        parts.put("xl/_rels/workbook.xml.rels", sb.toString());
+
+        sb.setLength(0);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+                .append("<styleSheet xmlns=\"").append(NS_MAIN).append("\">")
+                .append("<numFmts count=\"2\"><numFmt numFmtId=\"164\" formatCode=\"yyyy-mm-dd hh:mm:ss\"/><numFmt numFmtId=\"165\" formatCode=\"yyyy-mm-dd\"/></numFmts>")
+                .append("<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>")
+                .append("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>")
+                .append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>")
+                .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+                .append("<cellXfs count=\"3\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>")
+                .append("<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>")
+                .append("<xf numFmtId=\"165\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>")
+                .append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+                .append("</styleSheet>");
+        parts.put("xl/styles.xml", sb.toString());
+        return parts;
+    }
+
+    /**
+     * 把各自编码好的Sheet组装成一个xlsx，Sheet条目按压缩后的原始字节拷贝，不再重新压缩
+     *
+     * @param destFile
+     * @param sheetParts 每个文件是只包含一个Sheet条目的zip，按Sheet顺序
+     * @param sheetNames
+     */
+    static void assemble(File destFile, List<File> sheetParts, List<String> sheetNames) throws IOException {
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(destFile)) {
+            for (File part : sheetParts) {
+                try (ZipFile zipFile = ZipFile.builder().setFile(part).get()) {
+                    Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+                    while (entries.hasMoreElements()) {
+                        ZipArchiveEntry entry = entries.nextElement();
+                        zip.addRawArchiveEntry(entry, zipFile.getRawInputStream(entry));
+                    }
+                }
+            }
+            for (Map.Entry<String, String> part : packageParts(sheetNames).entrySet()) {
+                zip.putArchiveEntry(new ZipArchiveEntry(part.getKey()));
+                zip.write(part.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeArchiveEntry();
+            }
+        }
+    }
+
+    /**
+     * 编码单个Sheet，写成只包含一个Sheet条目的zip，供 {@link #assemble} 组装
+     *
+     * @param partFile
+     * @param sheetNo  从1开始
+     * @param writer   写出Sheet的所有行
+     */
+    static void writeSheetPart(File partFile, int sheetNo, SheetRowsWriter writer) throws IOException {
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(partFile)) {
+            zip.putArchiveEntry(new ZipArchiveEntry(sheetEntryName(sheetNo)));
+            SheetXml sheetXml = new SheetXml(zip);
+            sheetXml.begin();
+            writer.write(sheetXml);
+            sheetXml.end();
+            zip.closeArchiveEntry();
+        }
+    }
+
+    /**
+     * 写出一个Sheet的所有行
+     */
+    interface SheetRowsWriter {
+        void write(SheetXml sheetXml) throws IOException;
+    }
+
+    private static void escape(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Sheet XML编码器，把行直接编码成UTF-8字节写入输出流，缓冲区复用
+     */
+    static final class SheetXml {
+        private static final byte[] SHEET_BEGIN = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<worksheet xmlns=\"" + NS_MAIN + "\"><sheetData>").getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] SHEET_END = "</sheetData></worksheet>".getBytes(StandardCharsets.US_ASCII);
+
+        private final OutputStream out;
+        private final byte[] buf = new byte[64 * 1024];
+        private int pos;
+        //列名缓存，A、B、C...
+        private byte[][] columnNames = new byte[0][];
+        //当前Sheet已写行数
+        private long rowNum;
+
+        SheetXml(OutputStream out) {
+            this.out = out;
+        }
+
+        void begin() throws IOException {
+            rowNum = 0;
+            writeAscii(SHEET_BEGIN);
+        }
+
+        /**
+         * 留出一行不写，之后的行号从下一行开始；只编码数据行、表头另行写出时使用
+         */
+        void skipRow() {
+            rowNum++;
+        }
+
+        void end() throws IOException {
+            writeAscii(SHEET_END);
+            flush();
+        }
+
+        void writeRow(Collection<?> row) throws IOException {
+            rowNum++;
+            writeAscii("<row r=\"");
+            writeLong(rowNum);
+            writeAscii("\">");
+            if (row instanceof SparseRow) {//稀疏行只遍历非null单元格
+                SparseRow sparse = (SparseRow) row;
+                for (int i = 0, n = sparse.cellCount(); i < n; i++) {
+                    writeCell(sparse.columnAt(i), sparse.valueAt(i));
+                }
+                writeAscii("</row>");
+                return;
+            }
+            int col = 0;
+            for (Object v : row) {
+                if (v != null) {
+                    writeCell(col, v);
+                }
+                col++;
+            }
+            writeAscii("</row>");
+        }
+
+        private void writeCell(int col, Object v) throws IOException {
+            if (v instanceof String || v instanceof CharSequence || v instanceof Character) {
+                String s = v.toString();
+                if (s.isEmpty()) {
+                    return;
+                }
+                cellStart(col);
+                writeAscii("\" t=\"inlineStr\"><is><t");
+                if (Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(s.length() - 1))) {
+                    writeAscii(" xml:space=\"preserve\"");
+                }
+                writeByte('>');
+                writeEscaped(s);
+                writeAscii("</t></is></c>");
+            } else if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+                cellStart(col);
+                writeAscii("\"><v>");
+                writeLong(((Number) v).longValue());
+                writeAscii("</v></c>");
+            } else if (v instanceof Double || v instanceof Float) {
+                double d = ((Number) v).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    writeCell(col, String.valueOf(d));
+                    return;
+                }
+                cellStart(col);
+                writeAscii("\"><v>");
+                writeDouble(d);
+                writeAscii("</v></c>");
+            } else if (v instanceof BigDecimal) {
+                cellStart(col);
+                writeAscii("\"><v>");
+                writeAscii(((BigDecimal) v).toPlainString());
+                writeAscii("</v></c>");
+            } else if (v instanceof Number) {
+                cellStart(col);
+                writeAscii("\"><v>");
+                writeDouble(((Number) v).doubleValue());
+                writeAscii("</v></c>");
+            } else if (v instanceof Boolean) {
+                cellStart(col);
+                writeAscii((Boolean) v ? "\" t=\"b\"><v>1</v></c>" : "\" t=\"b\"><v>0</v></c>");
+            } else if (v instanceof Date) {
+                writeDate(col, DateUtil.getExcelDate((Date) v), STYLE_DATE_TIME);
+            } else if (v instanceof LocalDateTime) {
+                writeDate(col, DateUtil.getExcelDate((LocalDateTime) v), STYLE_DATE_TIME);
+            } else if (v instanceof LocalDate) {
+                writeDate(col, DateUtil.getExcelDate((LocalDate) v), STYLE_DATE);
+            } else if (v instanceof Calendar) {
+                writeDate(col, DateUtil.getExcelDate((Calendar) v, false), STYLE_DATE_TIME);
+            } else {
+                writeCell(col, v.toString());
+            }
+        }
+
+        private void writeDate(int col, double excelDate, int style) throws IOException {
+            if (excelDate < 0) {//1900年之前的日期excel无法表示
+                return;
+            }
+            cellStart(col);
+            writeAscii("\" s=\"");
+            writeLong(style);
+            writeAscii("\"><v>");
+            writeDouble(excelDate);
+            writeAscii("</v></c>");
+        }
+
+        private void cellStart(int col) throws IOException {
+            writeAscii("<c r=\"");
+            writeAscii(columnName(col));
+            writeLong(rowNum);
+        }
+
+        private byte[] columnName(int col) {
+            if (col >= columnNames.length) {
+                byte[][] names = new byte[Math.max(col + 1, columnNames.length * 2)][];
+                System.arraycopy(columnNames, 0, names, 0, columnNames.length);
+                columnNames = names;
+            }
+            byte[] name = columnNames[col];
+            if (name == null) {
+                name = CellReference.convertNumToColString(col).getBytes(StandardCharsets.US_ASCII);
+                columnNames[col] = name;
+            }
+            return name;
+        }
+
+        private void writeEscaped(String s) throws IOException {
+            int len = s.length();
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (pos + 6 > buf.length) {
+                    flush();
+                }
+                if (c < 0x80) {
+                    switch (c) {
+                        case '&':
+                            writeAscii("&amp;");
+                            break;
+                        case '<':
+                            writeAscii("&lt;");
+                            break;
+                        case '>':
+                            writeAscii("&gt;");
+                            break;
+                        case '\t':
+                        case '\n':
+                        case '\r':
+                            buf[pos++] = (byte) c;
+                            break;
+                        default:
+                            if (c >= 0x20) {
+                                buf[pos++] = (byte) c;
+                            }//xml不允许的控制字符直接丢弃
+                    }
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (!Character.isSurrogate(c) && c != 0xFFFE && c != 0xFFFF) {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void writeDouble(double d) throws IOException {
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                writeLong((long) d);
+            } else {
+                writeAscii(Double.toString(d));
+            }
+        }
+
+        private void writeLong(long v) throws IOException {
+            if (v == Long.MIN_VALUE) {
+                writeAscii(Long.toString(v));
+                return;
+            }
+            if (pos + 20 > buf.length) {
+                flush();
+            }
+            if (v < 0) {
+                buf[pos++] = '-';
+                v = -v;
+            }
+            int start = pos;
+            do {
+                buf[pos++] = (byte) ('0' + (v % 10));
+                v /= 10;
+            } while (v != 0);
+            for (int i = start, j = pos - 1; i < j; i++, j--) {//数字是倒序写入的，翻转
+                byte t = buf[i];
+                buf[i] = buf[j];
+                buf[j] = t;
+            }
+        }
+
+        private void writeAscii(String s) throws IOException {
+            int len = s.length();
+            if (pos + len > buf.length) {
+                flush();
+            }
+            for (int i = 0; i < len; i++) {
+                buf[pos++] = (byte) s.charAt(i);
+            }
+        }
+
+        private void writeAscii(byte[] b) throws IOException {
+            if (pos + b.length > buf.length) {
+                flush();
+            }
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        private void writeByte(int b) throws IOException {
+            if (pos + 1 > buf.length) {
+                flush();
+            }
+            buf[pos++] = (byte) b;
+        }
+
+        void flush() throws IOException {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
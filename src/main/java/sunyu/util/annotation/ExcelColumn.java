@@ -0,0 +1,25 @@
+package sunyu.util.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 标注实体类字段对应的excel列
+ * <p>
+ * 实体类中有字段标注此注解时，只导出标注的字段；都没有标注时导出所有非static、非transient字段，列名为字段名
+ *
+ * @author 孙宇
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ExcelColumn {
+    /**
+     * 列名，默认为字段名
+     */
+    String value() default "";
+
+    /**
+     * 是否忽略此字段
+     */
+    boolean ignore() default false;
+}
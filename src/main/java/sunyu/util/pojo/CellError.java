@@ -0,0 +1,117 @@
+package sunyu.util.pojo;
+
+public class CellError {
+    /**
+     * sheet索引
+     */
+    private int sheetIndex;
+    /**
+     * 行索引
+     */
+    private long rowIndex;
+    /**
+     * 列索引
+     */
+    private int columnIndex;
+    /**
+     * 表头
+     */
+    private String column;
+    /**
+     * 单元格数据
+     */
+    private Object value;
+    /**
+     * 实体类字段名
+     */
+    private String field;
+    /**
+     * 字段类型
+     */
+    private Class<?> fieldType;
+    /**
+     * 转换异常
+     */
+    private Exception cause;
+
+    public CellError(int sheetIndex, long rowIndex, int columnIndex, String column, Object value, String field, Class<?> fieldType, Exception cause) {
+        this.sheetIndex = sheetIndex;
+        this.rowIndex = rowIndex;
+        this.columnIndex = columnIndex;
+        this.column = column;
+        this.value = value;
+        this.field = field;
+        this.fieldType = fieldType;
+        this.cause = cause;
+    }
+
+    public int getSheetIndex() {
+        return sheetIndex;
+    }
+
+    public void setSheetIndex(int sheetIndex) {
+        this.sheetIndex = sheetIndex;
+    }
+
+    public long getRowIndex() {
+        return rowIndex;
+    }
+
+    public void setRowIndex(long rowIndex) {
+        this.rowIndex = rowIndex;
+    }
+
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    public void setColumnIndex(int columnIndex) {
+        this.columnIndex = columnIndex;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public void setColumn(String column) {
+        this.column = column;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    public Class<?> getFieldType() {
+        return fieldType;
+    }
+
+    public void setFieldType(Class<?> fieldType) {
+        this.fieldType = fieldType;
+    }
+
+    public Exception getCause() {
+        return cause;
+    }
+
+    public void setCause(Exception cause) {
+        this.cause = cause;
+    }
+
+    @Override
+    public String toString() {
+        return "sheet " + sheetIndex + " 第" + rowIndex + "行 第" + columnIndex + "列 [" + column + "] 值 [" + value
+                + "] 无法转换为 " + fieldType.getSimpleName() + " " + field + "：" + (cause == null ? "" : cause.getMessage());
+    }
+}
@@ -1,7 +1,6 @@
 package sunyu.util.pojo;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class ExcelRow {
     /**
@@ -20,6 +19,10 @@ public class ExcelRow {
      * 行数据list格式，list的索引对应表头索引
      */
     private List<Object> rowCells;
+    /**
+     * 复用模式下，同一个Sheet所有行共享的表头索引表，为null表示普通模式
+     */
+    private Headers headers;
 
     public ExcelRow(int sheetIndex, long rowIndex, Map<String, Object> rowMap, List<Object> rowCells) {
         this.sheetIndex = sheetIndex;
@@ -28,6 +31,81 @@ public class ExcelRow {
         this.rowCells = rowCells;
     }
 
+    /**
+     * 复用模式，同一个Sheet的所有行复用此对象，rowMap是按表头索引表读取rowCells的视图
+     * <p>
+     * 回调返回后此对象会被下一行覆盖，需要保留时请调用 {@link #copy()}
+     *
+     * @param sheetIndex
+     * @param headers
+     */
+    public ExcelRow(int sheetIndex, Headers headers) {
+        this.sheetIndex = sheetIndex;
+        this.headers = headers;
+        this.rowMap = new RowMapView();
+        this.rowCells = Collections.emptyList();
+    }
+
+    /**
+     * 复用模式下切换到下一行
+     *
+     * @param rowIndex
+     * @param rowCells
+     */
+    public void reset(long rowIndex, List<Object> rowCells) {
+        this.rowIndex = rowIndex;
+        this.rowCells = rowCells;
+    }
+
+    /**
+     * 按表头获取单元格数据，字符串去除左右空格
+     *
+     * @param header
+     * @return
+     */
+    public Object get(String header) {
+        if (headers == null) {
+            return rowMap.get(header);
+        }
+        int index = headers.indexOf(header);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * 按列索引获取单元格数据，字符串去除左右空格
+     *
+     * @param index
+     * @return
+     */
+    public Object get(int index) {
+        if (index < 0 || index >= rowCells.size()) {
+            return null;
+        }
+        Object value = rowCells.get(index);
+        if (value instanceof String) {
+            value = ((String) value).trim();
+        }
+        return value;
+    }
+
+    /**
+     * 拷贝成一个独立的普通模式行，复用模式下需要保留行数据时调用
+     *
+     * @return
+     */
+    public ExcelRow copy() {
+        return new ExcelRow(sheetIndex, rowIndex, new HashMap<>(getRowMap()), new ArrayList<>(rowCells));
+    }
+
+    /**
+     * 复用模式下的表头索引表，普通模式为null
+     *
+     * @return
+     */
+    public Headers getHeaders() {
+        return headers;
+    }
+
     public int getSheetIndex() {
         return sheetIndex;
     }
@@ -59,4 +137,109 @@ public class ExcelRow {
     public void setRowCells(List<Object> rowCells) {
         this.rowCells = rowCells;
     }
+
+    /**
+     * 表头索引表，每个Sheet解析一次；表头重复时取最后一列，与普通模式的HashMap一致；为null的表头不加入
+     */
+    public static final class Headers {
+        private final String[] names;
+        private final int[] indexes;
+        private final Map<String, Integer> indexOf;
+
+        public Headers(List<String> headers) {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            for (int i = 0; i < headers.size(); i++) {
+                if (headers.get(i) != null) {
+                    map.put(headers.get(i), i);
+                }
+            }
+            names = map.keySet().toArray(new String[0]);
+            indexes = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                indexes[i] = map.get(names[i]);
+            }
+            indexOf = new HashMap<>(map);
+        }
+
+        /**
+         * 表头对应的列索引，不存在时返回-1
+         *
+         * @param header
+         * @return
+         */
+        public int indexOf(String header) {
+            Integer index = indexOf.get(header);
+            return index == null ? -1 : index;
+        }
+
+        public int size() {
+            return names.length;
+        }
+    }
+
+    /**
+     * 按表头索引表读取当前行的只读Map视图，只包含列索引在当前行范围内的表头
+     */
+    private final class RowMapView extends AbstractMap<String, Object> {
+        private final Set<Entry<String, Object>> entrySet = new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next = advance(0);
+
+                    private int advance(int i) {
+                        while (i < headers.names.length && headers.indexes[i] >= rowCells.size()) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < headers.names.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next;
+                        next = advance(i + 1);
+                        return new SimpleImmutableEntry<>(headers.names[i], ExcelRow.this.get(headers.indexes[i]));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int index : headers.indexes) {
+                    if (index < rowCells.size()) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+        };
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return entrySet;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? ExcelRow.this.get((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+            int index = headers.indexOf((String) key);
+            return index >= 0 && index < rowCells.size();
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package sunyu.util.pojo;
+
+public class WriteStats {
+    /**
+     * 溢写文件数
+     */
+    private long spillFiles;
+    /**
+     * 溢写字节数，压缩后
+     */
+    private long spillBytes;
+    /**
+     * 溢写字节数，压缩前
+     */
+    private long spillRawBytes;
+    /**
+     * 溢写文件编解码器，自适应模式下为最终选定的
+     */
+    private String spillCodec;
+    /**
+     * 压缩耗时，毫秒
+     */
+    private long compressMillis;
+    /**
+     * 解压耗时，毫秒
+     */
+    private long decompressMillis;
+    /**
+     * 序列化耗时，毫秒
+     */
+    private long serializeMillis;
+    /**
+     * 读取溢写文件并写出的耗时，毫秒
+     */
+    private long deserializeMillis;
+    /**
+     * 内存中缓存数据的估算字节数峰值，包括等待异步溢写的缓冲区
+     */
+    private long peakBufferedBytes;
+    /**
+     * 内存中缓存的数据行数峰值，包括等待异步溢写的缓冲区
+     */
+    private long peakBufferedRows;
+
+    public long getSpillFiles() {
+        return spillFiles;
+    }
+
+    public void setSpillFiles(long spillFiles) {
+        this.spillFiles = spillFiles;
+    }
+
+    public long getSpillBytes() {
+        return spillBytes;
+    }
+
+    public void setSpillBytes(long spillBytes) {
+        this.spillBytes = spillBytes;
+    }
+
+    public long getSpillRawBytes() {
+        return spillRawBytes;
+    }
+
+    public void setSpillRawBytes(long spillRawBytes) {
+        this.spillRawBytes = spillRawBytes;
+    }
+
+    public String getSpillCodec() {
+        return spillCodec;
+    }
+
+    public void setSpillCodec(String spillCodec) {
+        this.spillCodec = spillCodec;
+    }
+
+    public long getCompressMillis() {
+        return compressMillis;
+    }
+
+    public void setCompressMillis(long compressMillis) {
+        this.compressMillis = compressMillis;
+    }
+
+    public long getDecompressMillis() {
+        return decompressMillis;
+    }
+
+    public void setDecompressMillis(long decompressMillis) {
+        this.decompressMillis = decompressMillis;
+    }
+
+    public long getSerializeMillis() {
+        return serializeMillis;
+    }
+
+    public void setSerializeMillis(long serializeMillis) {
+        this.serializeMillis = serializeMillis;
+    }
+
+    public long getDeserializeMillis() {
+        return deserializeMillis;
+    }
+
+    public void setDeserializeMillis(long deserializeMillis) {
+        this.deserializeMillis = deserializeMillis;
+    }
+
+    public long getPeakBufferedBytes() {
+        return peakBufferedBytes;
+    }
+
+    public void setPeakBufferedBytes(long peakBufferedBytes) {
+        this.peakBufferedBytes = peakBufferedBytes;
+    }
+
+    public long getPeakBufferedRows() {
+        return peakBufferedRows;
+    }
+
+    public void setPeakBufferedRows(long peakBufferedRows) {
+        this.peakBufferedRows = peakBufferedRows;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteStats{" +
+                "spillFiles=" + spillFiles +
+                ", spillBytes=" + spillBytes +
+                ", spillRawBytes=" + spillRawBytes +
+                ", spillCodec='" + spillCodec + '\'' +
+                ", compressMillis=" + compressMillis +
+                ", decompressMillis=" + decompressMillis +
+                ", serializeMillis=" + serializeMillis +
+                ", deserializeMillis=" + deserializeMillis +
+                ", peakBufferedBytes=" + peakBufferedBytes +
+                ", peakBufferedRows=" + peakBufferedRows +
+                '}';
+    }
+}
@@ -0,0 +1,159 @@
+package sunyu.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class TestSpillRow {
+    Log log = LogFactory.get();
+
+    /**
+     * 溢写格式对比：java序列化 与 SpillRowWriter 的文件大小和读写耗时
+     */
+    @Test
+    void t001() throws Exception {
+        int batches = 40;
+        int cacheSize = 5000;
+        List<List<List<?>>> data = new ArrayList<>();
+        for (int b = 0; b < batches; b++) {
+            List<List<?>> rows = new ArrayList<>();
+            for (int i = 0; i < cacheSize; i++) {
+                long n = (long) b * cacheSize + i;
+                rows.add(Arrays.asList(n, "设备" + (n % 1000), n * 0.5, i % 2 == 0, new Date(1700000000000L + n), "状态" + (i % 7), null, (int) (n % 100)));
+            }
+            data.add(rows);
+        }
+
+        long javaBytes = 0, javaWrite = 0, javaRead = 0;
+        for (List<List<?>> rows : data) {
+            File file = FileUtil.createTempFile();
+            long start = System.nanoTime();
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+                oos.writeObject(rows);
+            }
+            javaWrite += System.nanoTime() - start;
+            javaBytes += file.length();
+            start = System.nanoTime();
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                Assertions.assertEquals(cacheSize, ((List<?>) ois.readObject()).size());
+            }
+            javaRead += System.nanoTime() - start;
+            FileUtil.del(file);
+        }
+
+        long spillBytes = 0, spillWrite = 0, spillRead = 0;
+        for (List<List<?>> rows : data) {
+            File file = FileUtil.createTempFile();
+            long start = System.nanoTime();
+            try (SpillRowWriter writer = new SpillRowWriter(file)) {
+                for (List<?> row : rows) {
+                    writer.writeRow(row);
+                }
+            }
+            spillWrite += System.nanoTime() - start;
+            spillBytes += file.length();
+            start = System.nanoTime();
+            int i = 0;
+            try (SpillRowReader reader = new SpillRowReader(file)) {
+                List<Object> row;
+                while ((row = reader.nextRow()) != null) {
+                    Assertions.assertEquals(rows.get(i++), row);
+                }
+            }
+            Assertions.assertEquals(cacheSize, i);
+            spillRead += System.nanoTime() - start;
+            FileUtil.del(file);
+        }
+
+        log.info("java序列化 {} 字节，写 {} ms，读 {} ms", javaBytes, javaWrite / 1000000, javaRead / 1000000);
+        log.info("SpillRow {} 字节，写 {} ms，读 {} ms", spillBytes, spillWrite / 1000000, spillRead / 1000000);
+    }
+
+    /**
+     * 宽表稀疏行：同样的数据，稠密行和稀疏行的溢写文件大小，稀疏行读回后仍是稀疏行
+     */
+    @Test
+    void t002() throws Exception {
+        //2000个可能的列，每行只有10列有值
+        int rows = 20000, width = 2000, cells = 10;
+        Random random = new Random(1);
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("rowKey", "row" + i);
+            for (int j = 1; j < cells; j++) {
+                row.put("q" + random.nextInt(width), i * j);
+            }
+            data.add(row);
+        }
+
+        Map<String, Integer> index = new LinkedHashMap<>();
+        File denseFile = FileUtil.createTempFile();
+        File sparseFile = FileUtil.createTempFile();
+        List<SparseRow> sparseRows = new ArrayList<>();
+        try (SpillRowWriter dense = new SpillRowWriter(denseFile); SpillRowWriter sparse = new SpillRowWriter(sparseFile)) {
+            for (Map<String, Object> row : data) {
+                SparseRow sparseRow = new SparseRow();
+                for (Map.Entry<String, Object> e : row.entrySet()) {
+                    Integer i = index.computeIfAbsent(e.getKey(), k -> index.size());
+                    sparseRow.put(i, e.getValue());
+                }
+                sparseRows.add(sparseRow);
+                Object[] denseRow = new Object[index.size()];
+                for (int i = 0; i < sparseRow.cellCount(); i++) {
+                    denseRow[sparseRow.columnAt(i)] = sparseRow.valueAt(i);
+                }
+                dense.writeRow(Arrays.asList(denseRow));
+                sparse.writeRow(sparseRow);
+            }
+        }
+        try (SpillRowReader reader = new SpillRowReader(sparseFile)) {
+            for (SparseRow expected : sparseRows) {
+                List<Object> row = reader.nextRow();
+                Assertions.assertInstanceOf(SparseRow.class, row);
+                Assertions.assertEquals(expected, row);
+            }
+            Assertions.assertNull(reader.nextRow());
+        }
+        log.info("稠密行溢写 {} 字节，稀疏行溢写 {} 字节", denseFile.length(), sparseFile.length());
+        FileUtil.del(denseFile);
+        FileUtil.del(sparseFile);
+    }
+
+    /**
+     * 压缩溢写文件读回与原数据一致
+     */
+    @Test
+    void t003() throws Exception {
+        List<List<?>> rows = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            rows.add(Arrays.asList(i, "设备" + (i % 1000), i * 0.5, new Date(1700000000000L + i), "备注" + StrUtil.repeat('值', i % 80)));
+        }
+        File file = FileUtil.createTempFile();
+        long rawBytes, storedBytes;
+        try (SpillRowWriter writer = new SpillRowWriter(file, SpillCodec.DEFLATE)) {
+            for (List<?> row : rows) {
+                writer.writeRow(row);
+            }
+            writer.close();
+            rawBytes = writer.getBytesWritten();
+            storedBytes = writer.getStoredBytes();
+        }
+        Assertions.assertEquals(file.length(), storedBytes);
+        try (SpillRowReader reader = new SpillRowReader(file, SpillCodec.DEFLATE)) {
+            for (List<?> row : rows) {
+                Assertions.assertEquals(row, reader.nextRow());
+            }
+            Assertions.assertNull(reader.nextRow());
+        }
+        log.info("deflate 压缩前 {} 字节，压缩后 {} 字节", rawBytes, storedBytes);
+        FileUtil.del(file);
+    }
+}
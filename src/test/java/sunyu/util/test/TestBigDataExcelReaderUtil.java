@@ -1,18 +1,49 @@
 package sunyu.util.test;
 
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
 import cn.hutool.poi.excel.ExcelUtil;
 import cn.hutool.poi.excel.WorkbookUtil;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import sunyu.util.BigDataExcelReaderUtil;
+import sunyu.util.BigDataExcelWriterUtil;
+import sunyu.util.ExcelFormat;
+import sunyu.util.ExcelMetrics;
+import sunyu.util.ExcelPipeline;
+import sunyu.util.ExcelRowIterator;
+import sunyu.util.InMemoryExcelMetrics;
+import sunyu.util.annotation.ExcelColumn;
+import sunyu.util.pojo.CellError;
+import sunyu.util.pojo.ExcelRow;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class TestBigDataExcelReaderUtil {
     private static final Log log = LogFactory.get();
@@ -103,4 +134,1112 @@ public class TestBigDataExcelReaderUtil {
         bigDataExcelReaderUtil.close();
     }
 
+    @Test
+    void t004() {
+        //生成测试文件：20列，5万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 50000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < 20; j++) {
+                row.put("列名" + j, j % 2 == 0 ? i + j : " 值" + j + " ");
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        //普通模式与复用模式每行分配的字节数
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<ExcelRow> samples = new ArrayList<>();
+        for (boolean reuseRow : new boolean[]{false, true}) {
+            BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setReuseRow(reuseRow)
+                    .build();
+            long[] count = {0};
+            long allocated = threadMXBean.getCurrentThreadAllocatedBytes();
+            long start = System.currentTimeMillis();
+            readerUtil.read(excelRow -> {
+                //访问每个单元格，模拟业务读取
+                for (Object value : excelRow.getRowMap().values()) {
+                    Assertions.assertNotNull(value);
+                }
+                if (excelRow.getRowIndex() % 10000 == 1) {
+                    samples.add(reuseRow ? excelRow.copy() : excelRow);
+                }
+                count[0]++;
+            });
+            allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocated;
+            readerUtil.close();
+            Assertions.assertEquals(rows, count[0]);
+            log.info("reuseRow={} 耗时 {} ms，每行分配 {} 字节", reuseRow, System.currentTimeMillis() - start, allocated / rows);
+        }
+        int half = samples.size() / 2;
+        for (int i = 0; i < half; i++) {
+            ExcelRow expected = samples.get(i);
+            ExcelRow actual = samples.get(half + i);
+            Assertions.assertEquals(expected.getRowIndex(), actual.getRowIndex());
+            Assertions.assertEquals(expected.getRowMap(), actual.getRowMap());
+            Assertions.assertEquals(expected.getRowMap().get("列名1"), actual.get("列名1"));
+            Assertions.assertEquals("值1", actual.get(1));
+        }
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t005() {
+        //生成测试文件：80列，2万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 20000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < 80; j++) {
+                row.put("列名" + j, j % 2 == 0 ? i + j : " 值" + i + "_" + j + " ");
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        //全部列与选择5列
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<Map<String, Object>> all = new ArrayList<>();
+        List<Map<String, Object>> selected = new ArrayList<>();
+        for (boolean select : new boolean[]{false, true}) {
+            BigDataExcelReaderUtil.Builder builder = BigDataExcelReaderUtil.builder().setFile(file);
+            if (select) {
+                builder.setSelectColumns("列名1", "列名2", "列名79", "不存在的列").setSelectColumnIndexes(40, 41);
+            }
+            BigDataExcelReaderUtil readerUtil = builder.build();
+            List<Map<String, Object>> result = select ? selected : all;
+            long allocated = threadMXBean.getCurrentThreadAllocatedBytes();
+            long start = System.currentTimeMillis();
+            readerUtil.read(excelRow -> result.add(excelRow.getRowMap()));
+            allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocated;
+            readerUtil.close();
+            Assertions.assertEquals(rows, result.size());
+            log.info("select={} 耗时 {} ms，每行分配 {} 字节", select, System.currentTimeMillis() - start, allocated / rows);
+        }
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> expected = new HashMap<>();
+            for (String column : new String[]{"列名1", "列名2", "列名79", "列名40", "列名41"}) {
+                expected.put(column, all.get(i).get(column));
+            }
+            Assertions.assertEquals(expected, selected.get(i));
+        }
+
+        //复用模式下未选择的列不在rowMap中，按列索引读取为null
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setReuseRow(true)
+                .setSelectColumns("列名3")
+                .build();
+        readerUtil.read(excelRow -> {
+            Assertions.assertEquals(Collections.singleton("列名3"), excelRow.getRowMap().keySet());
+            Assertions.assertNull(excelRow.get(4));
+            Assertions.assertNull(excelRow.get("列名4"));
+        });
+        readerUtil.close();
+
+        //与hutool读取结果一致
+        List<List<Object>> hutoolRows = new ArrayList<>();
+        ExcelUtil.readBySax(file, -1, (sheetIndex, rowIndex, rowCells) -> hutoolRows.add(new ArrayList<>(rowCells)));
+        Assertions.assertEquals(rows + 1, hutoolRows.size());
+        List<String> headers = new ArrayList<>();
+        for (Object header : hutoolRows.get(0)) {
+            headers.add(header.toString());
+        }
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> expected = new HashMap<>();
+            for (int j = 0; j < headers.size(); j++) {
+                Object value = hutoolRows.get(i + 1).get(j);
+                expected.put(headers.get(j), value instanceof String ? ((String) value).trim() : value);
+            }
+            Assertions.assertEquals(expected, all.get(i));
+        }
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t006() throws Exception {
+        //生成测试文件：10列，3万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 30000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < 10; j++) {
+                row.put("列名" + j, j % 2 == 0 ? i + j : "值" + i);
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setQueue(4, 500)
+                .build();
+
+        //推送式读取，消费者模拟数据库批量写入，每100行等待2毫秒
+        List<Map<String, Object>> pushed = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        readerUtil.read(excelRow -> {
+            pushed.add(excelRow.getRowMap());
+            sleepEvery(pushed.size(), 100, 2);
+        });
+        long pushMillis = System.currentTimeMillis() - start;
+
+        //拉取式读取，解析与消费重叠
+        List<Map<String, Object>> pulled = new ArrayList<>();
+        start = System.currentTimeMillis();
+        try (ExcelRowIterator iterator = readerUtil.iterator()) {
+            while (iterator.hasNext()) {
+                pulled.add(iterator.next().getRowMap());
+                sleepEvery(pulled.size(), 100, 2);
+            }
+        }
+        long pullMillis = System.currentTimeMillis() - start;
+        log.info("推送式 {} ms，拉取式 {} ms", pushMillis, pullMillis);
+        Assertions.assertEquals(pushed, pulled);
+
+        //Stream，提前结束时停止解析
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        try (Stream<ExcelRow> stream = readerUtil.stream()) {
+            Assertions.assertEquals(100, stream.limit(100).count());
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            Assertions.assertFalse(!before.contains(thread) && thread.getName().startsWith("excel-read-"), thread.getName());
+        }
+
+        //复用模式下每行是独立的视图
+        BigDataExcelReaderUtil reuseUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setReuseRow(true)
+                .build();
+        try (Stream<ExcelRow> stream = reuseUtil.stream()) {
+            List<ExcelRow> list = stream.collect(Collectors.toList());
+            Assertions.assertEquals(rows, list.size());
+            for (int i = 0; i < rows; i += 997) {
+                Assertions.assertEquals(pushed.get(i), new HashMap<>(list.get(i).getRowMap()));
+            }
+        }
+        reuseUtil.close();
+        readerUtil.close();
+
+        //解析异常抛给调用方
+        BigDataExcelReaderUtil missingUtil = BigDataExcelReaderUtil.builder()
+                .setFile(new File(file.getParentFile(), "missing-" + System.nanoTime() + ".xlsx"))
+                .build();
+        try (ExcelRowIterator iterator = missingUtil.iterator()) {
+            Assertions.assertThrows(IORuntimeException.class, iterator::hasNext);
+            Assertions.assertFalse(iterator.hasNext());
+        }
+        missingUtil.close();
+        FileUtil.del(file);
+    }
+
+    private static void sleepEvery(int count, int every, long millis) {
+        if (count % every == 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void t007() {
+        //生成测试文件：10列，3万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 30000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < 10; j++) {
+                row.put("列名" + j, j % 2 == 0 ? i + j : "值" + i);
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        //每批模拟一次数据库批量写入，耗时20毫秒
+        int batchSize = 500;
+        for (int workers : new int[]{0, 2, 4}) {
+            BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setWorkers(workers)
+                    .build();
+            LongAdder count = new LongAdder();
+            long start = System.currentTimeMillis();
+            readerUtil.read(batchSize, batch -> {
+                Assertions.assertTrue(batch.size() == batchSize || batch.size() == rows % batchSize);
+                count.add(batch.size());
+                sleepEvery(1, 1, 20);
+            });
+            readerUtil.close();
+            Assertions.assertEquals(rows, count.sum());
+            log.info("workers={} 耗时 {} ms", workers, System.currentTimeMillis() - start);
+        }
+
+        //并发处理，按文件顺序提交
+        for (boolean ordered : new boolean[]{true, false}) {
+            BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setReuseRow(true)
+                    .setWorkers(4)
+                    .setOrdered(ordered)
+                    .build();
+            List<Long> committed = new ArrayList<>();
+            Set<String> committer = new HashSet<>();
+            readerUtil.read(batchSize, batch -> {
+                sleepEvery(1, 1, batch.get(0).getRowIndex() % 3 == 0 ? 30 : 5);//处理耗时不同，完成顺序被打乱
+                for (ExcelRow row : batch) {
+                    Assertions.assertEquals("值" + (row.getRowIndex() - 1), row.get("列名1"));
+                }
+                return batch.get(0).getRowIndex();
+            }, first -> {
+                committer.add(Thread.currentThread().getName());
+                committed.add(first);
+            });
+            readerUtil.close();
+            Assertions.assertEquals(rows / batchSize, committed.size());
+            List<Long> sorted = new ArrayList<>(committed);
+            Collections.sort(sorted);
+            if (ordered) {
+                Assertions.assertEquals(sorted, committed);
+            }
+            Assertions.assertEquals(1, committer.size());
+            log.info("ordered={} 提交顺序是否有序 {}", ordered, sorted.equals(committed));
+        }
+
+        //批次处理异常时停止读取并抛出
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setWorkers(2)
+                .build();
+        LongAdder processed = new LongAdder();
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> readerUtil.read(batchSize, batch -> {
+            processed.increment();
+            if (batch.get(0).getRowIndex() > 1000) {
+                throw new IllegalStateException("写入失败");
+            }
+        }));
+        Assertions.assertEquals("写入失败", e.getMessage());
+        Assertions.assertTrue(processed.sum() < rows / batchSize);
+        readerUtil.close();
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t008() {
+        //生成测试文件：4个Sheet，每个Sheet 1万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 40000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .pageSize(10000)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < 10; j++) {
+                row.put("列名" + j, j % 2 == 0 ? i + j : "值" + i);
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        //逐个Sheet解析
+        List<String> expected = new ArrayList<>();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setRid(-1)
+                .build();
+        long start = System.currentTimeMillis();
+        readerUtil.read(excelRow -> expected.add(excelRow.getSheetIndex() + " " + excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+        readerUtil.close();
+        log.info("串行解析 {} ms", System.currentTimeMillis() - start);
+        Assertions.assertEquals(rows, expected.size());
+
+        //并行解析，按Sheet顺序回调，结果与串行完全一致
+        for (boolean sheetOrdered : new boolean[]{true, false}) {
+            List<String> actual = new ArrayList<>();
+            Map<Integer, Long> lastRowIndex = new HashMap<>();
+            readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setRid(-1)
+                    .setSheetParallelism(4)
+                    .setSheetOrdered(sheetOrdered)
+                    .setQueue(2, 500)
+                    .build();
+            start = System.currentTimeMillis();
+            readerUtil.read(excelRow -> {
+                //同一个Sheet的行始终按顺序回调
+                Long last = lastRowIndex.put(excelRow.getSheetIndex(), excelRow.getRowIndex());
+                Assertions.assertTrue(last == null || last < excelRow.getRowIndex());
+                actual.add(excelRow.getSheetIndex() + " " + excelRow.getRowIndex() + " " + excelRow.getRowMap());
+            });
+            readerUtil.close();
+            log.info("并行解析 sheetOrdered={} {} ms", sheetOrdered, System.currentTimeMillis() - start);
+            if (sheetOrdered) {
+                Assertions.assertEquals(expected, actual);
+            } else {
+                Assertions.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+                Assertions.assertEquals(expected.size(), actual.size());
+            }
+        }
+
+        //并行解析与选择列、复用行、拉取式读取组合
+        readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setRid(-1)
+                .setSheetParallelism(2)
+                .setReuseRow(true)
+                .setSelectColumns("列名1")
+                .build();
+        try (Stream<ExcelRow> stream = readerUtil.stream()) {
+            List<ExcelRow> list = stream.collect(Collectors.toList());
+            Assertions.assertEquals(rows, list.size());
+            for (int i = 0; i < rows; i += 1009) {
+                ExcelRow row = list.get(i);
+                Assertions.assertEquals(Collections.singleton("列名1"), row.getRowMap().keySet());
+                Assertions.assertEquals("值" + (row.getSheetIndex() * 10000 + row.getRowIndex() - 1), row.get("列名1"));
+            }
+        }
+        readerUtil.close();
+
+        //回调异常时停止所有Sheet的解析
+        BigDataExcelReaderUtil failUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setRid(-1)
+                .setSheetParallelism(4)
+                .build();
+        LongAdder count = new LongAdder();
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> failUtil.read(excelRow -> {
+            count.increment();
+            if (count.sum() == 15000) {
+                throw new IllegalStateException("回调失败");
+            }
+        }));
+        Assertions.assertEquals("回调失败", e.getMessage());
+        failUtil.close();
+        //线程池结束后工作线程还要片刻才退出
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("excel-sheet-read-") || thread.getName().startsWith("excel-read-")) {
+                Assertions.assertDoesNotThrow(() -> thread.join(1000));
+                Assertions.assertFalse(thread.isAlive(), thread.getName());
+            }
+        }
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t009() throws IOException {
+        //生成使用共享字符串表的测试文件：2个Sheet，每个Sheet 2万行，大量不重复字符串
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 20000;
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, false, true)) {
+            for (int s = 0; s < 2; s++) {
+                Sheet sheet = workbook.createSheet("sheet" + s);
+                Row header = sheet.createRow(0);
+                for (int j = 0; j < 5; j++) {
+                    header.createCell(j).setCellValue("列名" + j);
+                }
+                for (int i = 1; i <= rows; i++) {
+                    Row row = sheet.createRow(i);
+                    row.createCell(0).setCellValue("唯一字符串 " + s + "_" + i + " ü€");
+                    row.createCell(1).setCellValue("重复" + (i % 10));
+                    row.createCell(2).setCellValue(i);
+                    row.createCell(3).setCellValue(i % 7 == 0 ? "" : "  前后空格" + i + "  ");
+                    row.createCell(4).setCellValue(StrUtil.repeat('长', i % 50));
+                }
+            }
+            try (OutputStream out = FileUtil.getOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setRid(-1)
+                .build();
+        readerUtil.read(excelRow -> expected.add(excelRow.getSheetIndex() + " " + excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+        readerUtil.close();
+        Assertions.assertEquals(rows * 2, expected.size());
+
+        //内存映射共享字符串表，串行与并行解析结果都与堆内一致，读取完成后删除临时文件
+        File tmpDir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "excel-sst-test-" + System.nanoTime()));
+        for (int sheetParallelism : new int[]{1, 2}) {
+            List<String> actual = new ArrayList<>();
+            readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setRid(-1)
+                    .setMappedSharedStrings(true)
+                    .setSharedStringsCacheSize(16)
+                    .setTmpDir(tmpDir)
+                    .setSheetParallelism(sheetParallelism)
+                    .build();
+            readerUtil.read(excelRow -> actual.add(excelRow.getSheetIndex() + " " + excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+            readerUtil.close();
+            Assertions.assertEquals(expected, actual);
+            Assertions.assertEquals(0, FileUtil.ls(tmpDir.getAbsolutePath()).length);
+        }
+        FileUtil.del(tmpDir);
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t010() {
+        //生成测试文件：3个Sheet（data、data2、data3），每个Sheet 2万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 60000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .sheetName("data")
+                .nativeWriter(true)
+                .pageSize(20000)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int j = 0; j < 10; j++) {
+                row.put("列名" + j, j % 2 == 0 ? i + j : "值" + i);
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        //全部读取第一个Sheet
+        List<String> expected = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(file).build();
+        readerUtil.read(excelRow -> expected.add(excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+        readerUtil.close();
+        long fullMillis = System.currentTimeMillis() - start;
+        Assertions.assertEquals(20000, expected.size());
+
+        //预览前100行，读取到limit后立即结束
+        List<String> preview = new ArrayList<>();
+        start = System.currentTimeMillis();
+        readerUtil = BigDataExcelReaderUtil.builder().setFile(file).setLimit(100).build();
+        readerUtil.read(excelRow -> preview.add(excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+        readerUtil.close();
+        long previewMillis = System.currentTimeMillis() - start;
+        log.info("全部读取 {} ms，预览100行 {} ms", fullMillis, previewMillis);
+        Assertions.assertEquals(expected.subList(0, 100), preview);
+
+        //按行范围分片读取，拼接后与全部读取一致
+        List<String> sharded = new ArrayList<>();
+        for (int shard = 0; shard < 4; shard++) {
+            readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setOffset(shard * 6000L)
+                    .setLimit(6000)
+                    .build();
+            readerUtil.read(excelRow -> sharded.add(excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+            readerUtil.close();
+        }
+        Assertions.assertEquals(expected, sharded);
+
+        //按Sheet名称过滤，串行与并行解析
+        for (int sheetParallelism : new int[]{1, 3}) {
+            Map<Integer, Integer> counts = new TreeMap<>();
+            readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setRid(-1)
+                    .setSheetNames("data2", "data3")
+                    .setSheetParallelism(sheetParallelism)
+                    .setOffset(10)
+                    .setLimit(5)
+                    .build();
+            readerUtil.read(excelRow -> {
+                counts.merge(excelRow.getSheetIndex(), 1, Integer::sum);
+                Assertions.assertEquals("值" + (excelRow.getSheetIndex() * 20000 + excelRow.getRowIndex() - 1), excelRow.getRowMap().get("列名1"));
+                Assertions.assertTrue(excelRow.getRowIndex() > 10 && excelRow.getRowIndex() <= 15);
+            });
+            readerUtil.close();
+            Map<Integer, Integer> expectedCounts = new TreeMap<>();
+            expectedCounts.put(1, 5);
+            expectedCounts.put(2, 5);
+            Assertions.assertEquals(expectedCounts, counts);
+        }
+        FileUtil.del(file);
+    }
+
+    public static class Order {
+        @ExcelColumn("订单号")
+        private String orderNo;
+        @ExcelColumn("数量")
+        private int quantity;
+        @ExcelColumn("金额")
+        private BigDecimal amount;
+        @ExcelColumn("下单时间")
+        private Date time;
+        @ExcelColumn("日期")
+        private LocalDate day;
+        @ExcelColumn("已支付")
+        private Boolean paid;
+        @ExcelColumn("用户")
+        private long userId;
+        @ExcelColumn("表头中没有的列")
+        private String missing;
+
+        public String getOrderNo() {
+            return orderNo;
+        }
+
+        public void setOrderNo(String orderNo) {
+            this.orderNo = orderNo;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    @Test
+    void t011() {
+        //生成测试文件：3万行，第100行起每1000行一个无法转换的数量
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 30000;
+        Date time = DateUtil.parse("2024-05-06 07:08:09");
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(file)
+                .nativeWriter(true)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("订单号", i % 2 == 0 ? " NO" + i + " " : i);
+            row.put("数量", i % 1000 == 100 ? "abc" : (i % 3 == 0 ? String.valueOf(i) : i));
+            row.put("金额", new BigDecimal(i + ".25"));
+            row.put("下单时间", time);
+            row.put("日期", i % 5 == 0 ? "" : "2024-05-06");
+            row.put("已支付", i % 2 == 0);
+            row.put("用户", (long) i * 1000);
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        //读取到实体类，转换失败的单元格交给处理器
+        List<Order> orders = new ArrayList<>();
+        List<CellError> errors = new ArrayList<>();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setCellErrorHandler(errors::add)
+                .build();
+        long start = System.currentTimeMillis();
+        readerUtil.read(Order.class, orders::add);
+        long beanMillis = System.currentTimeMillis() - start;
+        Assertions.assertEquals(rows, orders.size());
+        Assertions.assertEquals(30, errors.size());
+        CellError error = errors.get(0);
+        Assertions.assertEquals(101, error.getRowIndex());
+        Assertions.assertEquals("数量", error.getColumn());
+        Assertions.assertEquals("abc", error.getValue());
+        Assertions.assertEquals(int.class, error.getFieldType());
+        for (int i = 0; i < rows; i++) {
+            Order order = orders.get(i);
+            Assertions.assertEquals(i % 2 == 0 ? "NO" + i : String.valueOf(i), order.orderNo);
+            Assertions.assertEquals(i % 1000 == 100 ? 0 : i, order.quantity);
+            Assertions.assertEquals(0, new BigDecimal(i + ".25").compareTo(order.amount));
+            Assertions.assertEquals(time, order.time);
+            Assertions.assertEquals(i % 5 == 0 ? null : LocalDate.of(2024, 5, 6), order.day);
+            Assertions.assertEquals(i % 2 == 0, order.paid);
+            Assertions.assertEquals((long) i * 1000, order.userId);
+            Assertions.assertNull(order.missing);
+        }
+
+        //对比：读取rowMap后逐字段转换
+        List<Order> mapped = new ArrayList<>();
+        start = System.currentTimeMillis();
+        readerUtil.read(excelRow -> {
+            Map<String, Object> rowMap = excelRow.getRowMap();
+            Order order = new Order();
+            order.orderNo = Convert.toStr(rowMap.get("订单号"));
+            order.quantity = Convert.toInt(rowMap.get("数量"), 0);
+            order.amount = Convert.toBigDecimal(rowMap.get("金额"));
+            order.time = Convert.toDate(rowMap.get("下单时间"));
+            order.day = Convert.toLocalDateTime(rowMap.get("日期")) == null ? null : Convert.toLocalDateTime(rowMap.get("日期")).toLocalDate();
+            order.paid = Convert.toBool(rowMap.get("已支付"));
+            order.userId = Convert.toLong(rowMap.get("用户"));
+            mapped.add(order);
+        });
+        long mapMillis = System.currentTimeMillis() - start;
+        log.info("实体类绑定 {} ms，rowMap逐字段转换 {} ms", beanMillis, mapMillis);
+        Assertions.assertEquals(rows, mapped.size());
+
+        //Stream方式，没有错误处理器时抛出包含单元格位置的异常
+        BigDataExcelReaderUtil strictUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .build();
+        try (Stream<Order> stream = strictUtil.stream(Order.class)) {
+            Assertions.assertEquals(100, stream.limit(100).count());
+        }
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> strictUtil.read(Order.class, order -> {
+        }));
+        Assertions.assertTrue(e.getMessage().contains("第101行"), e.getMessage());
+        strictUtil.close();
+        readerUtil.close();
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t012() throws IOException {
+        //生成测试文件：共享字符串、数值、日期、布尔、空白单元格，5万行
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 50000;
+        Date time = DateUtil.parse("2024-05-06 07:08:09");
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, false, true)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+            Sheet sheet = workbook.createSheet("data");
+            Row header = sheet.createRow(0);
+            String[] headers = {"编号", "数值", "时间", "名称", "空白", "布尔", "大数"};
+            for (int j = 0; j < headers.length; j++) {
+                header.createCell(j).setCellValue(headers[j]);
+            }
+            for (int i = 1; i <= rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue(i);
+                row.createCell(1).setCellValue(i * 0.37 - 100);
+                Cell cell = row.createCell(2);
+                cell.setCellValue(DateUtil.offsetSecond(time, i));
+                cell.setCellStyle(dateStyle);
+                row.createCell(3).setCellValue("  名称" + (i % 100) + " ");
+                if (i % 3 != 0) {
+                    row.createCell(4).setCellValue("x");
+                }
+                row.createCell(5).setCellValue(i % 2 == 0);
+                row.createCell(6).setCellValue(i * 123456789012L);
+            }
+            try (OutputStream out = FileUtil.getOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+
+        //普通模式的结果
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<List<Object>> expected = new ArrayList<>();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .build();
+        readerUtil.read(excelRow -> {
+            List<Object> cells = new ArrayList<>();
+            for (int j = 0; j < 7; j++) {
+                cells.add(excelRow.get(j));
+            }
+            expected.add(cells);
+        });
+        Assertions.assertEquals(rows, expected.size());
+
+        //原始值模式：getValue与普通模式一致，类型化getter按原始文本转换
+        LongAdder count = new LongAdder();
+        readerUtil.readRaw(raw -> {
+            int i = (int) raw.getRowIndex();
+            List<Object> cells = expected.get(i - 1);
+            for (int j = 0; j < 7; j++) {
+                Object value = "".equals(cells.get(j)) ? null : cells.get(j);
+                Assertions.assertEquals(value, raw.getValue(j), "第" + i + "行第" + j + "列");
+            }
+            Assertions.assertEquals(i, raw.getLong(0));
+            Assertions.assertEquals(i * 0.37 - 100, raw.getDouble(1));
+            Assertions.assertEquals(1, raw.getLong(1 + raw.indexOf("编号")) == (long) (i * 0.37 - 100) ? 1 : 0);
+            Assertions.assertTrue(raw.isDate(2));
+            Assertions.assertEquals(DateUtil.offsetSecond(time, i).getTime(), raw.getDate(2).getTime());
+            Assertions.assertEquals("  名称" + (i % 100) + " ", raw.getRawString(3));
+            Assertions.assertEquals("名称" + (i % 100), raw.getString(3));
+            Assertions.assertEquals(i % 3 == 0, raw.isBlank(4));
+            Assertions.assertTrue(Double.isNaN(raw.getDouble(i % 3 == 0 ? 4 : 99)));
+            Assertions.assertEquals(i % 2 == 0, raw.getBoolean(5));
+            Assertions.assertEquals(i * 123456789012L, raw.getLong(6));
+            Assertions.assertEquals(i * 123456789012L, (long) raw.getDouble(6));
+            count.increment();
+        });
+        Assertions.assertEquals(rows, count.sum());
+
+        //只取数值时两种模式的耗时和每行分配
+        for (boolean raw : new boolean[]{false, true, false, true}) {
+            double[] sum = new double[1];
+            long allocated = threadMXBean.getCurrentThreadAllocatedBytes();
+            long start = System.currentTimeMillis();
+            if (raw) {
+                readerUtil.readRaw(row -> sum[0] += row.getLong(0) + row.getDouble(1) + row.getLong(6));
+            } else {
+                readerUtil.read(row -> sum[0] += Convert.toLong(row.get(0)) + Convert.toDouble(row.get(1)) + Convert.toLong(row.get(6)));
+            }
+            allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocated;
+            log.info("raw={} 耗时 {} ms，每行分配 {} 字节，合计 {}", raw, System.currentTimeMillis() - start, allocated / rows, sum[0]);
+        }
+        readerUtil.close();
+
+        //选择列：未选择的列为空白，不在表头索引中
+        readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setSelectColumns("数值")
+                .setLimit(10)
+                .build();
+        count.reset();
+        readerUtil.readRaw(raw -> {
+            Assertions.assertTrue(raw.isBlank(0));
+            Assertions.assertEquals(-1, raw.indexOf("编号"));
+            Assertions.assertEquals(raw.getRowIndex() * 0.37 - 100, raw.getDouble(raw.indexOf("数值")));
+            count.increment();
+        });
+        Assertions.assertEquals(10, count.sum());
+        readerUtil.close();
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t013() throws IOException {
+        //生成测试文件：2个Sheet，共享字符串表在Sheet之前（POI写出的顺序）
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 30000;
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, false, true)) {
+            for (int s = 0; s < 2; s++) {
+                Sheet sheet = workbook.createSheet("sheet" + s);
+                Row header = sheet.createRow(0);
+                for (int j = 0; j < 4; j++) {
+                    header.createCell(j).setCellValue("列名" + j);
+                }
+                for (int i = 1; i <= rows; i++) {
+                    Row row = sheet.createRow(i);
+                    row.createCell(0).setCellValue("字符串" + s + "_" + i);
+                    row.createCell(1).setCellValue(i);
+                    row.createCell(2).setCellValue("重复" + (i % 10));
+                    row.createCell(3).setCellValue(i * 0.5);
+                }
+            }
+            try (OutputStream out = FileUtil.getOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+        //同样内容，Sheet在共享字符串表和样式之前（Excel保存的顺序）
+        File excelOrder = FileUtil.createTempFile(".xlsx", true);
+        try (ZipFile zipFile = ZipFile.builder().setFile(file).get();
+             ZipArchiveOutputStream out = new ZipArchiveOutputStream(excelOrder)) {
+            List<ZipArchiveEntry> entries = Collections.list(zipFile.getEntries());
+            entries.sort(Comparator.comparing(entry -> !entry.getName().startsWith("xl/worksheets/")));
+            for (ZipArchiveEntry entry : entries) {
+                out.putArchiveEntry(new ZipArchiveEntry(entry.getName()));
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    IoUtil.copy(in, out);
+                }
+                out.closeArchiveEntry();
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                .setFile(file)
+                .setRid(-1)
+                .build();
+        readerUtil.read(excelRow -> expected.add(excelRow.getSheetIndex() + " " + excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+        readerUtil.close();
+        Assertions.assertEquals(rows * 2, expected.size());
+
+        //输入流、通道、内存映射文件的结果与文件一致，暂存Sheet的临时文件读取完成后删除
+        File tmpDir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "excel-stream-test-" + System.nanoTime()));
+        for (int round = 0; round < 2; round++) {
+            for (String source : new String[]{"file", "mapped", "stream", "channel", "excel-order-stream"}) {
+                List<String> actual = new ArrayList<>();
+                BigDataExcelReaderUtil.Builder builder = BigDataExcelReaderUtil.builder()
+                        .setRid(-1)
+                        .setTmpDir(tmpDir);
+                InputStream in = null;
+                switch (source) {
+                    case "file":
+                        builder.setFile(file);
+                        break;
+                    case "mapped":
+                        builder.setFile(file).setMappedFile(true);
+                        break;
+                    case "stream":
+                        in = FileUtil.getInputStream(file);
+                        builder.setInputStream(in);
+                        break;
+                    case "channel":
+                        in = FileUtil.getInputStream(file);
+                        builder.setChannel(Channels.newChannel(in));
+                        break;
+                    default:
+                        in = FileUtil.getInputStream(excelOrder);
+                        builder.setInputStream(in);
+                        break;
+                }
+                BigDataExcelReaderUtil sourceUtil = builder.build();
+                long start = System.currentTimeMillis();
+                sourceUtil.read(excelRow -> actual.add(excelRow.getSheetIndex() + " " + excelRow.getRowIndex() + " " + excelRow.getRowMap()));
+                log.info("{} 耗时 {} ms", source, System.currentTimeMillis() - start);
+                Assertions.assertEquals(expected, actual, source);
+                Assertions.assertEquals(0, FileUtil.ls(tmpDir.getAbsolutePath()).length, source);
+                if (in != null) {
+                    //输入流只能读取一次
+                    Assertions.assertThrows(IllegalStateException.class, () -> sourceUtil.read(excelRow -> {
+                    }));
+                }
+                sourceUtil.close();
+            }
+        }
+
+        //按Sheet名称、行范围、原始值模式读取输入流
+        for (File source : new File[]{file, excelOrder}) {
+            List<String> actual = new ArrayList<>();
+            readerUtil = BigDataExcelReaderUtil.builder()
+                    .setInputStream(FileUtil.getInputStream(source))
+                    .setRid(-1)
+                    .setSheetNames("sheet1")
+                    .setOffset(10)
+                    .setLimit(5)
+                    .setTmpDir(tmpDir)
+                    .build();
+            readerUtil.readRaw(raw -> actual.add(raw.getSheetIndex() + " " + raw.getRowIndex() + " " + raw.getString(0) + " " + raw.getLong(1)));
+            readerUtil.close();
+            Assertions.assertEquals(Arrays.asList("1 11 字符串1_11 11", "1 12 字符串1_12 12", "1 13 字符串1_13 13", "1 14 字符串1_14 14", "1 15 字符串1_15 15"), actual);
+            Assertions.assertEquals(0, FileUtil.ls(tmpDir.getAbsolutePath()).length);
+        }
+        FileUtil.del(tmpDir);
+        FileUtil.del(excelOrder);
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t014() {
+        //指标监听器：各种读取方式的行数、Sheet数、进度回调一致
+        File file = FileUtil.createTempFile(".xlsx", true);
+        int rows = 60000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder().destFile(file).pageSize(rows / 2).build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("序号", i);
+            row.put("名称", "名称" + i);
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+
+        InMemoryExcelMetrics metrics = new InMemoryExcelMetrics();
+        for (String mode : new String[]{"read", "readRaw", "parallel", "iterator"}) {
+            metrics.reset();
+            BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder()
+                    .setFile(file)
+                    .setRid(-1)
+                    .setSheetParallelism(mode.equals("parallel") ? 2 : 1)
+                    .setMetrics(metrics)
+                    .setProgressInterval(10000)
+                    .build();
+            LongAdder count = new LongAdder();
+            if (mode.equals("readRaw")) {
+                readerUtil.readRaw(raw -> count.increment());
+            } else if (mode.equals("iterator")) {
+                try (ExcelRowIterator iterator = readerUtil.iterator()) {
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                        count.increment();
+                    }
+                }
+            } else {
+                readerUtil.read(excelRow -> count.increment());
+            }
+            readerUtil.close();
+            log.info("{} {}", mode, metrics);
+            Assertions.assertEquals(rows, count.sum(), mode);
+            Assertions.assertEquals(rows, metrics.getCount(ExcelMetrics.ROWS_READ), mode);
+            Assertions.assertEquals(2, metrics.getCount(ExcelMetrics.SHEETS_READ), mode);
+            Assertions.assertEquals(7, metrics.getProgressCalls(ExcelMetrics.ROWS_READ), mode);//每Sheet 3次，结束时一次
+            Assertions.assertEquals(rows, metrics.getProgressRows(ExcelMetrics.ROWS_READ), mode);
+            Assertions.assertEquals(1, metrics.getTimings(ExcelMetrics.READ), mode);
+            Assertions.assertTrue(metrics.getRowsPerSecond(ExcelMetrics.ROWS_READ) > 0, mode);
+        }
+        FileUtil.del(file);
+    }
+
+    @Test
+    void t015() {
+        //读取-转换-写出流水线
+        File source = FileUtil.createTempFile(".xlsx", true);
+        int rows = 100000;
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder().destFile(source).nativeWriter(true).headers("序号", "名称", "金额").build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("序号", i);
+            row.put("名称", "名称" + i);
+            row.put("金额", i * 0.5);
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+        File dest = FileUtil.createTempFile(".xlsx", true);
+
+        //手工把读取和追加连起来，作为对照
+        long start = System.currentTimeMillis();
+        BigDataExcelWriterUtil manual = BigDataExcelWriterUtil.builder().destFile(dest).nativeWriter(true).build();
+        BigDataExcelReaderUtil readerUtil = BigDataExcelReaderUtil.builder().setFile(source).build();
+        readerUtil.read(excelRow -> {
+            if (Convert.toLong(excelRow.get("序号")) % 2 == 0) {
+                manual.append(excelRow.getRowMap());
+            }
+        });
+        manual.write();
+        manual.close();
+        long manualMillis = System.currentTimeMillis() - start;
+
+        //不转换时输出列就是源表头，直写，不缓存也不溢写
+        start = System.currentTimeMillis();
+        InMemoryExcelMetrics metrics = new InMemoryExcelMetrics();
+        long written = ExcelPipeline.builder()
+                .reader(BigDataExcelReaderUtil.builder().setFile(source).build())
+                .writer(BigDataExcelWriterUtil.builder().destFile(dest).nativeWriter(true).metrics(metrics))
+                .filter(excelRow -> Convert.toLong(excelRow.get("序号")) % 2 == 0)
+                .workers(2)
+                .build()
+                .run();
+        log.info("手工连接 {} ms，流水线 {} ms", manualMillis, System.currentTimeMillis() - start);
+        Assertions.assertEquals(rows / 2, written);
+        Assertions.assertEquals(0, metrics.getCount(ExcelMetrics.SPILL_FILES));
+        Assertions.assertEquals(0, metrics.getPeak(ExcelMetrics.BUFFERED_ROWS));
+        List<String> actual = new ArrayList<>();
+        BigDataExcelReaderUtil.builder().setFile(dest).build().read(excelRow -> actual.add(excelRow.get("序号") + " " + excelRow.get("名称") + " " + Convert.toDouble(excelRow.get("金额"))));
+        Assertions.assertEquals(rows / 2, actual.size());
+        for (int i = 0; i < actual.size(); i++) {//按文件顺序写出
+            Assertions.assertEquals(2 * i + " 名称" + 2 * i + " " + i * 1.0, actual.get(i));
+        }
+
+        //转换时新增列，以源表头加新增列作为输出列
+        written = ExcelPipeline.builder()
+                .reader(BigDataExcelReaderUtil.builder().setFile(source).setSelectColumns("序号", "金额").build())
+                .writer(BigDataExcelWriterUtil.builder().destFile(dest).nativeWriter(true))
+                .map(excelRow -> {
+                    Map<String, Object> row = new HashMap<>(excelRow.getRowMap());
+                    row.put("税额", Convert.toDouble(excelRow.get("金额")) * 0.1);
+                    return row;
+                })
+                .sourceHeaders("税额")
+                .workers(3)
+                .batchSize(500)
+                .queueCapacity(2)
+                .build()
+                .run();
+        Assertions.assertEquals(rows, written);
+        Workbook workbook = WorkbookUtil.createBook(dest, true);
+        Assertions.assertEquals(1, workbook.getNumberOfSheets());
+        Row header = workbook.getSheetAt(0).getRow(0);
+        Assertions.assertEquals("序号", header.getCell(0).getStringCellValue());
+        Assertions.assertEquals("金额", header.getCell(1).getStringCellValue());
+        Assertions.assertEquals("税额", header.getCell(2).getStringCellValue());
+        Assertions.assertEquals(rows, workbook.getSheetAt(0).getLastRowNum());
+        Assertions.assertEquals(rows - 1, workbook.getSheetAt(0).getRow(rows).getCell(0).getNumericCellValue());
+        Assertions.assertEquals((rows - 1) * 0.05, workbook.getSheetAt(0).getRow(rows).getCell(2).getNumericCellValue(), 1e-9);
+        IoUtil.close(workbook);
+
+        //转换异常时停止并抛出
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> ExcelPipeline.builder()
+                .reader(BigDataExcelReaderUtil.builder().setFile(source).build())
+                .writer(BigDataExcelWriterUtil.builder().destFile(dest))
+                .map(excelRow -> {
+                    if (excelRow.getRowIndex() == 5000) {
+                        throw new IllegalArgumentException("第5000行转换失败");
+                    }
+                    return excelRow.getRowMap();
+                })
+                .build()
+                .run());
+        Assertions.assertEquals("第5000行转换失败", e.getMessage());
+        FileUtil.del(dest);
+        FileUtil.del(source);
+    }
+
+    @Test
+    void t016() {
+        //CSV解析：BOM、引号、字段中的分隔符和换行、空行、跨越缓冲区的长字段、最后一行没有换行
+        String big = StrUtil.repeat('z', 100000);
+        String bigQuoted = StrUtil.repeat("q\"", 40000);
+        String text = "\uFEFF名称,值,备注\r\n"
+                + "a,1,\r\n"
+                + "\"带,逗号\",\"带\"\"引号\",\"\"\n"
+                + "\"多\n行\",2,x\n"
+                + "\n"
+                + "  空格  ,3,y\r\n"
+                + big + ",4,\n"
+                + "\"" + bigQuoted.replace("\"", "\"\"") + "\",5,\n"
+                + "中间\"引号,6,z\n"
+                + "end,7,\u4e2d\u6587";
+        File file = FileUtil.createTempFile(".csv", true);
+        FileUtil.writeUtf8String(text, file);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<Long> rowIndexes = new ArrayList<>();
+        BigDataExcelReaderUtil.builder().setFile(file).build().read(row -> {
+            rows.add(row.getRowMap());
+            rowIndexes.add(row.getRowIndex());
+        });
+        Assertions.assertEquals(8, rows.size());
+        Assertions.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), rowIndexes);
+        Assertions.assertEquals("a", rows.get(0).get("名称"));
+        Assertions.assertEquals("1", rows.get(0).get("值"));
+        Assertions.assertNull(rows.get(0).get("备注"));//没有引号的空字段为null
+        Assertions.assertEquals("带,逗号", rows.get(1).get("名称"));
+        Assertions.assertEquals("带\"引号", rows.get(1).get("值"));
+        Assertions.assertEquals("", rows.get(1).get("备注"));//引号中的空字段为空字符串
+        Assertions.assertEquals("多\n行", rows.get(2).get("名称"));
+        Assertions.assertEquals("空格", rows.get(3).get("名称"));
+        Assertions.assertEquals(big, rows.get(4).get("名称"));
+        Assertions.assertEquals("4", rows.get(4).get("值"));
+        Assertions.assertEquals(bigQuoted, rows.get(5).get("名称"));
+        Assertions.assertEquals("5", rows.get(5).get("值"));
+        Assertions.assertEquals("中间\"引号", rows.get(6).get("名称"));
+        Assertions.assertEquals("中文", rows.get(7).get("备注"));
+
+        //行范围、选择列、复用行、输入流
+        List<String> actual = new ArrayList<>();
+        BigDataExcelReaderUtil.builder()
+                .setInputStream(FileUtil.getInputStream(file))
+                .setFormat(ExcelFormat.CSV)
+                .setOffset(1)
+                .setLimit(2)
+                .setSelectColumns("值")
+                .setReuseRow(true)
+                .build()
+                .read(row -> actual.add(row.getRowMap().toString()));
+        Assertions.assertEquals(Arrays.asList("{值=带\"引号}", "{值=2}"), actual);
+        //只支持xlsx的原始值模式
+        Assertions.assertThrows(IllegalStateException.class, () -> BigDataExcelReaderUtil.builder().setFile(file).build().readRaw(raw -> {
+        }));
+
+        //TSV按设置的格式读取，读取到实体类
+        File tsv = FileUtil.createTempFile(".txt", true);
+        FileUtil.writeUtf8String("订单号\t数量\t金额\t下单时间\t日期\t已支付\t用户\n NO1 \t12\t3.25\t2024-05-06 07:08:09\t2024-05-06\ttrue\t1000\n", tsv);
+        List<Order> orders = new ArrayList<>();
+        BigDataExcelReaderUtil.builder().setFile(tsv).setFormat(ExcelFormat.TSV).build().read(Order.class, orders::add);
+        Assertions.assertEquals(1, orders.size());
+        Assertions.assertEquals("NO1", orders.get(0).getOrderNo());
+        Assertions.assertEquals(12, orders.get(0).getQuantity());
+        FileUtil.del(tsv);
+        FileUtil.del(file);
+    }
+
 }
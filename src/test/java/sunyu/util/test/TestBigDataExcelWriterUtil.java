@@ -1,12 +1,33 @@
 package sunyu.util.test;
 
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.ReUtil;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
+import cn.hutool.poi.excel.ExcelUtil;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import sunyu.util.BigDataExcelReaderUtil;
 import sunyu.util.BigDataExcelWriterUtil;
+import sunyu.util.ExcelMetrics;
+import sunyu.util.InMemoryExcelMetrics;
+import sunyu.util.SpillCodec;
+import sunyu.util.annotation.ExcelColumn;
+import sunyu.util.pojo.ExcelRow;
+import sunyu.util.pojo.WriteStats;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class TestBigDataExcelWriterUtil {
     Log log = LogFactory.get();
@@ -41,4 +62,960 @@ public class TestBigDataExcelWriterUtil {
         log.info("done");
     }
 
+    /**
+     * 同步溢写 与 异步溢写 写出结果一致，溢写失败时写出抛出异常
+     */
+    @Test
+    void t003() {
+        int total = 60000;
+        for (boolean async : new boolean[]{false, true}) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .cacheSize(5000).asyncSpill(async).maxSpillInFlight(2)
+                    .build();
+            for (int i = 0; i < total; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("列名1", i);
+                row.put("列名2", "值" + i);
+                row.put("列名3", i * 0.1);
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+
+            List<ExcelRow> read = new ArrayList<>();
+            BigDataExcelReaderUtil.builder().setFile(destFile).build().read(read::add);
+            Assertions.assertEquals(total, read.size(), "async=" + async);
+            for (int i = 0; i < total; i++) {
+                Map<String, Object> row = read.get(i).getRowMap();
+                Assertions.assertEquals(String.valueOf(i), row.get("列名1").toString().replace(".0", ""), "async=" + async);
+                Assertions.assertEquals("值" + i, row.get("列名2"), "async=" + async);
+            }
+            FileUtil.del(destFile);
+        }
+
+        //溢写文件写入失败时，write()抛出异常，不生成缺行的文件
+        SpillCodec broken = new BrokenSpillCodec();
+        for (boolean async : new boolean[]{false, true}) {
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(FileUtil.createTempFile(".xlsx", true))
+                    .cacheSize(5000).asyncSpill(async).spillCodec(broken)
+                    .build();
+            Assertions.assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 20000; i++) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("列名1", i);
+                    writerUtil.append(row);
+                }
+                writerUtil.write();
+            }, "async=" + async);
+            writerUtil.close();
+        }
+    }
+
+    /**
+     * 多线程追加：加锁追加 与 并发追加 写出的行数和合并后的表头一致
+     */
+    @Test
+    void t004() throws Exception {
+        int threads = 4;
+        int rowsPerThread = 10000;
+        for (boolean concurrent : new boolean[]{false, true}) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .cacheSize(2000)
+                    .concurrentAppend(concurrent)
+                    .build();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < rowsPerThread; i++) {
+                        Map<String, Object> row = new LinkedHashMap<>();
+                        row.put("线程", thread);
+                        row.put("序号", i);
+                        row.put("列名" + (i % 5), "值" + i);
+                        writerUtil.append(row);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            writerUtil.write();
+            writerUtil.close();
+
+            List<ExcelRow> read = new ArrayList<>();
+            BigDataExcelReaderUtil.builder().setFile(destFile).build().read(read::add);
+            Assertions.assertEquals(threads * rowsPerThread, read.size(), "concurrent=" + concurrent);
+            Assertions.assertEquals(new HashSet<>(Arrays.asList("线程", "序号", "列名0", "列名1", "列名2", "列名3", "列名4")),
+                    read.get(0).getRowMap().keySet(), "concurrent=" + concurrent);
+            Set<String> seen = new HashSet<>();
+            for (ExcelRow excelRow : read) {
+                Map<String, Object> row = excelRow.getRowMap();
+                String thread = row.get("线程").toString().replace(".0", "");
+                String no = row.get("序号").toString().replace(".0", "");
+                Assertions.assertTrue(seen.add(thread + "-" + no), "concurrent=" + concurrent);
+                Assertions.assertEquals("值" + no, row.get("列名" + (Integer.parseInt(no) % 5)), "concurrent=" + concurrent);
+            }
+            FileUtil.del(destFile);
+        }
+    }
+
+    /**
+     * 固定表头导出耗时对比：缓存后写出 与 直写
+     */
+    @Test
+    void t005() {
+        for (boolean direct : new boolean[]{false, true}) {
+            BigDataExcelWriterUtil.Builder builder = BigDataExcelWriterUtil.builder()
+                    .destFile(FileUtil.createTempFile(".xlsx", true));
+            if (direct) {
+                builder.headers("列名1", "列名2", "列名3");
+            }
+            BigDataExcelWriterUtil writerUtil = builder.build();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 500000; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("列名1", i);
+                row.put("列名2", "值" + i);
+                row.put("列名3", i * 0.1);
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+            log.info("direct={} 耗时 {} ms", direct, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * BigExcelWriter 与 SpreadsheetML直写 写出的内容一致，耗时和GC对比见 WriterWriteBenchmark
+     */
+    @Test
+    void t006() {
+        int rows = 30000;
+        Date time = DateUtil.parse("2024-01-02 03:04:05");
+        Map<Boolean, List<ExcelRow>> read = new HashMap<>();
+        for (boolean nativeWriter : new boolean[]{false, true}) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .cacheSize(5000)
+                    .nativeWriter(nativeWriter)
+                    .build();
+            for (int i = 0; i < rows; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("整数", i);
+                row.put("小数", i * 0.5);
+                row.put("文本", i % 3 == 0 ? null : "设备<&>" + i);
+                row.put("日期", DateUtil.offsetSecond(time, i));
+                row.put("布尔", i % 2 == 0);
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+
+            List<ExcelRow> list = new ArrayList<>();
+            BigDataExcelReaderUtil.builder().setFile(destFile).build().read(list::add);
+            read.put(nativeWriter, list);
+            FileUtil.del(destFile);
+        }
+        Assertions.assertEquals(rows, read.get(false).size());
+        Assertions.assertEquals(rows, read.get(true).size());
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> poi = read.get(false).get(i).getRowMap();
+            Map<String, Object> xml = read.get(true).get(i).getRowMap();
+            Assertions.assertEquals(poi.keySet(), xml.keySet(), "第 " + i + " 行");
+            for (String key : poi.keySet()) {
+                Assertions.assertEquals(cellValue(poi.get(key)), cellValue(xml.get(key)), "第 " + i + " 行 " + key);
+            }
+        }
+    }
+
+    /**
+     * 统一读取值的表示：BigExcelWriter禁用了样式，数值带.0、日期读出为序列号；直写的日期带格式
+     *
+     * @param value
+     * @return
+     */
+    private String cellValue(Object value) {
+        String text = StrUtil.toStringOrNull(value);
+        if (StrUtil.isEmpty(text)) {
+            return "";
+        }
+        if (ReUtil.isMatch("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}", text)) {
+            text = String.valueOf(org.apache.poi.ss.usermodel.DateUtil.getExcelDate(DateUtil.parse(text)));
+        }
+        if (NumberUtil.isNumber(text)) {
+            return new BigDecimal(text).stripTrailingZeros().toPlainString();
+        }
+        return text;
+    }
+
+    /**
+     * 多Sheet并行写出：与串行写出的Sheet内容一致，并对比耗时
+     */
+    @Test
+    void t007() throws Exception {
+        Map<Integer, File> files = new LinkedHashMap<>();
+        for (int parallelism : new int[]{1, 4}) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            files.put(parallelism, destFile);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile).pageSize(100000).cacheSize(7000)
+                    .nativeWriter(true).parallelism(parallelism)
+                    .build();
+            for (int i = 0; i < 450000; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("列名1", i);
+                row.put("列名2", "值" + i);
+                if (i > 1000) {
+                    row.put("列名3", i * 0.5);
+                }
+                writerUtil.append(row);
+            }
+            long start = System.currentTimeMillis();
+            writerUtil.write();
+            writerUtil.close();
+            log.info("parallelism={} 写出耗时 {} ms", parallelism, System.currentTimeMillis() - start);
+        }
+        try (ZipFile serial = new ZipFile(files.get(1));
+             ZipFile parallel = new ZipFile(files.get(4))) {
+            Assertions.assertEquals(serial.size(), parallel.size());
+            Enumeration<? extends ZipEntry> entries = serial.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream a = serial.getInputStream(entry);
+                     InputStream b = parallel.getInputStream(parallel.getEntry(entry.getName()))) {
+                    Assertions.assertArrayEquals(IoUtil.readBytes(a), IoUtil.readBytes(b), entry.getName());
+                }
+            }
+        }
+        files.values().forEach(FileUtil::del);
+    }
+
+    @Test
+    void t008() {
+        //行宽差异很大时，按行数和按字节预算溢写的内存峰值对比
+        for (long cacheBytes : new long[]{0, 16 * 1024 * 1024}) {
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(FileUtil.createTempFile(".xlsx", true))
+                    .tmpDir(FileUtil.getTmpDirPath() + "/excel-spill")
+                    .cacheBytes(cacheBytes)
+                    .nativeWriter(true)
+                    .build();
+            for (int i = 0; i < 100000; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("列名1", i);
+                //每1000行出现一段宽行
+                int width = (i / 1000) % 10 == 0 ? 100 : 3;
+                for (int j = 2; j <= width; j++) {
+                    row.put("列名" + j, StrUtil.repeat('值', j % 50) + i);
+                }
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            WriteStats stats = writerUtil.getWriteStats();
+            writerUtil.close();
+            log.info("cacheBytes={} {}", cacheBytes, stats);
+            if (cacheBytes > 0) {
+                Assertions.assertTrue(stats.getPeakBufferedBytes() < cacheBytes + 1024 * 1024);
+            }
+        }
+    }
+
+    @Test
+    void t009() throws Exception {
+        //宽表稀疏行：2000个可能的列，每行只有10列有值
+        int rows = 20000, width = 2000, cells = 10;
+        Random random = new Random(1);
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("rowKey", "row" + i);
+            for (int j = 1; j < cells; j++) {
+                row.put("q" + random.nextInt(width), i * j);
+            }
+            data.add(row);
+        }
+
+        //导出后读回校验
+        for (boolean nativeWriter : new boolean[]{false, true}) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .cacheSize(3000)
+                    .nativeWriter(nativeWriter)
+                    .build();
+            long start = System.currentTimeMillis();
+            for (Map<String, Object> row : data) {
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            WriteStats stats = writerUtil.getWriteStats();
+            writerUtil.close();
+            log.info("nativeWriter={} 耗时 {} ms {}", nativeWriter, System.currentTimeMillis() - start, stats);
+
+            List<String> headers = new ArrayList<>();
+            int[] count = {0};
+            ExcelUtil.readBySax(destFile, -1, (sheetIndex, rowIndex, rowCells) -> {
+                if (rowIndex == 0) {
+                    for (Object cell : rowCells) {
+                        headers.add(cell.toString());
+                    }
+                    return;
+                }
+                Map<String, Object> expected = data.get((int) rowIndex - 1);
+                for (Map.Entry<String, Object> e : expected.entrySet()) {
+                    Object actual = rowCells.get(headers.indexOf(e.getKey()));
+                    if (e.getValue() instanceof Number) {
+                        Assertions.assertEquals(((Number) e.getValue()).doubleValue(), Double.parseDouble(actual.toString()));
+                    } else {
+                        Assertions.assertEquals(e.getValue(), actual.toString());
+                    }
+                }
+                count[0]++;
+            });
+            Assertions.assertEquals(rows, count[0]);
+            FileUtil.del(destFile);
+        }
+    }
+
+    @Test
+    void t010() throws Exception {
+        List<List<?>> rows = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            rows.add(Arrays.asList(i, "设备" + (i % 1000), i * 0.5, new Date(1700000000000L + i), "备注" + StrUtil.repeat('值', i % 80)));
+        }
+
+        //不压缩、固定压缩、自适应选择三种方式导出
+        for (int mode = 0; mode < 3; mode++) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            BigDataExcelWriterUtil.Builder builder = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .nativeWriter(true)
+                    .asyncSpill(true);
+            if (mode == 1) {
+                builder.spillCodec(SpillCodec.DEFLATE);
+            } else if (mode == 2) {
+                builder.adaptiveSpillCodec().spillDiskSpeed(20L * 1024 * 1024);
+            }
+            BigDataExcelWriterUtil writerUtil = builder.build();
+            long start = System.currentTimeMillis();
+            for (List<?> row : rows) {
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < row.size(); i++) {
+                    map.put("列名" + i, row.get(i));
+                }
+                writerUtil.append(map);
+            }
+            writerUtil.write();
+            WriteStats stats = writerUtil.getWriteStats();
+            writerUtil.close();
+            log.info("mode={} 耗时 {} ms {}", mode, System.currentTimeMillis() - start, stats);
+            int[] count = {0};
+            ExcelUtil.readBySax(destFile, -1, (sheetIndex, rowIndex, rowCells) -> count[0]++);
+            Assertions.assertEquals(rows.size() + 1, count[0]);
+            FileUtil.del(destFile);
+        }
+
+        //试写失败的候选不参与选择，其余候选试写完后照常选定
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(FileUtil.createTempFile(".xlsx", true))
+                .cacheSize(1000)
+                .adaptiveSpillCodec(new BrokenSpillCodec(), SpillCodec.DEFLATE)
+                .build();
+        int failed = 0;
+        for (int i = 0; i < 5000; i++) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("列名0", i);
+            try {
+                writerUtil.append(map);
+            } catch (IllegalStateException e) {
+                failed++;
+            }
+        }
+        Assertions.assertEquals(1, failed);
+        Assertions.assertEquals(SpillCodec.DEFLATE.name(), writerUtil.getWriteStats().getSpillCodec());
+        Assertions.assertThrows(IllegalStateException.class, writerUtil::write);
+        writerUtil.close();
+    }
+
+    /**
+     * 写入时总是失败的编解码器，模拟磁盘写满
+     */
+    public static class BrokenSpillCodec implements SpillCodec {
+        @Override
+        public String name() {
+            return "broken";
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("磁盘已满");
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    throw new IOException("磁盘已满");
+                }
+            };
+        }
+
+        @Override
+        public InputStream wrap(InputStream in) {
+            return in;
+        }
+    }
+
+    public static class Device {
+        @ExcelColumn("设备号")
+        private String did;
+        @ExcelColumn("里程")
+        private double mileage;
+        @ExcelColumn("状态")
+        private Integer status;
+        @ExcelColumn("上报时间")
+        private Date time;
+        private String remark;
+
+        public Device(String did, double mileage, Integer status, Date time) {
+            this.did = did;
+            this.mileage = mileage;
+            this.status = status;
+            this.time = time;
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        public double getMileage() {
+            return mileage;
+        }
+    }
+
+    @Test
+    void t011() throws Exception {
+        //实体类与Map两种方式追加100万行，对比追加耗时，导出内容应完全一致
+        int rows = 1000000;
+        Map<String, File> files = new LinkedHashMap<>();
+        for (String mode : new String[]{"map", "bean"}) {
+            File destFile = FileUtil.createTempFile(".xlsx", true);
+            files.put(mode, destFile);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .nativeWriter(true)
+                    .build();
+            long start = System.currentTimeMillis();
+            List<Device> batch = new ArrayList<>();
+            for (int i = 0; i < rows; i++) {
+                Device device = new Device("设备" + (i % 1000), i * 0.5, i % 3 == 0 ? null : i % 7, new Date(1700000000000L + i));
+                if (mode.equals("map")) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("设备号", device.did);
+                    row.put("里程", device.mileage);
+                    row.put("状态", device.status);
+                    row.put("上报时间", device.time);
+                    writerUtil.append(row);
+                } else if (i < rows / 2) {
+                    writerUtil.append(device);
+                } else {
+                    batch.add(device);
+                    if (batch.size() == 1000) {
+                        writerUtil.append(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            long appendMillis = System.currentTimeMillis() - start;
+            writerUtil.write();
+            writerUtil.close();
+            log.info("{} 追加耗时 {} ms，总耗时 {} ms", mode, appendMillis, System.currentTimeMillis() - start);
+        }
+        try (ZipFile map = new ZipFile(files.get("map"));
+             ZipFile bean = new ZipFile(files.get("bean"))) {
+            Enumeration<? extends ZipEntry> entries = map.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream a = map.getInputStream(entry);
+                     InputStream b = bean.getInputStream(bean.getEntry(entry.getName()))) {
+                    Assertions.assertArrayEquals(IoUtil.readBytes(a), IoUtil.readBytes(b), entry.getName());
+                }
+            }
+        }
+        files.values().forEach(FileUtil::del);
+
+        //显式映射优先于注解
+        File destFile = FileUtil.createTempFile(".xlsx", true);
+        Map<String, String> mapping = new LinkedHashMap<>();
+        mapping.put("remark", "备注");
+        mapping.put("did", "设备");
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(destFile)
+                .beanMapping(Device.class, mapping)
+                .build();
+        Device device = new Device("设备1", 1, 1, new Date());
+        device.remark = "备注1";
+        writerUtil.append(device);
+        writerUtil.write();
+        writerUtil.close();
+        List<List<Object>> read = new ArrayList<>();
+        ExcelUtil.readBySax(destFile, -1, (sheetIndex, rowIndex, rowCells) -> read.add(new ArrayList<>(rowCells)));
+        Assertions.assertEquals(Arrays.asList("备注", "设备"), read.get(0));
+        Assertions.assertEquals(Arrays.asList("备注1", "设备1"), read.get(1));
+        FileUtil.del(destFile);
+    }
+
+    @Test
+    void t012() throws Exception {
+        //指标监听器：计数、计时、进度回调、缓存行数峰值
+        int rows = 100000;
+        File destFile = FileUtil.createTempFile(".xlsx", true);
+        InMemoryExcelMetrics metrics = new InMemoryExcelMetrics();
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(destFile)
+                .cacheSize(10000)
+                .pageSize(40000)
+                .metrics(metrics)
+                .progressInterval(10000)
+                .build();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("序号", i);
+            row.put("名称", "名称" + i);
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        WriteStats stats = writerUtil.getWriteStats();
+        writerUtil.close();
+        log.info("{}", metrics);
+        Assertions.assertEquals(rows, metrics.getCount(ExcelMetrics.ROWS_APPENDED));
+        Assertions.assertEquals(rows, metrics.getCount(ExcelMetrics.ROWS_WRITTEN));
+        Assertions.assertEquals(11, metrics.getProgressCalls(ExcelMetrics.ROWS_APPENDED));//每10000行一次，结束时一次
+        Assertions.assertEquals(11, metrics.getProgressCalls(ExcelMetrics.ROWS_WRITTEN));
+        Assertions.assertEquals(rows, metrics.getProgressRows(ExcelMetrics.ROWS_WRITTEN));
+        Assertions.assertEquals(3, metrics.getCount(ExcelMetrics.SHEETS_CREATED));
+        Assertions.assertEquals(stats.getSpillFiles(), metrics.getCount(ExcelMetrics.SPILL_FILES));
+        Assertions.assertEquals(stats.getSpillBytes(), metrics.getCount(ExcelMetrics.SPILL_BYTES));
+        Assertions.assertEquals(stats.getSpillFiles(), metrics.getTimings(ExcelMetrics.SERIALIZE));
+        Assertions.assertEquals(stats.getSpillFiles(), metrics.getTimings(ExcelMetrics.DESERIALIZE));
+        Assertions.assertEquals(1, metrics.getTimings(ExcelMetrics.WRITE));
+        Assertions.assertEquals(10000, metrics.getPeak(ExcelMetrics.BUFFERED_ROWS));
+        Assertions.assertEquals(10000, stats.getPeakBufferedRows());
+        Assertions.assertEquals(stats.getPeakBufferedBytes(), metrics.getPeak(ExcelMetrics.BUFFERED_BYTES));
+        Assertions.assertTrue(metrics.getRowsPerSecond(ExcelMetrics.ROWS_WRITTEN) > 0);
+
+        //并发追加、异步溢写、并行编码Sheet，计数同样完整
+        metrics.reset();
+        writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(destFile)
+                .cacheSize(10000)
+                .pageSize(40000)
+                .nativeWriter(true)
+                .parallelism(2)
+                .concurrentAppend(true)
+                .asyncSpill(true)
+                .metrics(metrics)
+                .progressInterval(10000)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int from = t * rows / 4;
+            BigDataExcelWriterUtil util = writerUtil;
+            futures.add(executor.submit(() -> {
+                for (int i = from; i < from + rows / 4; i++) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("序号", i);
+                    util.append(row);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        writerUtil.write();
+        writerUtil.close();
+        log.info("{}", metrics);
+        Assertions.assertEquals(rows, metrics.getCount(ExcelMetrics.ROWS_APPENDED));
+        Assertions.assertEquals(rows, metrics.getProgressRows(ExcelMetrics.ROWS_APPENDED));
+        Assertions.assertEquals(rows, metrics.getCount(ExcelMetrics.ROWS_WRITTEN));
+        Assertions.assertEquals(3, metrics.getCount(ExcelMetrics.SHEETS_CREATED));
+        Assertions.assertTrue(metrics.getPeak(ExcelMetrics.BUFFERED_ROWS) >= 10000);
+        Assertions.assertEquals(rows, ExcelUtil.getReader(destFile, 0).getRowCount() - 1
+                + ExcelUtil.getReader(destFile, 1).getRowCount() - 1
+                + ExcelUtil.getReader(destFile, 2).getRowCount() - 1);
+        FileUtil.del(destFile);
+    }
+
+    @Test
+    void t013() {
+        //CSV、TSV：动态表头、超出pageSize写入多个文件、引号转义，读取结果与写入一致
+        File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "excel-csv-test-" + System.nanoTime()));
+        int rows = 30000;
+        Date time = new Date(1700000000000L);
+        String timeText = cn.hutool.core.date.DateUtil.formatDateTime(time);
+        for (String ext : new String[]{"csv", "tsv"}) {
+            File destFile = FileUtil.file(dir, "data." + ext);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .cacheSize(5000)
+                    .pageSize(10000)
+                    .build();
+            for (int i = 0; i < rows; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("编号", i);
+                row.put("名称", i % 100 == 0 ? "含,逗号\t制表符\"引号\"\r\n换行" + i : "名称" + i);
+                row.put("金额", i * 0.25);
+                row.put("时间", time);
+                if (i >= rows / 2) {//后出现的列
+                    row.put("备注", i % 2 == 0 ? "" : "备注" + i);
+                }
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+            Assertions.assertTrue(FileUtil.file(dir, "data_2." + ext).exists());
+            Assertions.assertTrue(FileUtil.file(dir, "data_3." + ext).exists());
+            Assertions.assertFalse(FileUtil.file(dir, "data_4." + ext).exists());
+
+            int n = 0;
+            for (String name : new String[]{"data", "data_2", "data_3"}) {
+                List<ExcelRow> read = new ArrayList<>();
+                BigDataExcelReaderUtil.builder().setFile(FileUtil.file(dir, name + "." + ext)).build().read(read::add);
+                Assertions.assertEquals(10000, read.size());
+                for (ExcelRow row : read) {
+                    Map<String, Object> rowMap = row.getRowMap();
+                    Assertions.assertEquals(String.valueOf(n), rowMap.get("编号"));
+                    //读取时字符串去除左右空格，与xlsx一致
+                    Assertions.assertEquals((n % 100 == 0 ? "含,逗号\t制表符\"引号\"\r\n换行" + n : "名称" + n).trim(), rowMap.get("名称"), ext + " " + n);
+                    Assertions.assertEquals(n * 0.25, Double.parseDouble((String) rowMap.get("金额")));
+                    Assertions.assertEquals(timeText, rowMap.get("时间"));
+                    Assertions.assertEquals(n < rows / 2 || n % 2 == 0 ? null : "备注" + n, rowMap.get("备注"));
+                    n++;
+                }
+            }
+            Assertions.assertEquals(rows, n);
+            List<String> lines = FileUtil.readUtf8Lines(destFile);
+            Assertions.assertEquals(StrUtil.join(ext.equals("csv") ? "," : "\t", "编号", "名称", "金额", "时间", "备注"), lines.get(0));
+        }
+
+        //直写模式下表头行还在缓冲区中时原地改写，BOM
+        File destFile = FileUtil.file(dir, "direct.csv");
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder().destFile(destFile).headers("a", "b").bom(true).build();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("a", i);
+            row.put("b", "b" + i);
+            if (i >= 3) {
+                row.put("c", "c" + i);
+            }
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        writerUtil.close();
+        Assertions.assertEquals("\uFEFFa,b,c\r\n0,b0\r\n1,b1\r\n2,b2\r\n3,b3,c3\r\n4,b4,c4\r\n", FileUtil.readUtf8String(destFile));
+        List<Map<String, Object>> read = new ArrayList<>();
+        BigDataExcelReaderUtil.builder().setFile(destFile).build().read(row -> read.add(row.getRowMap()));
+        Assertions.assertEquals("0", read.get(0).get("a"));
+        Assertions.assertEquals("c4", read.get(4).get("c"));
+
+        //同样的数据写出xlsx与csv的耗时对比
+        int benchRows = 300000;
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (String name : new String[]{"bench.xlsx", "bench.csv"}) {
+            long start = System.currentTimeMillis();
+            BigDataExcelWriterUtil util = BigDataExcelWriterUtil.builder().destFile(FileUtil.file(dir, name)).nativeWriter(true).cacheSize(20000).build();
+            for (int i = 0; i < benchRows; i++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("编号", i);
+                row.put("名称", "名称" + i);
+                row.put("金额", i * 0.25);
+                row.put("时间", time);
+                util.append(row);
+            }
+            util.write();
+            util.close();
+            long writeMillis = System.currentTimeMillis() - start;
+            start = System.currentTimeMillis();
+            long[] count = {0};
+            BigDataExcelReaderUtil.builder().setFile(FileUtil.file(dir, name)).build().read(row -> count[0]++);
+            Assertions.assertEquals(benchRows, count[0]);
+            millis.put(name + " 写出", writeMillis);
+            millis.put(name + " 读取", System.currentTimeMillis() - start);
+        }
+        log.info("{} 行耗时 ms {}", benchRows, millis);
+        FileUtil.del(dir);
+    }
+
+    @Test
+    void t014() throws Exception {
+        //滚动文件：按行数拆分，并发与串行写出的内容一致，每个文件都有表头，文件内仍按pageSize分Sheet
+        File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "excel-rolling-test-" + System.nanoTime()));
+        int rows = 100000;
+        for (int parallelism : new int[]{1, 4}) {
+            File destFile = FileUtil.file(dir, "p" + parallelism, "data.xlsx");
+            FileUtil.mkParentDirs(destFile);
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .nativeWriter(true)
+                    .cacheSize(7000)
+                    .pageSize(10000)
+                    .rollingRows(25000)
+                    .parallelism(parallelism)
+                    .build();
+            for (int i = 0; i < rows; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("编号", i);
+                row.put("名称", "名称" + i);
+                if (i >= rows / 2) {
+                    row.put("备注", "备注" + i);
+                }
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            List<File> files = writerUtil.getFiles();
+            writerUtil.close();
+            Assertions.assertEquals(4, files.size());
+            Assertions.assertEquals(destFile.getAbsolutePath(), files.get(0).getAbsolutePath());
+            Assertions.assertEquals("data_4.xlsx", files.get(3).getName());
+            int n = 0;
+            for (File file : files) {
+                Set<Integer> sheets = new TreeSet<>();
+                int[] fileRows = {0};
+                List<ExcelRow> read = new ArrayList<>();
+                BigDataExcelReaderUtil.builder().setFile(file).setRid(-1).build().read(read::add);
+                for (ExcelRow row : read) {
+                    Assertions.assertEquals(n, Integer.parseInt(row.getRowMap().get("编号").toString()), file.getName());
+                    Assertions.assertEquals(n < rows / 2 ? null : "备注" + n, StrUtil.emptyToNull((String) row.getRowMap().get("备注")));
+                    sheets.add(row.getSheetIndex());
+                    fileRows[0]++;
+                    n++;
+                }
+                Assertions.assertEquals(25000, fileRows[0]);
+                Assertions.assertEquals(3, sheets.size());
+            }
+            Assertions.assertEquals(rows, n);
+        }
+
+        //按估算大小拆分CSV，并发与串行划分的文件行数一致
+        List<List<Integer>> fileRowCounts = new ArrayList<>();
+        for (int parallelism : new int[]{1, 3}) {
+            File destFile = FileUtil.file(dir, "bytes" + parallelism + ".csv");
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .cacheSize(3000)
+                    .rollingBytes(200 * 1024)
+                    .parallelism(parallelism)
+                    .build();
+            for (int i = 0; i < 20000; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("编号", i);
+                row.put("名称", String.format("name%06d", i));
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            List<File> files = writerUtil.getFiles();
+            writerUtil.close();
+            Assertions.assertTrue(files.size() > 1);
+            List<Integer> counts = new ArrayList<>();
+            int n = 0;
+            for (File file : files) {
+                List<String> lines = FileUtil.readUtf8Lines(file);
+                Assertions.assertEquals("编号,名称", lines.get(0));
+                Assertions.assertEquals(String.valueOf(n), lines.get(1).split(",")[0]);
+                //每行估算 2 + 1 + 10 + 1 + 10 字节，写到超过大小的那一行为止
+                Assertions.assertTrue(file.length() < 200 * 1024 + 100, file.getName());
+                counts.add(lines.size() - 1);
+                n += lines.size() - 1;
+            }
+            Assertions.assertEquals(20000, n);
+            fileRowCounts.add(counts);
+        }
+        Assertions.assertEquals(fileRowCounts.get(0), fileRowCounts.get(1));
+
+        //直写模式串行滚动，打包成zip，原文件删除
+        File destFile = FileUtil.file(dir, "zip", "data.tsv");
+        FileUtil.mkParentDirs(destFile);
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(destFile)
+                .headers("a")
+                .rollingRows(1000)
+                .parallelism(2)
+                .zip(true)
+                .build();
+        for (int i = 0; i < 2500; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("a", i);
+            writerUtil.append(row);
+        }
+        writerUtil.write();
+        Assertions.assertEquals(Collections.singletonList(FileUtil.file(dir, "zip", "data.zip").getAbsoluteFile()), writerUtil.getFiles());
+        writerUtil.close();
+        Assertions.assertFalse(destFile.exists());
+        try (ZipFile zip = new ZipFile(FileUtil.file(dir, "zip", "data.zip"))) {
+            List<String> names = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                names.add(entry.getName());
+            }
+            Collections.sort(names);
+            Assertions.assertEquals(Arrays.asList("data.tsv", "data_2.tsv", "data_3.tsv"), names);
+            String last = IoUtil.readUtf8(zip.getInputStream(zip.getEntry("data_3.tsv")));
+            Assertions.assertTrue(last.startsWith("a\r\n2000\r\n"));
+        }
+
+        //同样的数据写成一个文件与按文件并发写出的耗时对比
+        int benchRows = 400000;
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (int parallelism : new int[]{1, 4}) {
+            long start = System.currentTimeMillis();
+            File benchFile = FileUtil.file(dir, "bench" + parallelism, "bench.xlsx");
+            FileUtil.mkParentDirs(benchFile);
+            BigDataExcelWriterUtil.Builder builder = BigDataExcelWriterUtil.builder().destFile(benchFile).nativeWriter(true).cacheSize(20000);
+            if (parallelism > 1) {
+                builder.rollingRows(benchRows / parallelism).parallelism(parallelism);
+            }
+            BigDataExcelWriterUtil util = builder.build();
+            for (int i = 0; i < benchRows; i++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("编号", i);
+                row.put("名称", "名称" + i);
+                row.put("金额", i * 0.25);
+                util.append(row);
+            }
+            util.write();
+            Assertions.assertEquals(parallelism, util.getFiles().size());
+            util.close();
+            millis.put(parallelism + " 个文件", System.currentTimeMillis() - start);
+        }
+        log.info("{} 行写出耗时 ms {} CPU核数 {}", benchRows, millis, Runtime.getRuntime().availableProcessors());
+        FileUtil.del(dir);
+    }
+
+    @Test
+    void t015() throws Exception {
+        //直写模式多线程追加实体对象和带新列的Map，表头与单元格按列序号对齐
+        File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "excel-direct-concurrent-test-" + System.nanoTime()));
+        Date time = new Date(1700000000000L);
+        for (int round = 0; round < 20; round++) {
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(FileUtil.file(dir, "data" + round + ".csv"))
+                    .headers("a")
+                    .build();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        if (thread == 0) {
+                            writerUtil.append(new Device("D" + i, i, 1, time));
+                        } else {
+                            Map<String, Object> row = new LinkedHashMap<>();
+                            row.put("a", "a");
+                            String column = "m" + thread + "_" + (i % 5);
+                            row.put(column, column);
+                            writerUtil.append(row);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            writerUtil.write();
+            List<File> files = writerUtil.getFiles();
+            writerUtil.close();
+            int[] rows = {0};
+            for (File file : files) {
+                BigDataExcelReaderUtil.builder().setFile(file).build().read(excelRow -> {
+                    Map<String, Object> rowMap = excelRow.getRowMap();
+                    if (rowMap.get("设备号") != null) {
+                        Assertions.assertTrue(rowMap.get("设备号").toString().startsWith("D"), rowMap.toString());
+                        Assertions.assertEquals("1", rowMap.get("状态"), rowMap.toString());
+                    } else {
+                        rowMap.forEach((k, v) -> {
+                            if (v != null) {
+                                Assertions.assertEquals(k, v, rowMap.toString());
+                            }
+                        });
+                    }
+                    rows[0]++;
+                });
+            }
+            Assertions.assertEquals(800, rows[0]);
+        }
+        FileUtil.del(dir);
+    }
+
+    @Test
+    void t016() {
+        //直写模式下表头行已经刷出缓冲区后才出现的新列，加入当前Sheet的表头，不拆分Sheet
+        File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "excel-late-column-test-" + System.nanoTime()));
+        int rows = 20000;
+        for (String engine : new String[]{"poi", "native", "csv"}) {
+            File destFile = FileUtil.file(dir, engine + (engine.equals("csv") ? ".csv" : ".xlsx"));
+            BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                    .destFile(destFile)
+                    .headers("编号", "名称")
+                    .nativeWriter(engine.equals("native"))
+                    .build();
+            for (int i = 0; i < rows; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("编号", i);
+                row.put("名称", "名称" + i);
+                if (i >= 15000) {//远超过SXSSF窗口和写出缓冲区
+                    row.put("备注", "备注" + i);
+                }
+                writerUtil.append(row);
+            }
+            writerUtil.write();
+            writerUtil.close();
+
+            if (engine.equals("csv")) {
+                Assertions.assertEquals("编号,名称,备注", FileUtil.readUtf8Lines(destFile).get(0));
+                Assertions.assertFalse(FileUtil.file(dir, "csv_2.csv").exists());
+            }
+            List<ExcelRow> read = new ArrayList<>();
+            BigDataExcelReaderUtil.builder().setFile(destFile).setRid(-1).build().read(read::add);
+            Assertions.assertEquals(rows, read.size(), engine);
+            for (int i = 0; i < rows; i++) {
+                ExcelRow row = read.get(i);
+                Assertions.assertEquals(0, row.getSheetIndex(), engine);
+                if (!engine.equals("csv")) {//CSV行末的空字段不写分隔符，读取时没有对应的key
+                    Assertions.assertEquals(new HashSet<>(Arrays.asList("编号", "名称", "备注")), row.getRowMap().keySet(), engine);
+                }
+                Assertions.assertEquals(String.valueOf(i), row.getRowMap().get("编号").toString().replace(".0", ""), engine);
+                Assertions.assertEquals("名称" + i, row.getRowMap().get("名称"), engine);
+                Assertions.assertEquals(i >= 15000 ? "备注" + i : null, StrUtil.emptyToNull((String) row.getRowMap().get("备注")), engine);
+            }
+        }
+
+        //不预留表头行时，表头行写出后出现新列抛出异常
+        BigDataExcelWriterUtil writerUtil = BigDataExcelWriterUtil.builder()
+                .destFile(FileUtil.file(dir, "fixed.xlsx"))
+                .headers("编号")
+                .nativeWriter(true)
+                .reserveHeaderRow(false)
+                .build();
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("编号", 1);
+        writerUtil.append(first);
+        Map<String, Object> late = new LinkedHashMap<>();
+        late.put("编号", 2);
+        late.put("备注", "备注");
+        Assertions.assertThrows(IllegalStateException.class, () -> writerUtil.append(late));
+        writerUtil.close();
+        FileUtil.del(dir);
+    }
 }